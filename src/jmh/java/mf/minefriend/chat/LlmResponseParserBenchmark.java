@@ -0,0 +1,119 @@
+package mf.minefriend.chat;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonSyntaxException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Compares {@link LlmResponseParser} with the Gson tree and regex path {@code LlmService} used before it, on a
+ * short one-sentence reply and on a long multi-paragraph one. Run with {@code ./gradlew jmh} and add
+ * {@code -prof gc} through {@code jmh.profilers} to see the allocation rate.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LlmResponseParserBenchmark {
+    private static final Pattern PHASE_DIRECTIVE = Pattern.compile("\\[\\[PHASE:(\\d+)]]", Pattern.CASE_INSENSITIVE);
+    private static final String SHORT_REPLY = "I'm right here with you, let's find some iron before dark. [[PHASE:1]]";
+
+    @Param({"short", "long"})
+    public String reply;
+
+    private byte[] body;
+
+    @Setup
+    public void setUp() {
+        String content = SHORT_REPLY;
+        if ("long".equals(reply)) {
+            StringBuilder text = new StringBuilder();
+            for (int i = 0; i < 40; i++) {
+                text.append("We could build a small shelter near the river,\n\n  and then   head into the caves together. ");
+            }
+            content = text.append("[[PHASE:2]]").toString();
+        }
+        JsonObject message = new JsonObject();
+        message.addProperty("role", "assistant");
+        message.addProperty("content", content);
+        JsonObject choice = new JsonObject();
+        choice.addProperty("index", 0);
+        choice.add("message", message);
+        choice.addProperty("finish_reason", "stop");
+        JsonArray choices = new JsonArray();
+        choices.add(choice);
+        JsonObject usage = new JsonObject();
+        usage.addProperty("prompt_tokens", 412);
+        usage.addProperty("completion_tokens", 96);
+        JsonObject response = new JsonObject();
+        response.addProperty("id", "chatcmpl-bench");
+        response.addProperty("object", "chat.completion");
+        response.addProperty("model", LlmEndpoint.DEFAULT_MODEL);
+        response.add("choices", choices);
+        response.add("usage", usage);
+        body = response.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public LlmResponseParser.ParsedReply streamingParser() {
+        return LlmResponseParser.parseBody(body);
+    }
+
+    @Benchmark
+    public Object legacyTreeAndRegex() {
+        String text = legacyParseResponse(new String(body, StandardCharsets.UTF_8));
+        Matcher matcher = PHASE_DIRECTIVE.matcher(text);
+        boolean explicit = matcher.find();
+        int phaseId = explicit ? Integer.parseInt(matcher.group(1)) : -1;
+        String cleaned = legacySanitize(explicit ? matcher.replaceAll("") : text);
+        return new LlmResponseParser.ParsedReply(cleaned, explicit, phaseId);
+    }
+
+    private static String legacyParseResponse(String jsonBody) {
+        try {
+            JsonElement parsed = JsonParser.parseString(jsonBody);
+            if (parsed.isJsonObject()) {
+                JsonObject object = parsed.getAsJsonObject();
+                if (object.has("choices")) {
+                    JsonArray choices = object.getAsJsonArray("choices");
+                    if (!choices.isEmpty()) {
+                        JsonObject firstChoice = choices.get(0).getAsJsonObject();
+                        if (firstChoice.has("message")) {
+                            JsonObject message = firstChoice.getAsJsonObject("message");
+                            if (message.has("content")) {
+                                return legacySanitize(message.get("content").getAsString());
+                            }
+                        }
+                    }
+                }
+            }
+            return legacySanitize(jsonBody);
+        } catch (JsonSyntaxException | IllegalStateException ex) {
+            return legacySanitize(jsonBody);
+        }
+    }
+
+    private static String legacySanitize(String text) {
+        String normalized = text.replace("\r", " ").replace("\n", " ").trim();
+        return normalized.replaceAll("\\s+", " ");
+    }
+}
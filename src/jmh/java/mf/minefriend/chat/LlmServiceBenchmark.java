@@ -0,0 +1,83 @@
+package mf.minefriend.chat;
+
+import mf.minefriend.friend.state.FriendPhase;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The per-request work in {@link LlmService} that does not touch the network: building the reply payload (system
+ * prompt, rendered conversation history and Gson serialization) and pulling the phase directive out of the generated
+ * text with {@link LlmResponseParser#scan}. Body parsing is covered by {@link LlmResponseParserBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LlmServiceBenchmark {
+    private static final String PERSONA = "Alex";
+    private static final String PLAYER = "Steve";
+
+    /**
+     * {@code empty} is a first message; {@code full} is a window at the default memory budget, with a summary and a
+     * dozen recent turns.
+     */
+    @Param({"empty", "full"})
+    public String history;
+
+    @Param({"PHASE_ONE", "PHASE_THREE"})
+    public FriendPhase phase;
+
+    private ConversationMemory.Window window;
+    private String directiveReply;
+    private String plainReply;
+
+    @Setup
+    public void setUp() {
+        window = ConversationMemory.Window.EMPTY;
+        if ("full".equals(history)) {
+            List<ConversationMemory.Turn> turns = new ArrayList<>();
+            for (int i = 0; i < 12; i++) {
+                String text = i % 2 == 0
+                        ? "Did you see the cave past the river? I think there is iron down there."
+                        : "I saw it. We should bring torches, it gets dark really fast down there.";
+                turns.add(new ConversationMemory.Turn(i % 2 == 0, text, TokenEstimator.estimate(text)));
+            }
+            window = new ConversationMemory.Window("Steve and Alex built a house by the river and went mining "
+                    + "together. Steve named the friend Alex and promised not to leave.", turns);
+        }
+        directiveReply = "  I'm right here with you,\n  let's find some iron before dark.  [[PHASE:" + phase.getId() + "]]";
+        plainReply = "  I'm right here with you,\n  let's find some iron before dark.";
+    }
+
+    @Benchmark
+    public String replyPayload() {
+        LlmBackend.Completion completion = LlmService.replyCompletion(null, null, "want to go mining?", PLAYER, PERSONA, phase, window,
+                List.of(), 64, true);
+        return OpenAiBackend.requestBody(completion, LlmEndpoint.DEFAULT_MODEL);
+    }
+
+    @Benchmark
+    public LlmResponseParser.ParsedReply phaseDirective() {
+        return LlmResponseParser.scan(directiveReply);
+    }
+
+    @Benchmark
+    public LlmResponseParser.ParsedReply noDirective() {
+        return LlmResponseParser.scan(plainReply);
+    }
+}
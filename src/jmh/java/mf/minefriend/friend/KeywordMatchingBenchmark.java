@@ -0,0 +1,60 @@
+package mf.minefriend.friend;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@code FriendDialogueSession.containsAny} driven through the same keyword chain as the phase one script, so a
+ * message that matches nothing pays for every check in turn.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KeywordMatchingBenchmark {
+    private static final String[][] PHASE_ONE_KEYWORDS = {
+            {"yes", "sure", "ok", "yeah", "hello friend", "hi"},
+            {"no", "go away", "leave", "maybe", "nah"},
+            {"who are you", "what are you"},
+            {"where are you", "where did you come"},
+            {"your name"},
+            {"build", "building"},
+            {"mining", "diamonds"},
+            {"what are you doing"},
+            {"getting dark", "night"},
+            {"are you real", "are you a bot"},
+            {"weird", "creepy"},
+            {"hungry", "need food"},
+            {"help", "dying"}
+    };
+
+    @Param({
+            "yes",
+            "do you like mining",
+            "i need some help over here",
+            "the quick brown fox jumps over the lazy dog while we wait for the sun to come up again"
+    })
+    public String message;
+
+    @Benchmark
+    public int phaseOneChain() {
+        for (int i = 0; i < PHASE_ONE_KEYWORDS.length; i++) {
+            if (FriendManager.FriendDialogueSession.containsAny(message, PHASE_ONE_KEYWORDS[i])) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
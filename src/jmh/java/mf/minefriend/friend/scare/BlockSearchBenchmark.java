@@ -0,0 +1,85 @@
+package mf.minefriend.friend.scare;
+
+import net.minecraft.core.BlockPos;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link EnvironmentalScareController#findNearbyBlock} over a synthetic world: a flat stone floor with air above it,
+ * a few target blocks scattered through it ({@code rare}) or none at all ({@code absent}, the worst case, where every
+ * position is visited), and the east side of the area unloaded as if the player stood at the edge of loaded chunks.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BlockSearchBenchmark {
+    private static final BlockPos CENTER = new BlockPos(0, 64, 0);
+
+    private enum SyntheticBlock {
+        AIR, STONE, TARGET
+    }
+
+    @Param({"12", "16"})
+    public int radius;
+
+    @Param({"rare", "absent"})
+    public String targets;
+
+    private SyntheticBlock[] blocks;
+    private int size;
+    private int minX;
+    private int minY;
+    private int minZ;
+    private final Random seeds = new Random(42L);
+
+    @Setup
+    public void setUp() {
+        size = radius * 2 + 1;
+        minX = CENTER.getX() - radius;
+        minY = CENTER.getY() - 4;
+        minZ = CENTER.getZ() - radius;
+        blocks = new SyntheticBlock[size * 9 * size];
+        Random layout = new Random(7L);
+        for (int x = 0; x < size; x++) {
+            for (int y = 0; y < 9; y++) {
+                for (int z = 0; z < size; z++) {
+                    SyntheticBlock block = y < 4 ? SyntheticBlock.STONE : SyntheticBlock.AIR;
+                    if ("rare".equals(targets) && y == 4 && layout.nextInt(200) == 0) {
+                        block = SyntheticBlock.TARGET;
+                    }
+                    blocks[(x * 9 + y) * size + z] = block;
+                }
+            }
+        }
+    }
+
+    private SyntheticBlock lookup(BlockPos pos) {
+        int x = pos.getX() - minX;
+        if (x > size * 3 / 4) {
+            return null;
+        }
+        return blocks[(x * 9 + pos.getY() - minY) * size + pos.getZ() - minZ];
+    }
+
+    @Benchmark
+    public Optional<BlockPos> findNearbyBlock() {
+        return EnvironmentalScareController.findNearbyBlock(CENTER, radius, new Random(seeds.nextLong()), this::lookup,
+                block -> block == SyntheticBlock.TARGET);
+    }
+}
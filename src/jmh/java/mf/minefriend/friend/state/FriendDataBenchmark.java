@@ -0,0 +1,65 @@
+package mf.minefriend.friend.state;
+
+import net.minecraft.nbt.CompoundTag;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The NBT work behind {@link FriendData#get(net.minecraft.server.level.ServerPlayer)} and
+ * {@link FriendData#store}, which run several times per tick for every player with a friend. A plain tag stands in
+ * for the player's persistent data, so no server is needed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FriendDataBenchmark {
+    private static final String DATA_KEY = "MineFriend";
+
+    private final UUID owner = UUID.randomUUID();
+    private CompoundTag persistentData;
+    private FriendData data;
+
+    @Setup
+    public void setUp() {
+        data = new FriendData(owner, UUID.randomUUID(), "Alex", 3, FriendPhase.PHASE_TWO, 1, false, true);
+        persistentData = new CompoundTag();
+        // Other mods keep their own keys next to ours.
+        persistentData.putString("OtherMod", "value");
+        persistentData.putInt("OtherCounter", 42);
+        store();
+    }
+
+    @Benchmark
+    public FriendData get() {
+        CompoundTag tag = persistentData.getCompound(DATA_KEY);
+        return tag.isEmpty() ? null : FriendData.read(owner, tag);
+    }
+
+    @Benchmark
+    public CompoundTag store() {
+        CompoundTag tag = persistentData.getCompound(DATA_KEY);
+        data.write(tag);
+        persistentData.put(DATA_KEY, tag);
+        return tag;
+    }
+
+    @Benchmark
+    public FriendData roundTrip() {
+        store();
+        return get();
+    }
+}
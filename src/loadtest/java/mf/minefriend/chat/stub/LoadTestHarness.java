@@ -0,0 +1,258 @@
+package mf.minefriend.chat.stub;
+
+import mf.minefriend.Config;
+import mf.minefriend.chat.ChatIntentGate;
+import mf.minefriend.chat.ChatRateLimiter;
+import mf.minefriend.chat.ConversationMemory;
+import mf.minefriend.chat.LlmPriority;
+import mf.minefriend.chat.LlmRequestScheduler;
+import mf.minefriend.chat.LlmRequestScheduler.SchedulerStats;
+import mf.minefriend.chat.LlmService;
+import mf.minefriend.chat.LlmUnavailableException;
+import mf.minefriend.chat.stub.StubLlmServer.Behavior;
+import mf.minefriend.chat.stub.StubLlmServer.LatencyDistribution;
+import mf.minefriend.friend.state.FriendPhase;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Drives simulated players through the same steps as {@code ChatEventHandler.onPlayerChat} (intent gate, rate
+ * limiter, then {@link LlmRequestScheduler#submit} with the direct-reply deadline) against a {@link StubLlmServer} on loopback, and
+ * reports throughput and reply latency percentiles. Needs no network or model host; run it with
+ * {@code ./gradlew loadTest --args="players=30 latencyMs=1500 slots=2 errors=0.05"} or from the IDE with the same
+ * {@code key=value} arguments.
+ * <p>
+ * Each player sends {@code messages} chat lines, waiting an exponentially distributed think time (mean
+ * {@code thinkMs}) after each one whether or not the friend has answered yet, so bursts coalesce as they would in game.
+ */
+public final class LoadTestHarness {
+    private static final List<String> MESSAGES = List.of(
+            "hi", "who are you?", "where are you", "want to go mining?", "it's getting dark", "lol",
+            "do you like my house", "I found diamonds", "thanks", "what should we build next", "k", "are you real?"
+    );
+
+    private final Map<String, String> options;
+    private final List<Long> firstSentenceLatencies = new ArrayList<>();
+    private final List<Long> replyLatencies = new ArrayList<>();
+    private final Map<String, AtomicLong> outcomes = new HashMap<>();
+
+    private LoadTestHarness(Map<String, String> options) {
+        this.options = options;
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int equals = arg.indexOf('=');
+            if (equals <= 0) {
+                throw new IllegalArgumentException("Expected key=value, got '" + arg + "'");
+            }
+            options.put(arg.substring(0, equals), arg.substring(equals + 1));
+        }
+        new LoadTestHarness(options).run();
+    }
+
+    private void run() throws IOException, InterruptedException {
+        int players = intOption("players", 20);
+        int messages = intOption("messages", 10);
+        long thinkMs = intOption("thinkMs", 4000);
+        int slots = intOption("slots", 2);
+        Behavior behavior = Behavior.INSTANT
+                .withFirstTokenLatency(LatencyDistribution.logNormal(intOption("latencyMs", 600), doubleOption("sigma", 0.5D)))
+                .withTokensPerSecond(doubleOption("tokensPerSecond", 40.0D))
+                .withSlots(slots)
+                .withFailures(doubleOption("errors", 0.0D), doubleOption("hangs", 0.0D), doubleOption("disconnects", 0.0D))
+                .withRambleTokens(intOption("ramble", 20));
+
+        try (StubLlmServer stub = StubLlmServer.start(4, behavior)) {
+            Config.llmEndpoints = List.of(stub.chatCompletionsUrl() + "|stub|1|" + Math.max(1, slots));
+            Config.llmMaxConcurrentRequests = intOption("concurrency", Math.max(1, slots));
+            Config.llmStreamReplies = Boolean.parseBoolean(options.getOrDefault("stream", "true"));
+            // 0 turns a limit off, to measure the backend alone.
+            Config.llmPlayerRateLimitPerMinute = intOption("playerRate", Config.llmPlayerRateLimitPerMinute);
+            Config.llmServerRateLimitPerMinute = intOption("serverRate", Config.llmServerRateLimitPerMinute);
+
+            List<String> names = new ArrayList<>();
+            for (int i = 0; i < players; i++) {
+                names.add("Player" + i);
+            }
+            ScheduledExecutorService clock = Executors.newScheduledThreadPool(2, runnable -> {
+                Thread thread = new Thread(runnable, "MineFriend-LoadTest");
+                thread.setDaemon(true);
+                return thread;
+            });
+            CountDownLatch finished = new CountDownLatch(players * messages);
+            long startedAt = System.nanoTime();
+            for (int i = 0; i < players; i++) {
+                SimulatedPlayer player = new SimulatedPlayer(UUID.randomUUID(), names.get(i),
+                        LlmService.PERSONA_NAMES.get(i % LlmService.PERSONA_NAMES.size()),
+                        i % 3 == 0 ? FriendPhase.PHASE_TWO : FriendPhase.PHASE_ONE, names);
+                // Stagger the first messages so the run does not start with one synchronized burst.
+                clock.schedule(() -> player.chat(clock, messages, thinkMs, finished),
+                        ThreadLocalRandom.current().nextLong(Math.max(1L, thinkMs)), TimeUnit.MILLISECONDS);
+            }
+            finished.await();
+            double seconds = (System.nanoTime() - startedAt) / 1.0E9D;
+            clock.shutdownNow();
+            report(players, messages, seconds, stub);
+        }
+    }
+
+    private void report(int players, int messages, double seconds, StubLlmServer stub) {
+        long replied;
+        synchronized (this) {
+            replied = replyLatencies.size();
+        }
+        System.out.println("=============================================");
+        System.out.printf(Locale.ROOT, "%d players x %d messages in %.1f s, %s%n", players, messages, seconds, options);
+        System.out.printf(Locale.ROOT, "Throughput: %.2f replies/s (%d replies)%n", replied / seconds, replied);
+        synchronized (this) {
+            outcomes.entrySet().stream().sorted(Map.Entry.comparingByKey())
+                    .forEach(entry -> System.out.printf(Locale.ROOT, "  %-22s %d%n", entry.getKey() + ":", entry.getValue().get()));
+            printLatencies("First sentence", firstSentenceLatencies);
+            printLatencies("Full reply", replyLatencies);
+        }
+        System.out.printf(Locale.ROOT, "Stub: %d requests, %d completion tokens, %d aborted by client, %d injected failures%n",
+                stub.requests(), stub.completionTokens(), stub.aborted(), stub.injectedErrors());
+        SchedulerStats scheduler = LlmRequestScheduler.stats();
+        System.out.printf(Locale.ROOT, "Scheduler: %d dispatched, %d coalesced, %d rejected, %d expired, %d cancelled (%d mid-generation), "
+                        + "%d preempted, avg wait %.1f ms, max wait %.1f ms%n",
+                scheduler.dispatched(), scheduler.coalesced(), scheduler.rejected(), scheduler.expired(), scheduler.cancelled(),
+                scheduler.cancelledInFlight(), scheduler.preempted(), scheduler.averageWaitMs(), scheduler.maxWaitMs());
+        ChatRateLimiter.RateLimitStats limits = ChatRateLimiter.stats();
+        System.out.printf(Locale.ROOT, "Rate limit: %d allowed, %d over player limit, %d over server limit, %d lines folded%n",
+                limits.allowed(), limits.playerLimited(), limits.serverLimited(), limits.foldedLines());
+        System.out.println("=============================================");
+    }
+
+    private static void printLatencies(String label, List<Long> latencies) {
+        if (latencies.isEmpty()) {
+            System.out.printf(Locale.ROOT, "%-15s no samples%n", label + ":");
+            return;
+        }
+        long[] sorted = latencies.stream().mapToLong(Long::longValue).toArray();
+        Arrays.sort(sorted);
+        System.out.printf(Locale.ROOT, "%-15s p50 %d ms, p90 %d ms, p99 %d ms, max %d ms%n", label + ":",
+                percentile(sorted, 50), percentile(sorted, 90), percentile(sorted, 99), sorted[sorted.length - 1]);
+    }
+
+    private static long percentile(long[] sorted, int percentile) {
+        int rank = (int) Math.ceil(sorted.length * percentile / 100.0D);
+        return sorted[Math.max(0, rank - 1)];
+    }
+
+    private synchronized void count(String outcome) {
+        outcomes.computeIfAbsent(outcome, key -> new AtomicLong()).incrementAndGet();
+    }
+
+    private synchronized void recordLatency(List<Long> latencies, long startedAt) {
+        latencies.add(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt));
+    }
+
+    private int intOption(String key, int fallback) {
+        return Integer.parseInt(options.getOrDefault(key, Integer.toString(fallback)));
+    }
+
+    private double doubleOption(String key, double fallback) {
+        return Double.parseDouble(options.getOrDefault(key, Double.toString(fallback)));
+    }
+
+    private final class SimulatedPlayer {
+        private final UUID id;
+        private final String name;
+        private final String personaName;
+        private final FriendPhase phase;
+        private final List<String> otherPlayers;
+        private int sent;
+
+        private SimulatedPlayer(UUID id, String name, String personaName, FriendPhase phase, List<String> allPlayers) {
+            this.id = id;
+            this.name = name;
+            this.personaName = personaName;
+            this.phase = phase;
+            this.otherPlayers = allPlayers.stream().filter(other -> !other.equals(name)).toList();
+        }
+
+        private void chat(ScheduledExecutorService clock, int messages, long thinkMs, CountDownLatch finished) {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            send(MESSAGES.get(random.nextInt(MESSAGES.size())), finished);
+            if (++sent < messages) {
+                long think = Math.round(-Math.log(1.0D - random.nextDouble()) * thinkMs);
+                clock.schedule(() -> chat(clock, messages, thinkMs, finished), think, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        private void send(String message, CountDownLatch finished) {
+            ChatIntentGate.Decision decision = ChatIntentGate.classify(message, personaName, phase, true, otherPlayers);
+            if (decision.intent() != ChatIntentGate.Intent.GENERATE) {
+                if (decision.intent() == ChatIntentGate.Intent.CANNED) {
+                    ConversationMemory.record(id, personaName, name, message, decision.cannedReply());
+                }
+                count(decision.intent() == ChatIntentGate.Intent.CANNED ? "canned" : "ignored");
+                finished.countDown();
+                return;
+            }
+            ChatRateLimiter.Admission admission = ChatRateLimiter.admit(id, name, phase, message);
+            if (!admission.allowed()) {
+                count(admission.localReply() != null ? "rate limited (local reply)" : "rate limited (held)");
+                finished.countDown();
+                return;
+            }
+            long startedAt = System.nanoTime();
+            AtomicBoolean answered = new AtomicBoolean();
+            LlmRequestScheduler.submit(id, admission.message(), name, personaName, phase, sentence -> {
+                        if (answered.compareAndSet(false, true)) {
+                            recordLatency(firstSentenceLatencies, startedAt);
+                        }
+                    })
+                    .orTimeout(LlmPriority.DIRECT_REPLY.deadlineMs(), TimeUnit.MILLISECONDS)
+                    .whenComplete((reply, throwable) -> {
+                        if (throwable == null) {
+                            if (reply.isEmpty()) {
+                                count("coalesced");
+                            } else {
+                                if (answered.compareAndSet(false, true)) {
+                                    recordLatency(firstSentenceLatencies, startedAt);
+                                }
+                                recordLatency(replyLatencies, startedAt);
+                                count("generated");
+                            }
+                        } else {
+                            count(fallbackReason(throwable));
+                        }
+                        finished.countDown();
+                    });
+        }
+    }
+
+    private static String fallbackReason(Throwable throwable) {
+        Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null ? throwable.getCause() : throwable;
+        if (cause instanceof TimeoutException) {
+            return "fallback: deadline";
+        }
+        if (cause instanceof RejectedExecutionException) {
+            return "fallback: rejected";
+        }
+        if (cause instanceof LlmUnavailableException) {
+            return "fallback: unavailable";
+        }
+        return "fallback: error";
+    }
+}
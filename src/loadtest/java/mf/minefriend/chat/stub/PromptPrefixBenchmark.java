@@ -0,0 +1,120 @@
+package mf.minefriend.chat.stub;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import mf.minefriend.chat.LlmService;
+import mf.minefriend.chat.PromptTemplates;
+import mf.minefriend.chat.PromptTemplates.PhasePrompt;
+import mf.minefriend.friend.state.FriendPhase;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Function;
+
+/**
+ * Compares how many prompt tokens a prefix-caching backend has to prefill for the old system prompt layout
+ * (player name in the first line) and for {@link PromptTemplates} (shared prefix, names at the end).
+ * Runs entirely against a {@link StubLlmServer} on loopback; run it with {@code ./gradlew promptPrefixBenchmark}.
+ */
+public final class PromptPrefixBenchmark {
+    private static final int PLAYERS = 12;
+    private static final int MESSAGES_PER_PLAYER = 6;
+    private static final int CACHE_SLOTS = 4;
+    private static final List<String> MESSAGES = List.of(
+            "hi", "who are you?", "where are you", "want to go mining?", "it's getting dark", "go away"
+    );
+
+    private PromptPrefixBenchmark() {
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        try (StubLlmServer stub = StubLlmServer.start(CACHE_SLOTS)) {
+            Result legacy = run(client, stub, PromptPrefixBenchmark::legacyPrompt);
+            Result templated = run(client, stub, request -> PromptTemplates.systemPrompt(request.persona(), request.player(), request.phase()));
+
+            System.out.println("=============================================");
+            System.out.printf(Locale.ROOT, "%d players x %d messages, %d cache slots%n", PLAYERS, MESSAGES_PER_PLAYER, CACHE_SLOTS);
+            print("Legacy prompt", legacy);
+            print("Templated prompt", templated);
+            long saved = legacy.prefilled() - templated.prefilled();
+            System.out.printf(Locale.ROOT, "Prefill tokens saved: %d (%.1f%%)%n", saved,
+                    legacy.prefilled() == 0 ? 0.0D : saved * 100.0D / legacy.prefilled());
+            System.out.println("=============================================");
+        }
+    }
+
+    private static Result run(HttpClient client, StubLlmServer stub, Function<Conversation, String> promptBuilder)
+            throws IOException, InterruptedException {
+        stub.resetCounters();
+        // Interleave players the way a busy server would, so each player's previous prompt has been pushed out.
+        for (int message = 0; message < MESSAGES_PER_PLAYER; message++) {
+            for (int player = 0; player < PLAYERS; player++) {
+                FriendPhase phase = player % 3 == 0 ? FriendPhase.PHASE_TWO : FriendPhase.PHASE_ONE;
+                String persona = LlmService.PERSONA_NAMES.get(player % LlmService.PERSONA_NAMES.size());
+                Conversation conversation = new Conversation("Player" + player, persona, phase);
+                send(client, stub, promptBuilder.apply(conversation), MESSAGES.get((message + player) % MESSAGES.size()));
+            }
+        }
+        return new Result(stub.requests(), stub.promptTokens(), stub.prefilledTokens());
+    }
+
+    private static void send(HttpClient client, StubLlmServer stub, String systemPrompt, String userMessage)
+            throws IOException, InterruptedException {
+        JsonArray messages = new JsonArray();
+        messages.add(message("system", systemPrompt));
+        messages.add(message("user", userMessage));
+        JsonObject payload = new JsonObject();
+        payload.addProperty("model", "stub");
+        payload.add("messages", messages);
+        payload.addProperty("stream", false);
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create(stub.chatCompletionsUrl()))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(payload.toString(), StandardCharsets.UTF_8))
+                .build();
+        client.send(request, HttpResponse.BodyHandlers.discarding());
+    }
+
+    private static JsonObject message(String role, String content) {
+        JsonObject message = new JsonObject();
+        message.addProperty("role", role);
+        message.addProperty("content", content);
+        return message;
+    }
+
+    /**
+     * The system prompt layout used before {@link PromptTemplates}, kept here as the comparison baseline.
+     */
+    private static String legacyPrompt(Conversation conversation) {
+        PhasePrompt prompt = PromptTemplates.phasePrompt(conversation.phase());
+        return "You are roleplaying a Minecraft character. The player's name is '" + conversation.player() + "'.\n"
+                + "VERY STRICT RULES:\n"
+                + "1. Your response MUST be a direct and relevant reply to what the player just said. Do not give generic, unrelated statements.\n"
+                + "2. Your name is ALWAYS " + conversation.persona() + ". Never use another name or introduce yourself.\n"
+                + "3. Your entire response MUST be ONE single, short sentence. Be very concise.\n"
+                + "4. NEVER mention that you are an AI, a character, or in a mod.\n"
+                + "5. Always finish your reply with the phase directive [[PHASE:x]].\n\n"
+                + "CURRENT SITUATION:\n"
+                + "You are in " + prompt.label() + ". Your instructions are: " + prompt.behavior() + "\n"
+                + "Your phase transition rule is: " + prompt.transitionRule();
+    }
+
+    private static void print(String label, Result result) {
+        System.out.printf(Locale.ROOT, "%-17s %d requests, %d prompt tokens, %d prefilled (%.1f per request)%n",
+                label + ":", result.requests(), result.promptTokens(), result.prefilled(),
+                result.requests() == 0 ? 0.0D : (double) result.prefilled() / result.requests());
+    }
+
+    private record Conversation(String player, String persona, FriendPhase phase) {
+    }
+
+    private record Result(long requests, long promptTokens, long prefilled) {
+    }
+}
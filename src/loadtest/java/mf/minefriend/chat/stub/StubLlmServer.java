@@ -0,0 +1,427 @@
+package mf.minefriend.chat.stub;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A local stand-in for an OpenAI-compatible {@code /v1/chat/completions} server, both streaming (server-sent events)
+ * and plain JSON. It models a llama.cpp-style prompt cache: the incoming prompt is compared with the most recent
+ * prompts it has seen, and the longest shared prefix counts as cached instead of prefilled.
+ * <p>
+ * A {@link Behavior} makes it behave like a real model host under load: a sampled time to first token, a fixed
+ * generation rate, a limited number of parallel slots (requests beyond that wait), and injected failures. Replies
+ * honour {@code max_tokens} and {@code stop}, and a client that hangs up stops the generation and frees its slot.
+ */
+public final class StubLlmServer implements AutoCloseable {
+    public static final String CHAT_COMPLETIONS_PATH = "/v1/chat/completions";
+    private static final int CHARS_PER_TOKEN = 4;
+    private static final List<String> REPLIES = List.of(
+            "I'm right here with you.",
+            "Can we go mining together?",
+            "I like it when you talk to me.",
+            "Don't go too far, okay?",
+            "I was watching you build that."
+    );
+    private static final String[] RAMBLE_WORDS = "and another thing I wanted to tell you is that".split(" ");
+
+    private final HttpServer server;
+    private final int cacheSlots;
+    private final Behavior behavior;
+    private final Semaphore slots;
+    private final Deque<String> cachedPrompts = new ArrayDeque<>();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong promptTokens = new AtomicLong();
+    private final AtomicLong cachedPromptTokens = new AtomicLong();
+    private final AtomicLong completionTokens = new AtomicLong();
+    private final AtomicLong injectedErrors = new AtomicLong();
+    private final AtomicLong aborted = new AtomicLong();
+
+    private StubLlmServer(HttpServer server, int cacheSlots, Behavior behavior) {
+        this.server = server;
+        this.cacheSlots = cacheSlots;
+        this.behavior = behavior;
+        this.slots = behavior.slots() > 0 ? new Semaphore(behavior.slots(), true) : null;
+    }
+
+    /**
+     * Starts a stub on an ephemeral loopback port that answers instantly.
+     *
+     * @param cacheSlots how many recent prompts the simulated prompt cache remembers
+     */
+    public static StubLlmServer start(int cacheSlots) throws IOException {
+        return start(cacheSlots, Behavior.INSTANT);
+    }
+
+    public static StubLlmServer start(int cacheSlots, Behavior behavior) throws IOException {
+        HttpServer httpServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        StubLlmServer stub = new StubLlmServer(httpServer, cacheSlots, behavior);
+        httpServer.createContext(CHAT_COMPLETIONS_PATH, stub::handleChatCompletion);
+        httpServer.setExecutor(Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "MineFriend-StubLLM");
+            thread.setDaemon(true);
+            return thread;
+        }));
+        httpServer.start();
+        return stub;
+    }
+
+    public String chatCompletionsUrl() {
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + CHAT_COMPLETIONS_PATH;
+    }
+
+    public long requests() {
+        return requests.get();
+    }
+
+    public long promptTokens() {
+        return promptTokens.get();
+    }
+
+    public long cachedPromptTokens() {
+        return cachedPromptTokens.get();
+    }
+
+    public long prefilledTokens() {
+        return promptTokens.get() - cachedPromptTokens.get();
+    }
+
+    public long completionTokens() {
+        return completionTokens.get();
+    }
+
+    public long injectedErrors() {
+        return injectedErrors.get();
+    }
+
+    /**
+     * Requests whose client hung up before the reply was complete.
+     */
+    public long aborted() {
+        return aborted.get();
+    }
+
+    public synchronized void resetCounters() {
+        cachedPrompts.clear();
+        requests.set(0);
+        promptTokens.set(0);
+        cachedPromptTokens.set(0);
+        completionTokens.set(0);
+        injectedErrors.set(0);
+        aborted.set(0);
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+
+    private void handleChatCompletion(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            JsonObject request = parseRequest(readBody(exchange.getRequestBody()));
+            String prompt = flattenPrompt(request);
+            int total = estimateTokens(prompt.length());
+            int cached = estimateTokens(recordPrompt(prompt));
+            requests.incrementAndGet();
+            promptTokens.addAndGet(total);
+            cachedPromptTokens.addAndGet(cached);
+
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            if (random.nextDouble() < behavior.errorRate()) {
+                injectedErrors.incrementAndGet();
+                exchange.sendResponseHeaders(random.nextBoolean() ? 500 : 503, -1);
+                return;
+            }
+            if (!acquireSlot()) {
+                exchange.sendResponseHeaders(503, -1);
+                return;
+            }
+            try {
+                if (random.nextDouble() < behavior.hangRate()) {
+                    // Accept the request and never answer, like a wedged backend; the client has to time out.
+                    injectedErrors.incrementAndGet();
+                    sleepMillis(TimeUnit.MINUTES.toMillis(10));
+                    return;
+                }
+                sleepMillis(behavior.firstTokenLatency().sampleMs(random));
+                List<String> tokens = replyTokens(request, random);
+                boolean disconnect = random.nextDouble() < behavior.disconnectRate();
+                if (disconnect) {
+                    injectedErrors.incrementAndGet();
+                }
+                JsonObject usage = new JsonObject();
+                usage.addProperty("prompt_tokens", total);
+                JsonObject details = new JsonObject();
+                details.addProperty("cached_tokens", cached);
+                usage.add("prompt_tokens_details", details);
+                boolean stream = request.has("stream") && request.get("stream").getAsBoolean();
+                if (stream) {
+                    streamReply(exchange, tokens, disconnect);
+                } else {
+                    plainReply(exchange, tokens, usage, disconnect);
+                }
+            } catch (IOException ex) {
+                aborted.incrementAndGet();
+            } finally {
+                if (slots != null) {
+                    slots.release();
+                }
+            }
+        }
+    }
+
+    private void plainReply(HttpExchange exchange, List<String> tokens, JsonObject usage, boolean disconnect) throws IOException {
+        sleepMillis(generationMillis(tokens.size()));
+        completionTokens.addAndGet(tokens.size());
+        byte[] body = chatCompletionBody(String.join("", tokens), usage).getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream output = exchange.getResponseBody()) {
+            // An injected disconnect sends half the body and closes the connection.
+            output.write(body, 0, disconnect ? body.length / 2 : body.length);
+        }
+    }
+
+    private void streamReply(HttpExchange exchange, List<String> tokens, boolean disconnect) throws IOException {
+        exchange.getResponseHeaders().add("Content-Type", "text/event-stream");
+        exchange.sendResponseHeaders(200, 0);
+        long perToken = generationMillis(1);
+        int cutAt = disconnect ? tokens.size() / 2 : -1;
+        try (OutputStream output = exchange.getResponseBody()) {
+            for (int i = 0; i < tokens.size(); i++) {
+                if (i == cutAt) {
+                    return;
+                }
+                sleepMillis(perToken);
+                output.write(("data: " + chunkBody(tokens.get(i)) + "\n\n").getBytes(StandardCharsets.UTF_8));
+                output.flush();
+                completionTokens.incrementAndGet();
+            }
+            output.write("data: [DONE]\n\n".getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * A canned reply split into word-sized tokens, followed by {@link Behavior#rambleTokens()} of filler after the
+     * phase directive, then cut at the first stop sequence and at {@code max_tokens}.
+     */
+    private List<String> replyTokens(JsonObject request, ThreadLocalRandom random) {
+        StringBuilder text = new StringBuilder(REPLIES.get(random.nextInt(REPLIES.size()))).append(" [[PHASE:1]]");
+        for (int i = 0; i < behavior.rambleTokens(); i++) {
+            text.append(' ').append(RAMBLE_WORDS[i % RAMBLE_WORDS.length]);
+        }
+        String reply = text.toString();
+        if (request.has("stop") && request.get("stop").isJsonArray()) {
+            for (JsonElement stop : request.getAsJsonArray("stop")) {
+                int at = reply.indexOf(stop.getAsString());
+                if (at >= 0) {
+                    reply = reply.substring(0, at);
+                }
+            }
+        }
+        List<String> tokens = new ArrayList<>();
+        int start = 0;
+        for (int i = 1; i <= reply.length(); i++) {
+            if (i == reply.length() || reply.charAt(i) == ' ') {
+                tokens.add(reply.substring(start, i));
+                start = i;
+            }
+        }
+        int maxTokens = request.has("max_tokens") ? request.get("max_tokens").getAsInt() : -1;
+        return maxTokens > 0 && tokens.size() > maxTokens ? tokens.subList(0, maxTokens) : tokens;
+    }
+
+    private long generationMillis(int tokens) {
+        return behavior.tokensPerSecond() <= 0.0D ? 0L : Math.round(tokens * 1000.0D / behavior.tokensPerSecond());
+    }
+
+    private boolean acquireSlot() {
+        if (slots == null) {
+            return true;
+        }
+        try {
+            slots.acquire();
+            return true;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Returns the number of leading characters shared with the best cached prompt and remembers this prompt.
+     */
+    private synchronized int recordPrompt(String prompt) {
+        int best = 0;
+        for (String cachedPrompt : cachedPrompts) {
+            best = Math.max(best, commonPrefixLength(cachedPrompt, prompt));
+        }
+        cachedPrompts.remove(prompt);
+        cachedPrompts.addFirst(prompt);
+        while (cachedPrompts.size() > cacheSlots) {
+            cachedPrompts.removeLast();
+        }
+        return best;
+    }
+
+    static String chatCompletionBody(String content, JsonObject usage) {
+        JsonObject message = new JsonObject();
+        message.addProperty("role", "assistant");
+        message.addProperty("content", content);
+        JsonObject choice = new JsonObject();
+        choice.addProperty("index", 0);
+        choice.add("message", message);
+        choice.addProperty("finish_reason", "stop");
+        JsonArray choices = new JsonArray();
+        choices.add(choice);
+        JsonObject response = new JsonObject();
+        response.addProperty("object", "chat.completion");
+        response.add("choices", choices);
+        if (usage != null) {
+            response.add("usage", usage);
+        }
+        return response.toString();
+    }
+
+    private static String chunkBody(String content) {
+        JsonObject delta = new JsonObject();
+        delta.addProperty("content", content);
+        JsonObject choice = new JsonObject();
+        choice.addProperty("index", 0);
+        choice.add("delta", delta);
+        JsonArray choices = new JsonArray();
+        choices.add(choice);
+        JsonObject chunk = new JsonObject();
+        chunk.addProperty("object", "chat.completion.chunk");
+        chunk.add("choices", choices);
+        return chunk.toString();
+    }
+
+    private static JsonObject parseRequest(String body) {
+        JsonElement parsed = JsonParser.parseString(body);
+        return parsed.isJsonObject() ? parsed.getAsJsonObject() : new JsonObject();
+    }
+
+    private static String flattenPrompt(JsonObject request) {
+        StringBuilder prompt = new StringBuilder();
+        if (request.has("messages")) {
+            for (JsonElement element : request.getAsJsonArray("messages")) {
+                JsonObject message = element.getAsJsonObject();
+                prompt.append('<').append(message.get("role").getAsString()).append(">\n")
+                        .append(message.get("content").getAsString()).append('\n');
+            }
+        }
+        return prompt.toString();
+    }
+
+    private static String readBody(InputStream input) throws IOException {
+        return new String(input.readAllBytes(), StandardCharsets.UTF_8);
+    }
+
+    private static int commonPrefixLength(String a, String b) {
+        int limit = Math.min(a.length(), b.length());
+        int i = 0;
+        while (i < limit && a.charAt(i) == b.charAt(i)) {
+            i++;
+        }
+        return i;
+    }
+
+    private static int estimateTokens(int characters) {
+        return (characters + CHARS_PER_TOKEN - 1) / CHARS_PER_TOKEN;
+    }
+
+    private static void sleepMillis(long millis) {
+        if (millis <= 0L) {
+            return;
+        }
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * A distribution of latencies in milliseconds.
+     */
+    @FunctionalInterface
+    public interface LatencyDistribution {
+        long sampleMs(ThreadLocalRandom random);
+
+        static LatencyDistribution fixed(long millis) {
+            return random -> millis;
+        }
+
+        static LatencyDistribution uniform(long minMillis, long maxMillis) {
+            return random -> minMillis >= maxMillis ? minMillis : random.nextLong(minMillis, maxMillis + 1);
+        }
+
+        /**
+         * A long-tailed distribution like real inference latency: half the samples are below {@code medianMillis},
+         * and a larger {@code sigma} stretches the tail (0.5 puts p99 at about 3.2 times the median).
+         */
+        static LatencyDistribution logNormal(long medianMillis, double sigma) {
+            return random -> Math.round(medianMillis * Math.exp(sigma * random.nextGaussian()));
+        }
+    }
+
+    /**
+     * How the stub behaves under load.
+     *
+     * @param firstTokenLatency time from accepting a request to its first token, i.e. queueing plus prefill
+     * @param tokensPerSecond   generation rate per request; 0 generates instantly
+     * @param slots             requests generated in parallel, like llama.cpp's {@code --parallel}; 0 is unlimited
+     * @param errorRate         share of requests answered with HTTP 500 or 503 straight away
+     * @param hangRate          share of requests that are accepted and never answered
+     * @param disconnectRate    share of requests whose connection drops halfway through the reply
+     * @param rambleTokens      filler tokens the model generates after the phase directive unless stopped
+     */
+    public record Behavior(LatencyDistribution firstTokenLatency, double tokensPerSecond, int slots, double errorRate,
+                           double hangRate, double disconnectRate, int rambleTokens) {
+        public static final Behavior INSTANT = new Behavior(LatencyDistribution.fixed(0L), 0.0D, 0, 0.0D, 0.0D, 0.0D, 0);
+
+        public Behavior withFirstTokenLatency(LatencyDistribution latency) {
+            return new Behavior(latency, tokensPerSecond, slots, errorRate, hangRate, disconnectRate, rambleTokens);
+        }
+
+        public Behavior withTokensPerSecond(double rate) {
+            return new Behavior(firstTokenLatency, rate, slots, errorRate, hangRate, disconnectRate, rambleTokens);
+        }
+
+        public Behavior withSlots(int parallel) {
+            return new Behavior(firstTokenLatency, tokensPerSecond, parallel, errorRate, hangRate, disconnectRate, rambleTokens);
+        }
+
+        public Behavior withFailures(double errors, double hangs, double disconnects) {
+            return new Behavior(firstTokenLatency, tokensPerSecond, slots, errors, hangs, disconnects, rambleTokens);
+        }
+
+        public Behavior withRambleTokens(int tokens) {
+            return new Behavior(firstTokenLatency, tokensPerSecond, slots, errorRate, hangRate, disconnectRate, tokens);
+        }
+    }
+}
@@ -1,5 +1,11 @@
 package mf.minefriend;
 
+import com.mojang.logging.LogUtils;
+import mf.minefriend.chat.CompletionPromptFormat;
+import mf.minefriend.chat.FriendChatDelivery;
+import mf.minefriend.chat.LlmBackendPool;
+import mf.minefriend.chat.LlmEndpoint;
+import mf.minefriend.chat.OfflineDialogue;
 import net.minecraft.resources.ResourceLocation;
 import net.minecraft.world.item.Item;
 import net.minecraftforge.common.ForgeConfigSpec;
@@ -7,6 +13,7 @@ import net.minecraftforge.eventbus.api.SubscribeEvent;
 import net.minecraftforge.fml.common.Mod;
 import net.minecraftforge.fml.event.config.ModConfigEvent;
 import net.minecraftforge.registries.ForgeRegistries;
+import org.slf4j.Logger;
 
 import java.util.Collections;
 import java.util.List;
@@ -18,6 +25,7 @@ import java.util.stream.Collectors;
 // Demonstrates how to use Forge's config APIs
 @Mod.EventBusSubscriber(modid = Minefriend.MODID, bus = Mod.EventBusSubscriber.Bus.MOD)
 public class Config {
+    private static final Logger LOGGER = LogUtils.getLogger();
     private static final ForgeConfigSpec.Builder BUILDER = new ForgeConfigSpec.Builder();
 
     private static final ForgeConfigSpec.BooleanValue LOG_DIRT_BLOCK = BUILDER.comment("Whether to log the dirt block on common setup").define("logDirtBlock", true);
@@ -29,12 +37,171 @@ public class Config {
     // a list of strings that are treated as resource locations for items
     private static final ForgeConfigSpec.ConfigValue<List<? extends String>> ITEM_STRINGS = BUILDER.comment("A list of items to log on common setup.").defineListAllowEmpty("items", List.of("minecraft:iron_ingot"), Config::validateItemName);
 
+    private static final ForgeConfigSpec.IntValue LLM_MAX_CONCURRENT_REQUESTS = BUILDER.comment("How many LLM generations may run against the backend at the same time").defineInRange("llmMaxConcurrentRequests", 2, 1, 64);
+
+    private static final ForgeConfigSpec.IntValue LLM_MAX_QUEUED_REQUESTS = BUILDER.comment("How many LLM requests may wait for a free slot before new ones are rejected").defineInRange("llmMaxQueuedRequests", 64, 1, 4096);
+
+    private static final ForgeConfigSpec.BooleanValue LLM_STREAM_REPLIES = BUILDER.comment("Whether to stream LLM replies and post the first sentence as soon as it is generated").define("llmStreamReplies", true);
+
+    private static final ForgeConfigSpec.IntValue LLM_REPLY_CACHE_SIZE = BUILDER.comment("How many friend replies to keep for repeated player messages (0 disables the cache)").defineInRange("llmReplyCacheSize", 256, 0, 65536);
+
+    private static final ForgeConfigSpec.IntValue LLM_REPLY_CACHE_TTL_SECONDS = BUILDER.comment("How long a cached friend reply may be reused, in seconds").defineInRange("llmReplyCacheTtlSeconds", 600, 1, 86400);
+
+    private static final ForgeConfigSpec.IntValue LLM_BATCH_WINDOW_TICKS = BUILDER.comment("How many server ticks to collect LLM requests before releasing them together (0 sends each request immediately)").defineInRange("llmBatchWindowTicks", 0, 0, 20);
+
+    private static final ForgeConfigSpec.IntValue LLM_BATCH_MAX_SIZE = BUILDER.comment("Release a batch early once it holds this many LLM requests").defineInRange("llmBatchMaxSize", 8, 1, 64);
+
+    private static final ForgeConfigSpec.BooleanValue LLM_SCRIPTED_FALLBACK = BUILDER.comment("Whether the friend answers with its scripted dialogue when the LLM is unavailable or too slow").define("llmScriptedFallback", true);
+
+    private static final ForgeConfigSpec.EnumValue<OfflineDialogue.Mode> LLM_OFFLINE_DIALOGUE = BUILDER.comment("In-process dialogue model that needs no LLM: OFF, FALLBACK (answers when the LLM fails, before the scripted dialogue) or PRIMARY (never asks the LLM)").defineEnum("llmOfflineDialogue", OfflineDialogue.Mode.FALLBACK);
+
+    private static final ForgeConfigSpec.IntValue LLM_REPLY_DEADLINE_MS = BUILDER.comment("How long a player waits for an LLM reply before the scripted reply is used, in milliseconds; a reply that would be posted later is dropped as stale").defineInRange("llmReplyDeadlineMs", 8000, 500, 120000);
+
+    private static final ForgeConfigSpec.IntValue LLM_GREETING_DEADLINE_MS = BUILDER.comment("How long an LLM greeting may take before the scripted greeting is used, in milliseconds").defineInRange("llmGreetingDeadlineMs", 15000, 500, 120000);
+
+    private static final ForgeConfigSpec.IntValue LLM_AMBIENT_DEADLINE_MS = BUILDER.comment("How long an ambient LLM line may wait before it is dropped, in milliseconds").defineInRange("llmAmbientDeadlineMs", 30000, 500, 600000);
+
+    private static final ForgeConfigSpec.IntValue LLM_BREAKER_WINDOW = BUILDER.comment("How many recent LLM calls the circuit breaker looks at").defineInRange("llmBreakerWindow", 20, 1, 256);
+
+    private static final ForgeConfigSpec.IntValue LLM_BREAKER_MIN_SAMPLES = BUILDER.comment("How many LLM calls must be observed before the circuit breaker may open").defineInRange("llmBreakerMinSamples", 5, 1, 256);
+
+    private static final ForgeConfigSpec.DoubleValue LLM_BREAKER_FAILURE_RATIO = BUILDER.comment("Share of failed or slow LLM calls that opens the circuit breaker").defineInRange("llmBreakerFailureRatio", 0.5D, 0.05D, 1.0D);
+
+    private static final ForgeConfigSpec.IntValue LLM_BREAKER_SLOW_CALL_MS = BUILDER.comment("LLM calls slower than this count as failures for the circuit breaker, in milliseconds; must be below llmReplyDeadlineMs, and replies still running at that deadline count as failures too").defineInRange("llmBreakerSlowCallMs", 6000, 100, 120000);
+
+    private static final ForgeConfigSpec.IntValue LLM_BREAKER_OPEN_SECONDS = BUILDER.comment("How long the circuit breaker stays open before probing the backend again, in seconds").defineInRange("llmBreakerOpenSeconds", 30, 1, 3600);
+
+    // Inference endpoints as "url|model|weight|maxConcurrency|backend"; everything after the url is optional, backend defaults to openai
+    private static final ForgeConfigSpec.ConfigValue<List<? extends String>> LLM_ENDPOINTS = BUILDER.comment("LLM endpoints as url|model|weight|maxConcurrency|backend, where backend is openai (default), llamacpp (native /completion, maxConcurrency = --parallel) or stub. Requests go to the least loaded healthy endpoint.").defineListAllowEmpty("llmEndpoints", List.of(LlmBackendPool.DEFAULT_ENDPOINT), Config::validateEndpoint);
+    private static final ForgeConfigSpec.EnumValue<CompletionPromptFormat> LLM_COMPLETION_PROMPT_FORMAT = BUILDER.comment("Chat template for llamacpp endpoints, which take a raw prompt: CHATML, MISTRAL, LLAMA3 or PLAIN").defineEnum("llmCompletionPromptFormat", CompletionPromptFormat.MISTRAL);
+
+    private static final ForgeConfigSpec.ConfigValue<String> LLM_SMALL_MODEL = BUILDER.comment("Smaller, faster model for short early-phase small talk, served by the same endpoints (empty sends every turn to the endpoint's model)").define("llmSmallModel", "");
+
+    private static final ForgeConfigSpec.IntValue LLM_SMALL_MODEL_MAX_CHARS = BUILDER.comment("Longest player message, in characters, that may go to the small model").defineInRange("llmSmallModelMaxChars", 60, 1, 256);
+
+    private static final ForgeConfigSpec.IntValue LLM_SMALL_MODEL_MAX_PHASE = BUILDER.comment("Latest friend phase in which the small model is used").defineInRange("llmSmallModelMaxPhase", 1, 0, 4);
+
+    private static final ForgeConfigSpec.IntValue LLM_SMALL_MODEL_MAX_HISTORY_TOKENS = BUILDER.comment("Most conversation history, in estimated tokens, a turn may carry and still go to the small model").defineInRange("llmSmallModelMaxHistoryTokens", 300, 0, 8192);
+
+    private static final ForgeConfigSpec.IntValue LLM_ENDPOINT_EJECT_AFTER_FAILURES = BUILDER.comment("Consecutive failures after which an LLM endpoint is taken out of rotation").defineInRange("llmEndpointEjectAfterFailures", 3, 1, 100);
+
+    private static final ForgeConfigSpec.IntValue LLM_ENDPOINT_EJECT_SECONDS = BUILDER.comment("How long an ejected LLM endpoint stays out of rotation, in seconds").defineInRange("llmEndpointEjectSeconds", 30, 1, 3600);
+
+    private static final ForgeConfigSpec.DoubleValue LLM_TIMEOUT_P99_MULTIPLIER = BUILDER.comment("LLM request timeout as a multiple of the endpoint's observed p99 reply latency").defineInRange("llmTimeoutP99Multiplier", 2.0D, 1.0D, 10.0D);
+
+    private static final ForgeConfigSpec.IntValue LLM_MIN_REQUEST_TIMEOUT_MS = BUILDER.comment("Lower bound for the adaptive LLM request timeout, in milliseconds").defineInRange("llmMinRequestTimeoutMs", 3000, 500, 120000);
+
+    private static final ForgeConfigSpec.IntValue LLM_MAX_REQUEST_TIMEOUT_MS = BUILDER.comment("Upper bound for the adaptive LLM request timeout, also used until enough latencies are known, in milliseconds").defineInRange("llmMaxRequestTimeoutMs", 60000, 500, 600000);
+
+    private static final ForgeConfigSpec.IntValue LLM_TIMEOUT_MIN_SAMPLES = BUILDER.comment("Replies an endpoint must have answered before its request timeout adapts to observed latency").defineInRange("llmTimeoutMinSamples", 20, 1, 200);
+
+    private static final ForgeConfigSpec.IntValue LLM_PROBE_INTERVAL_SECONDS = BUILDER.comment("How often every LLM endpoint gets a health probe, in seconds (0 disables probing)").defineInRange("llmProbeIntervalSeconds", 30, 0, 3600);
+
+    private static final ForgeConfigSpec.BooleanValue LLM_WARMUP_ON_START = BUILDER.comment("Send a warm-up request to every LLM endpoint when the server starts so the model is loaded before players join").define("llmWarmupOnStart", true);
+
+    private static final ForgeConfigSpec.IntValue LLM_MEMORY_WINDOW_TOKENS = BUILDER.comment("Approximate tokens of recent conversation sent verbatim with every LLM request; older turns are summarized (0 disables conversation memory)").defineInRange("llmMemoryWindowTokens", 600, 0, 8000);
+
+    private static final ForgeConfigSpec.IntValue LLM_MEMORY_SUMMARY_TOKENS = BUILDER.comment("Approximate token budget for the running summary of older conversation").defineInRange("llmMemorySummaryTokens", 120, 16, 2000);
+
+    private static final ForgeConfigSpec.IntValue LLM_PHASE_ONE_MAX_TOKENS = BUILDER.comment("Most tokens a friend reply may use in phase 1 when the LLM queue is empty").defineInRange("llmPhaseOneMaxTokens", 64, 8, 4096);
+
+    private static final ForgeConfigSpec.IntValue LLM_PHASE_TWO_MAX_TOKENS = BUILDER.comment("Most tokens a friend reply may use in phase 2 when the LLM queue is empty").defineInRange("llmPhaseTwoMaxTokens", 40, 8, 4096);
+
+    private static final ForgeConfigSpec.IntValue LLM_MIN_REPLY_TOKENS = BUILDER.comment("Token limit replies are tightened to when the LLM queue is deep").defineInRange("llmMinReplyTokens", 24, 8, 4096);
+
+    private static final ForgeConfigSpec.IntValue LLM_TOKEN_LIMIT_QUEUE_DEPTH = BUILDER.comment("Queued LLM requests at which reply token limits reach llmMinReplyTokens (0 keeps limits fixed)").defineInRange("llmTokenLimitQueueDepth", 8, 0, 1000);
+
+    private static final ForgeConfigSpec.BooleanValue LLM_INTENT_GATE = BUILDER.comment("Skip the LLM for chat lines that are not meant for the friend and answer bare greetings with canned lines").define("llmIntentGate", true);
+
+    private static final ForgeConfigSpec.DoubleValue LLM_INTENT_RADIUS = BUILDER.comment("On multiplayer servers, how close the friend must be, in blocks, to answer chat that does not name it").defineInRange("llmIntentRadius", 24.0D, 1.0D, 256.0D);
+
+    private static final ForgeConfigSpec.BooleanValue LLM_AMBIENT_LINES = BUILDER.comment("Let the friend say pre-generated LLM lines while the player is idle").define("llmAmbientLines", true);
+
+    private static final ForgeConfigSpec.IntValue LLM_AMBIENT_POOL_SIZE = BUILDER.comment("Ambient lines generated ahead of time per player while the LLM backend is idle").defineInRange("llmAmbientPoolSize", 3, 0, 16);
+
+    private static final ForgeConfigSpec.IntValue LLM_AMBIENT_IDLE_SECONDS = BUILDER.comment("How long the player must be quiet before the friend may say an ambient line, in seconds").defineInRange("llmAmbientIdleSeconds", 90, 10, 3600);
+
+    private static final ForgeConfigSpec.IntValue LLM_PLAYER_RATE_LIMIT_PER_MINUTE = BUILDER.comment("Chat lines per minute each player may send to the LLM; lines over the limit are folded into their next request (0 disables)").defineInRange("llmPlayerRateLimitPerMinute", 6, 0, 600);
+
+    private static final ForgeConfigSpec.IntValue LLM_PLAYER_RATE_LIMIT_BURST = BUILDER.comment("How many chat lines a player may send to the LLM in a quick burst before the per-minute limit applies").defineInRange("llmPlayerRateLimitBurst", 3, 1, 100);
+
+    private static final ForgeConfigSpec.IntValue LLM_SERVER_RATE_LIMIT_PER_MINUTE = BUILDER.comment("Chat lines per minute all players together may send to the LLM (0 disables)").defineInRange("llmServerRateLimitPerMinute", 60, 0, 6000);
+
+    private static final ForgeConfigSpec.IntValue LLM_SERVER_RATE_LIMIT_BURST = BUILDER.comment("How many chat lines all players together may send to the LLM in a quick burst").defineInRange("llmServerRateLimitBurst", 10, 1, 1000);
+
+    private static final ForgeConfigSpec.EnumValue<FriendChatDelivery.Mode> FRIEND_CHAT_DELIVERY = BUILDER.comment("Who sees a friend's chat lines: GLOBAL (everyone), OWNER (only its player) or RADIUS (its player and anyone near the friend)").defineEnum("friendChatDelivery", FriendChatDelivery.Mode.GLOBAL);
+
+    private static final ForgeConfigSpec.DoubleValue FRIEND_CHAT_RADIUS = BUILDER.comment("With RADIUS delivery, how close to the friend, in blocks, other players must be to see its lines").defineInRange("friendChatRadius", 32.0D, 1.0D, 512.0D);
+
+    private static final ForgeConfigSpec.IntValue LLM_GREETING_CACHE_SIZE = BUILDER.comment("Greetings generated ahead of time per friend name and phase while the LLM backend is idle (0 generates every greeting on demand)").defineInRange("llmGreetingCacheSize", 2, 0, 16);
+
+    private static final ForgeConfigSpec.BooleanValue CHAT_ARCHIVE_ENABLED = BUILDER.comment("Keep everything each player says in chat with the world, so the friend can bring back the past line that fits").define("chatArchiveEnabled", true);
+
+    private static final ForgeConfigSpec.IntValue CHAT_ARCHIVE_MAX_LINES = BUILDER.comment("Chat lines kept per player; past this the oldest half is dropped").defineInRange("chatArchiveMaxLines", 100000, 1000, 2000000);
+
+    private static final ForgeConfigSpec.IntValue CHAT_ARCHIVE_MIN_SIMILARITY = BUILDER.comment("How alike, in percent of shared word sketch bits, a past chat line must be to count as similar").defineInRange("chatArchiveMinSimilarity", 25, 1, 100);
+
+    private static final ForgeConfigSpec.IntValue CHAT_ARCHIVE_PROMPT_LINES = BUILDER.comment("Similar past chat lines added to LLM prompts beyond the recent conversation (0 disables)").defineInRange("chatArchivePromptLines", 2, 0, 8);
+
     static final ForgeConfigSpec SPEC = BUILDER.build();
 
     public static boolean logDirtBlock;
     public static int magicNumber;
     public static String magicNumberIntroduction;
     public static Set<Item> items;
+    public static int llmMaxConcurrentRequests = 2;
+    public static int llmMaxQueuedRequests = 64;
+    public static boolean llmStreamReplies = true;
+    public static int llmReplyCacheSize = 256;
+    public static int llmReplyCacheTtlSeconds = 600;
+    public static int llmBatchWindowTicks = 0;
+    public static int llmBatchMaxSize = 8;
+    public static boolean llmScriptedFallback = true;
+    public static OfflineDialogue.Mode llmOfflineDialogue = OfflineDialogue.Mode.FALLBACK;
+    public static int llmReplyDeadlineMs = 8000;
+    public static int llmGreetingDeadlineMs = 15000;
+    public static int llmAmbientDeadlineMs = 30000;
+    public static int llmBreakerWindow = 20;
+    public static int llmBreakerMinSamples = 5;
+    public static double llmBreakerFailureRatio = 0.5D;
+    public static int llmBreakerSlowCallMs = 6000;
+    public static int llmBreakerOpenSeconds = 30;
+    public static List<? extends String> llmEndpoints = List.of(LlmBackendPool.DEFAULT_ENDPOINT);
+    public static CompletionPromptFormat llmCompletionPromptFormat = CompletionPromptFormat.MISTRAL;
+    public static String llmSmallModel = "";
+    public static int llmSmallModelMaxChars = 60;
+    public static int llmSmallModelMaxPhase = 1;
+    public static int llmSmallModelMaxHistoryTokens = 300;
+    public static int llmEndpointEjectAfterFailures = 3;
+    public static int llmEndpointEjectSeconds = 30;
+    public static double llmTimeoutP99Multiplier = 2.0D;
+    public static int llmMinRequestTimeoutMs = 3000;
+    public static int llmMaxRequestTimeoutMs = 60000;
+    public static int llmTimeoutMinSamples = 20;
+    public static int llmProbeIntervalSeconds = 30;
+    public static boolean llmWarmupOnStart = true;
+    public static int llmMemoryWindowTokens = 600;
+    public static int llmMemorySummaryTokens = 120;
+    public static int llmPhaseOneMaxTokens = 64;
+    public static int llmPhaseTwoMaxTokens = 40;
+    public static int llmMinReplyTokens = 24;
+    public static int llmTokenLimitQueueDepth = 8;
+    public static boolean llmIntentGate = true;
+    public static double llmIntentRadius = 24.0D;
+    public static boolean llmAmbientLines = true;
+    public static int llmAmbientPoolSize = 3;
+    public static int llmAmbientIdleSeconds = 90;
+    public static int llmPlayerRateLimitPerMinute = 6;
+    public static int llmPlayerRateLimitBurst = 3;
+    public static int llmServerRateLimitPerMinute = 60;
+    public static int llmServerRateLimitBurst = 10;
+    public static FriendChatDelivery.Mode friendChatDelivery = FriendChatDelivery.Mode.GLOBAL;
+    public static double friendChatRadius = 32.0D;
+    public static int llmGreetingCacheSize = 2;
+    public static boolean chatArchiveEnabled = true;
+    public static int chatArchiveMaxLines = 100000;
+    public static int chatArchiveMinSimilarity = 25;
+    public static int chatArchivePromptLines = 2;
 
     private static boolean validateItemName(final Object obj) {
         if (!(obj instanceof final String itemName)) {
@@ -44,11 +211,75 @@ public class Config {
         return location != null && ForgeRegistries.ITEMS.containsKey(location);
     }
 
+    private static boolean validateEndpoint(final Object obj) {
+        return obj instanceof final String spec && LlmEndpoint.parse(spec).isPresent();
+    }
+
     @SubscribeEvent
     static void onLoad(final ModConfigEvent event) {
         logDirtBlock = LOG_DIRT_BLOCK.get();
         magicNumber = MAGIC_NUMBER.get();
         magicNumberIntroduction = MAGIC_NUMBER_INTRODUCTION.get();
+        llmMaxConcurrentRequests = LLM_MAX_CONCURRENT_REQUESTS.get();
+        llmMaxQueuedRequests = LLM_MAX_QUEUED_REQUESTS.get();
+        llmStreamReplies = LLM_STREAM_REPLIES.get();
+        llmReplyCacheSize = LLM_REPLY_CACHE_SIZE.get();
+        llmReplyCacheTtlSeconds = LLM_REPLY_CACHE_TTL_SECONDS.get();
+        llmBatchWindowTicks = LLM_BATCH_WINDOW_TICKS.get();
+        llmBatchMaxSize = LLM_BATCH_MAX_SIZE.get();
+        llmScriptedFallback = LLM_SCRIPTED_FALLBACK.get();
+        llmOfflineDialogue = LLM_OFFLINE_DIALOGUE.get();
+        llmReplyDeadlineMs = LLM_REPLY_DEADLINE_MS.get();
+        llmGreetingDeadlineMs = LLM_GREETING_DEADLINE_MS.get();
+        llmAmbientDeadlineMs = LLM_AMBIENT_DEADLINE_MS.get();
+        llmBreakerWindow = LLM_BREAKER_WINDOW.get();
+        llmBreakerMinSamples = LLM_BREAKER_MIN_SAMPLES.get();
+        llmBreakerFailureRatio = LLM_BREAKER_FAILURE_RATIO.get();
+        llmBreakerSlowCallMs = LLM_BREAKER_SLOW_CALL_MS.get();
+        if (llmBreakerSlowCallMs >= llmReplyDeadlineMs) {
+            // A threshold at or past the deadline never fires: the reply is abandoned before it can count as slow.
+            int clamped = Math.max(100, llmReplyDeadlineMs * 3 / 4);
+            LOGGER.warn("[MineFriend-Config] llmBreakerSlowCallMs ({}) must be below llmReplyDeadlineMs ({}); using {}.",
+                    llmBreakerSlowCallMs, llmReplyDeadlineMs, clamped);
+            llmBreakerSlowCallMs = clamped;
+        }
+        llmBreakerOpenSeconds = LLM_BREAKER_OPEN_SECONDS.get();
+        llmEndpoints = LLM_ENDPOINTS.get();
+        llmCompletionPromptFormat = LLM_COMPLETION_PROMPT_FORMAT.get();
+        llmSmallModel = LLM_SMALL_MODEL.get();
+        llmSmallModelMaxChars = LLM_SMALL_MODEL_MAX_CHARS.get();
+        llmSmallModelMaxPhase = LLM_SMALL_MODEL_MAX_PHASE.get();
+        llmSmallModelMaxHistoryTokens = LLM_SMALL_MODEL_MAX_HISTORY_TOKENS.get();
+        llmEndpointEjectAfterFailures = LLM_ENDPOINT_EJECT_AFTER_FAILURES.get();
+        llmEndpointEjectSeconds = LLM_ENDPOINT_EJECT_SECONDS.get();
+        llmTimeoutP99Multiplier = LLM_TIMEOUT_P99_MULTIPLIER.get();
+        llmMinRequestTimeoutMs = LLM_MIN_REQUEST_TIMEOUT_MS.get();
+        llmMaxRequestTimeoutMs = LLM_MAX_REQUEST_TIMEOUT_MS.get();
+        llmTimeoutMinSamples = LLM_TIMEOUT_MIN_SAMPLES.get();
+        llmProbeIntervalSeconds = LLM_PROBE_INTERVAL_SECONDS.get();
+        llmWarmupOnStart = LLM_WARMUP_ON_START.get();
+        llmMemoryWindowTokens = LLM_MEMORY_WINDOW_TOKENS.get();
+        llmMemorySummaryTokens = LLM_MEMORY_SUMMARY_TOKENS.get();
+        llmPhaseOneMaxTokens = LLM_PHASE_ONE_MAX_TOKENS.get();
+        llmPhaseTwoMaxTokens = LLM_PHASE_TWO_MAX_TOKENS.get();
+        llmMinReplyTokens = LLM_MIN_REPLY_TOKENS.get();
+        llmTokenLimitQueueDepth = LLM_TOKEN_LIMIT_QUEUE_DEPTH.get();
+        llmIntentGate = LLM_INTENT_GATE.get();
+        llmIntentRadius = LLM_INTENT_RADIUS.get();
+        llmAmbientLines = LLM_AMBIENT_LINES.get();
+        llmAmbientPoolSize = LLM_AMBIENT_POOL_SIZE.get();
+        llmAmbientIdleSeconds = LLM_AMBIENT_IDLE_SECONDS.get();
+        llmPlayerRateLimitPerMinute = LLM_PLAYER_RATE_LIMIT_PER_MINUTE.get();
+        llmPlayerRateLimitBurst = LLM_PLAYER_RATE_LIMIT_BURST.get();
+        llmServerRateLimitPerMinute = LLM_SERVER_RATE_LIMIT_PER_MINUTE.get();
+        llmServerRateLimitBurst = LLM_SERVER_RATE_LIMIT_BURST.get();
+        friendChatDelivery = FRIEND_CHAT_DELIVERY.get();
+        friendChatRadius = FRIEND_CHAT_RADIUS.get();
+        llmGreetingCacheSize = LLM_GREETING_CACHE_SIZE.get();
+        chatArchiveEnabled = CHAT_ARCHIVE_ENABLED.get();
+        chatArchiveMaxLines = CHAT_ARCHIVE_MAX_LINES.get();
+        chatArchiveMinSimilarity = CHAT_ARCHIVE_MIN_SIMILARITY.get();
+        chatArchivePromptLines = CHAT_ARCHIVE_PROMPT_LINES.get();
 
         // convert the list of strings into a set of items
         items = ITEM_STRINGS.get().stream()
@@ -0,0 +1,178 @@
+package mf.minefriend.chat;
+
+import com.mojang.logging.LogUtils;
+import mf.minefriend.Config;
+import mf.minefriend.Minefriend;
+import mf.minefriend.friend.state.FriendPhase;
+import net.minecraftforge.event.server.ServerStoppingEvent;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
+import net.minecraftforge.fml.common.Mod;
+import org.slf4j.Logger;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Unprompted lines the friend can say while the player is idle, generated ahead of time. Each player has a small
+ * pool for their friend's current phase, refilled one line at a time as {@link LlmPriority#AMBIENT} work, which never
+ * takes the last free generation slot and is the first work shed under load, and delivered instantly from the pool.
+ * A phase change empties the pool, and lines still being generated for the old phase are thrown away.
+ * Memory per player is bounded by {@code Config.llmAmbientPoolSize} lines of at most {@link #MAX_LINE_LENGTH} chars.
+ */
+@Mod.EventBusSubscriber(modid = Minefriend.MODID, bus = Mod.EventBusSubscriber.Bus.FORGE)
+public final class AmbientLinePool {
+    private static final Logger LOGGER = LogUtils.getLogger();
+    private static final int MAX_LINE_LENGTH = 160;
+    private static final String AMBIENT_PROMPT = "(The player has been quiet for a while. Say something to them unprompted, "
+            + "in character, without repeating anything you said before.)";
+
+    private static final Object LOCK = new Object();
+    private static final Map<UUID, Pool> POOLS = new HashMap<>();
+
+    private static long nextEpoch;
+    private static long generated;
+    private static long delivered;
+    private static long discarded;
+
+    private AmbientLinePool() {
+    }
+
+    /**
+     * Takes a line for the given phase, if one is ready, and tops the pool up in the background. Never waits for
+     * the backend.
+     */
+    public static Optional<String> poll(UUID playerId, String playerName, String personaName, FriendPhase phase) {
+        String line;
+        synchronized (LOCK) {
+            Pool pool = poolFor(playerId, personaName, phase);
+            line = pool.lines.pollFirst();
+            if (line != null) {
+                delivered++;
+            }
+        }
+        prefetch(playerId, playerName, personaName, phase);
+        return Optional.ofNullable(line);
+    }
+
+    /**
+     * Starts filling the pool if it is not full. Cheap to call often.
+     */
+    public static void prefetch(UUID playerId, String playerName, String personaName, FriendPhase phase) {
+        if (!Config.llmAmbientLines || Config.llmAmbientPoolSize <= 0) {
+            return;
+        }
+        long epoch;
+        synchronized (LOCK) {
+            Pool pool = poolFor(playerId, personaName, phase);
+            if (pool.filling || pool.lines.size() >= Config.llmAmbientPoolSize) {
+                return;
+            }
+            pool.filling = true;
+            epoch = pool.epoch;
+        }
+        LlmRequestScheduler.submitTask(playerId, playerName, personaName, LlmPriority.AMBIENT,
+                        endpoint -> LlmService.requestFriendReply(playerId, AMBIENT_PROMPT, playerName, personaName, phase,
+                                ConversationMemory.window(playerId), ReplyLimits.maxTokens(phase, 0), endpoint, null))
+                .whenComplete((reply, throwable) -> {
+                    boolean more;
+                    synchronized (LOCK) {
+                        Pool pool = POOLS.get(playerId);
+                        if (pool == null || pool.epoch != epoch) {
+                            // Invalidated while generating; a newer fill may already be running.
+                            discarded++;
+                            return;
+                        }
+                        pool.filling = false;
+                        if (throwable != null || reply == null || reply.isEmpty()) {
+                            LOGGER.debug("[MineFriend-Ambient] No ambient line for '{}': {}", playerName,
+                                    throwable != null ? throwable.toString() : "empty reply");
+                            return;
+                        }
+                        String line = clip(reply.message());
+                        if (!pool.lines.contains(line)) {
+                            pool.lines.addLast(line);
+                            generated++;
+                        }
+                        more = pool.lines.size() < Config.llmAmbientPoolSize;
+                    }
+                    if (more) {
+                        prefetch(playerId, playerName, personaName, phase);
+                    }
+                });
+    }
+
+    /**
+     * Drops the player's pool, for example after a phase change; anything still being generated is discarded.
+     */
+    public static void invalidate(UUID playerId) {
+        synchronized (LOCK) {
+            Pool pool = POOLS.remove(playerId);
+            if (pool != null) {
+                discarded += pool.lines.size();
+            }
+        }
+    }
+
+    public static PoolStats stats() {
+        synchronized (LOCK) {
+            int lines = 0;
+            for (Pool pool : POOLS.values()) {
+                lines += pool.lines.size();
+            }
+            return new PoolStats(POOLS.size(), lines, generated, delivered, discarded);
+        }
+    }
+
+    @SubscribeEvent
+    public static void onServerStopping(ServerStoppingEvent event) {
+        synchronized (LOCK) {
+            POOLS.clear();
+        }
+    }
+
+    /**
+     * The player's pool for the phase, replacing a pool left over from another phase or persona. Call with the
+     * lock held.
+     */
+    private static Pool poolFor(UUID playerId, String personaName, FriendPhase phase) {
+        Pool pool = POOLS.get(playerId);
+        if (pool != null && pool.phase == phase && pool.personaName.equals(personaName)) {
+            return pool;
+        }
+        if (pool != null) {
+            discarded += pool.lines.size();
+        }
+        Pool fresh = new Pool(phase, personaName, ++nextEpoch);
+        POOLS.put(playerId, fresh);
+        return fresh;
+    }
+
+    private static String clip(String line) {
+        if (line.length() <= MAX_LINE_LENGTH) {
+            return line;
+        }
+        int cut = line.lastIndexOf(' ', MAX_LINE_LENGTH);
+        return line.substring(0, cut > 0 ? cut : MAX_LINE_LENGTH);
+    }
+
+    public record PoolStats(int players, int lines, long generated, long delivered, long discarded) {
+    }
+
+    private static final class Pool {
+        private final FriendPhase phase;
+        private final String personaName;
+        private final long epoch;
+        private final Deque<String> lines = new ArrayDeque<>();
+        private boolean filling;
+
+        private Pool(FriendPhase phase, String personaName, long epoch) {
+            this.phase = phase;
+            this.personaName = personaName;
+            this.epoch = epoch;
+        }
+    }
+}
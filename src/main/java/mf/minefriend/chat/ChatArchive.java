@@ -0,0 +1,547 @@
+package mf.minefriend.chat;
+
+import com.mojang.logging.LogUtils;
+import mf.minefriend.Config;
+import mf.minefriend.Minefriend;
+import net.minecraft.world.level.storage.LevelResource;
+import net.minecraftforge.event.server.ServerStartingEvent;
+import net.minecraftforge.event.server.ServerStoppingEvent;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
+import net.minecraftforge.fml.common.Mod;
+import org.slf4j.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Everything each player has said in chat, kept with the world and searchable by similarity, so the friend can bring
+ * back the past line that fits the moment instead of the first or last one it happens to hold. Each player has one
+ * append-only file under {@code data/minefriend_chat}, one line per message, prefixed with the line's
+ * {@link ChatSketchIndex} sketch. While the player is online only the sketches and file positions are held, 16 bytes
+ * a line, plus the text of the last few lines; a match is read back from the file through a read-only channel kept
+ * open with the archive, outside the lock, so a search never holds up recording. All other file work runs on one
+ * background thread in the order it was asked for, so a line becomes searchable a moment after it is recorded. Once
+ * a player has more than {@code Config.chatArchiveMaxLines} lines the oldest half is dropped from the file.
+ */
+@Mod.EventBusSubscriber(modid = Minefriend.MODID, bus = Mod.EventBusSubscriber.Bus.FORGE)
+public final class ChatArchive {
+    private static final Logger LOGGER = LogUtils.getLogger();
+    private static final String DIRECTORY = "minefriend_chat";
+    private static final String EXTENSION = ".log";
+    private static final int SKETCH_CHARS = 16;
+    private static final int TEXT_START = SKETCH_CHARS + 1;
+    private static final int MAX_LINE_CHARS = 256;
+    private static final int MAX_LINE_BYTES = MAX_LINE_CHARS * 4;
+    private static final int RECENT_LINES = 32;
+    private static final int CANDIDATES_PER_LINE = 4;
+
+    private static final Object LOCK = new Object();
+    private static final Map<UUID, Archive> ARCHIVES = new HashMap<>();
+    private static Path directory;
+    private static ExecutorService writer;
+
+    private static long recordedLines;
+    private static long searches;
+    private static long hits;
+    private static long searchNanos;
+
+    private ChatArchive() {
+    }
+
+    /**
+     * Starts loading the player's archive in the background, so the first search does not come up empty.
+     */
+    public static void preload(UUID playerId) {
+        if (Config.chatArchiveEnabled) {
+            synchronized (LOCK) {
+                archive(playerId);
+            }
+        }
+    }
+
+    /**
+     * Appends a line the player said. Cheap; the file is written in the background.
+     */
+    public static void record(UUID playerId, String message) {
+        if (!Config.chatArchiveEnabled || message == null) {
+            return;
+        }
+        String line = clean(message);
+        long sketch = ChatSketchIndex.sketch(ChatSketchIndex.words(line));
+        if (sketch == 0L) {
+            return;
+        }
+        synchronized (LOCK) {
+            Archive archive = archive(playerId);
+            if (archive != null) {
+                submit(() -> append(archive, sketch, line));
+            }
+        }
+    }
+
+    /**
+     * The past line most like the query, other than the query itself, or empty when nothing said before comes close.
+     */
+    public static Optional<String> recall(UUID playerId, String query) {
+        List<String> lines = recall(playerId, query, 1, 0);
+        return lines.isEmpty() ? Optional.empty() : Optional.of(lines.get(0));
+    }
+
+    /**
+     * Up to {@code limit} past lines like the query, the closest first, each sharing at least
+     * {@code Config.chatArchiveMinSimilarity} percent of its words with it. The index proposes a few more lines than
+     * asked for and their text decides.
+     *
+     * @param skipNewest how many of the player's latest lines to leave out, such as those the prompt already carries
+     */
+    public static List<String> recall(UUID playerId, String query, int limit, int skipNewest) {
+        if (!Config.chatArchiveEnabled || query == null || limit <= 0) {
+            return List.of();
+        }
+        Set<String> words = ChatSketchIndex.words(clean(query));
+        long sketch = ChatSketchIndex.sketch(words);
+        if (sketch == 0L) {
+            return List.of();
+        }
+        long startedAt = System.nanoTime();
+        Path file;
+        FileChannel reader;
+        long[] offsets;
+        String[] texts;
+        synchronized (LOCK) {
+            Archive archive = ARCHIVES.get(playerId);
+            if (archive == null || !archive.loaded) {
+                return List.of();
+            }
+            int[] candidates = archive.index.nearest(sketch, Config.chatArchiveMinSimilarity, limit * CANDIDATES_PER_LINE,
+                    archive.index.size() - Math.max(0, skipNewest));
+            offsets = new long[candidates.length];
+            texts = new String[candidates.length];
+            for (int i = 0; i < candidates.length; i++) {
+                offsets[i] = archive.index.offset(candidates[i]);
+                texts[i] = archive.recent(offsets[i]);
+            }
+            file = archive.file;
+            reader = archive.reader;
+        }
+        // The offsets belong to the file the reader has open, even if it is trimmed and swapped meanwhile.
+        List<Match> matches = new ArrayList<>(offsets.length);
+        for (int i = 0; i < offsets.length; i++) {
+            String line = texts[i] != null ? texts[i] : read(file, reader, offsets[i]);
+            int similarity = line == null ? 0 : ChatSketchIndex.similarity(words, ChatSketchIndex.words(line));
+            if (similarity >= Config.chatArchiveMinSimilarity) {
+                matches.add(new Match(line, similarity));
+            }
+        }
+        matches.sort(Comparator.comparingInt(Match::similarity).reversed());
+        List<String> lines = new ArrayList<>(Math.min(limit, matches.size()));
+        for (int i = 0; i < Math.min(limit, matches.size()); i++) {
+            lines.add(matches.get(i).line());
+        }
+        synchronized (LOCK) {
+            searches++;
+            searchNanos += System.nanoTime() - startedAt;
+            if (!lines.isEmpty()) {
+                hits++;
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * Whether {@link #recall(UUID, String, int, int)} has any lines to search for the player once the newest
+     * {@code skipNewest} are left out. Reads no file.
+     */
+    public static boolean canRecall(UUID playerId, int skipNewest) {
+        if (!Config.chatArchiveEnabled) {
+            return false;
+        }
+        synchronized (LOCK) {
+            Archive archive = ARCHIVES.get(playerId);
+            return archive != null && archive.loaded && archive.index.size() > Math.max(0, skipNewest);
+        }
+    }
+
+    /**
+     * Lets go of the player's index. Lines still being written are finished first.
+     */
+    public static void unload(UUID playerId) {
+        synchronized (LOCK) {
+            Archive archive = ARCHIVES.remove(playerId);
+            if (archive != null) {
+                submit(() -> closeReader(archive));
+            }
+        }
+    }
+
+    public static ArchiveStats stats() {
+        synchronized (LOCK) {
+            long lines = 0L;
+            for (Archive archive : ARCHIVES.values()) {
+                lines += archive.index.size();
+            }
+            return new ArchiveStats(ARCHIVES.size(), lines, recordedLines, searches, hits,
+                    searches == 0L ? 0.0D : searchNanos / 1000.0D / searches);
+        }
+    }
+
+    @SubscribeEvent
+    public static void onServerStarting(ServerStartingEvent event) {
+        Path path = event.getServer().getWorldPath(LevelResource.ROOT).resolve("data").resolve(DIRECTORY);
+        synchronized (LOCK) {
+            if (writer != null) {
+                return;
+            }
+            directory = path;
+            writer = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "MineFriend-Chat-Archive");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    @SubscribeEvent
+    public static void onServerStopping(ServerStoppingEvent event) {
+        ExecutorService executor;
+        synchronized (LOCK) {
+            executor = writer;
+            writer = null;
+        }
+        if (executor == null) {
+            return;
+        }
+        executor.shutdown();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        List<Archive> archives;
+        synchronized (LOCK) {
+            archives = new ArrayList<>(ARCHIVES.values());
+            ARCHIVES.clear();
+            directory = null;
+        }
+        archives.forEach(ChatArchive::closeReader);
+    }
+
+    /**
+     * The player's archive, created and queued for loading on first use. Called with the lock held.
+     */
+    private static Archive archive(UUID playerId) {
+        Archive archive = ARCHIVES.get(playerId);
+        if (archive == null && directory != null) {
+            archive = new Archive(directory.resolve(playerId + EXTENSION));
+            ARCHIVES.put(playerId, archive);
+            Archive created = archive;
+            submit(() -> load(created));
+        }
+        return archive;
+    }
+
+    /**
+     * Queues file work. Called with the lock held.
+     */
+    private static void submit(Runnable task) {
+        if (writer == null) {
+            return;
+        }
+        try {
+            writer.execute(task);
+        } catch (RejectedExecutionException ex) {
+            // The server is stopping; the line is lost with the session.
+        }
+    }
+
+    private static void load(Archive archive) {
+        long startedAt = System.nanoTime();
+        ChatSketchIndex index = new ChatSketchIndex();
+        long end = 0L;
+        if (Files.isRegularFile(archive.file)) {
+            try {
+                end = readIndex(archive.file, index);
+                // A line cut off by a crash is dropped so the next one starts cleanly.
+                try (FileChannel channel = FileChannel.open(archive.file, StandardOpenOption.WRITE)) {
+                    if (channel.size() > end) {
+                        channel.truncate(end);
+                    }
+                }
+            } catch (IOException ex) {
+                // The old lines stay in the file but cannot be searched this session; new ones are still added.
+                LOGGER.warn("[MineFriend-Archive] Could not read {}, its older lines are not searchable. {}", archive.file,
+                        ex.getMessage());
+                index = new ChatSketchIndex();
+                end = archive.file.toFile().length();
+            }
+        }
+        archive.end = end;
+        FileChannel reader = end > 0L ? openReader(archive.file) : null;
+        synchronized (LOCK) {
+            archive.index = index;
+            archive.loaded = true;
+            archive.reader = reader;
+        }
+        LOGGER.debug("[MineFriend-Archive] Loaded {} lines from {} in {} ms.", index.size(), archive.file,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt));
+        compactIfFull(archive);
+    }
+
+    /**
+     * Adds the sketch of every whole line in the file to the index.
+     *
+     * @return the length of the file up to the end of its last whole line
+     */
+    private static long readIndex(Path file, ChatSketchIndex index) throws IOException {
+        long end = 0L;
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(file))) {
+            ByteArrayOutputStream line = new ByteArrayOutputStream(MAX_LINE_BYTES);
+            long position = 0L;
+            int next;
+            while ((next = in.read()) >= 0) {
+                position++;
+                if (next != '\n') {
+                    line.write(next);
+                    continue;
+                }
+                long sketch = parseSketch(line.toByteArray());
+                if (sketch != 0L) {
+                    index.add(sketch, end);
+                }
+                line.reset();
+                end = position;
+            }
+        }
+        return end;
+    }
+
+    private static void append(Archive archive, long sketch, String line) {
+        byte[] bytes = (String.format(Locale.ROOT, "%016x", sketch) + '\t' + line + '\n').getBytes(StandardCharsets.UTF_8);
+        try {
+            Files.createDirectories(archive.file.getParent());
+            try (OutputStream out = Files.newOutputStream(archive.file, StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                out.write(bytes);
+            }
+        } catch (IOException ex) {
+            LOGGER.error("[MineFriend-Archive] Could not append to {}.", archive.file, ex);
+            return;
+        }
+        long offset = archive.end;
+        archive.end += bytes.length;
+        FileChannel reader = archive.reader == null ? openReader(archive.file) : null;
+        synchronized (LOCK) {
+            if (reader != null) {
+                archive.reader = reader;
+            }
+            archive.index.add(sketch, offset);
+            archive.remember(offset, line);
+            recordedLines++;
+        }
+        compactIfFull(archive);
+    }
+
+    /**
+     * Drops the oldest half of the lines once the archive is over its cap, by copying the newer half to a fresh file
+     * and swapping it in.
+     */
+    private static void compactIfFull(Archive archive) {
+        ChatSketchIndex index = archive.index;
+        if (index.size() <= Config.chatArchiveMaxLines) {
+            return;
+        }
+        int keep = Config.chatArchiveMaxLines / 2;
+        long cut = index.offset(index.size() - keep);
+        Path temporary = archive.file.resolveSibling(archive.file.getFileName() + ".tmp");
+        try {
+            try (FileChannel source = FileChannel.open(archive.file, StandardOpenOption.READ);
+                 FileChannel target = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                         StandardOpenOption.TRUNCATE_EXISTING)) {
+                long copied = 0L;
+                while (copied < archive.end - cut) {
+                    copied += source.transferTo(cut + copied, archive.end - cut - copied, target);
+                }
+            }
+            // Opened before the swap, so the new offsets are never read through the old file or the other way round.
+            FileChannel reader = FileChannel.open(temporary, StandardOpenOption.READ);
+            FileChannel replaced;
+            synchronized (LOCK) {
+                try {
+                    Files.move(temporary, archive.file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } catch (IOException ex) {
+                    reader.close();
+                    throw ex;
+                }
+                index.keepNewest(keep);
+                index.shift(-cut);
+                archive.shift(-cut);
+                replaced = archive.reader;
+                archive.reader = reader;
+            }
+            close(replaced);
+            archive.end -= cut;
+            LOGGER.info("[MineFriend-Archive] Trimmed {} to its newest {} lines.", archive.file, keep);
+        } catch (IOException ex) {
+            LOGGER.error("[MineFriend-Archive] Could not trim {}.", archive.file, ex);
+        }
+    }
+
+    /**
+     * Reads the text of the line at the offset. Safe to call from any thread; a reader closed meanwhile, because the
+     * player logged out or the file was trimmed, gives null.
+     */
+    private static String read(Path file, FileChannel reader, long offset) {
+        if (reader == null) {
+            return null;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(MAX_LINE_BYTES);
+        try {
+            while (buffer.hasRemaining() && reader.read(buffer, offset + TEXT_START + buffer.position()) > 0) {
+                if (indexOf(buffer, (byte) '\n') >= 0) {
+                    break;
+                }
+            }
+        } catch (ClosedChannelException ex) {
+            return null;
+        } catch (IOException ex) {
+            LOGGER.warn("[MineFriend-Archive] Could not read a line from {}. {}", file, ex.getMessage());
+            return null;
+        }
+        int newline = indexOf(buffer, (byte) '\n');
+        return new String(buffer.array(), 0, newline >= 0 ? newline : buffer.position(), StandardCharsets.UTF_8);
+    }
+
+    private static int indexOf(ByteBuffer buffer, byte value) {
+        byte[] bytes = buffer.array();
+        for (int i = 0; i < buffer.position(); i++) {
+            if (bytes[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static FileChannel openReader(Path file) {
+        try {
+            return FileChannel.open(file, StandardOpenOption.READ);
+        } catch (IOException ex) {
+            LOGGER.warn("[MineFriend-Archive] Could not open {} for searching. {}", file, ex.getMessage());
+            return null;
+        }
+    }
+
+    private static void closeReader(Archive archive) {
+        FileChannel reader;
+        synchronized (LOCK) {
+            reader = archive.reader;
+            archive.reader = null;
+        }
+        close(reader);
+    }
+
+    private static void close(FileChannel reader) {
+        if (reader == null) {
+            return;
+        }
+        try {
+            reader.close();
+        } catch (IOException ex) {
+            LOGGER.debug("[MineFriend-Archive] Could not close a reader. {}", ex.getMessage());
+        }
+    }
+
+    private static long parseSketch(byte[] line) {
+        if (line.length <= TEXT_START || line[SKETCH_CHARS] != '\t') {
+            return 0L;
+        }
+        try {
+            return Long.parseUnsignedLong(new String(line, 0, SKETCH_CHARS, StandardCharsets.US_ASCII), 16);
+        } catch (NumberFormatException ex) {
+            return 0L;
+        }
+    }
+
+    private static String clean(String message) {
+        String line = message.replace('\n', ' ').replace('\r', ' ').replace('\t', ' ').trim();
+        return line.length() > MAX_LINE_CHARS ? line.substring(0, MAX_LINE_CHARS) : line;
+    }
+
+    private static final class Archive {
+        private final Path file;
+        private final long[] recentOffsets = new long[RECENT_LINES];
+        private final String[] recentLines = new String[RECENT_LINES];
+        private ChatSketchIndex index = new ChatSketchIndex();
+        private boolean loaded;
+        private int recentNext;
+        /**
+         * Open for searches once the file exists, and replaced when the file is trimmed. Guarded by the lock; reads
+         * through it need no lock.
+         */
+        private FileChannel reader;
+        /**
+         * Length of the file as written so far. Only the writer thread uses it.
+         */
+        private long end;
+
+        private Archive(Path file) {
+            this.file = file;
+        }
+
+        private void remember(long offset, String line) {
+            recentOffsets[recentNext] = offset;
+            recentLines[recentNext] = line;
+            recentNext = (recentNext + 1) % RECENT_LINES;
+        }
+
+        private void shift(long delta) {
+            for (int i = 0; i < RECENT_LINES; i++) {
+                recentOffsets[i] += delta;
+                if (recentOffsets[i] < 0L) {
+                    recentLines[i] = null;
+                }
+            }
+        }
+
+        /**
+         * The text of the line at the offset when it is one of the last few said, otherwise null. Called with the
+         * lock held.
+         */
+        private String recent(long offset) {
+            for (int i = 0; i < RECENT_LINES; i++) {
+                if (recentLines[i] != null && recentOffsets[i] == offset) {
+                    return recentLines[i];
+                }
+            }
+            return null;
+        }
+    }
+
+    private record Match(String line, int similarity) {
+    }
+
+    public record ArchiveStats(int players, long lines, long recorded, long searches, long hits, double averageSearchMicros) {
+    }
+}
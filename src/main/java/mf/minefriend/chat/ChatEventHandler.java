@@ -1,8 +1,10 @@
 package mf.minefriend.chat;
 
 import com.mojang.logging.LogUtils;
+import mf.minefriend.Config;
 import mf.minefriend.Minefriend;
 import mf.minefriend.chat.LlmService.LlmReply;
+import mf.minefriend.friend.FriendManager;
 import mf.minefriend.friend.state.FriendData;
 import mf.minefriend.friend.state.FriendPhase;
 import net.minecraft.ChatFormatting;
@@ -13,6 +15,14 @@ import net.minecraftforge.eventbus.api.SubscribeEvent;
 import net.minecraftforge.fml.common.Mod;
 import org.slf4j.Logger;
 
+import java.util.Optional;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
 @Mod.EventBusSubscriber(modid = Minefriend.MODID, bus = Mod.EventBusSubscriber.Bus.FORGE)
 public final class ChatEventHandler {
 
@@ -37,64 +47,199 @@ public final class ChatEventHandler {
             String personaName = resolvePersonaName(data);
 
             LOGGER.info("[MineFriend] Current friend phase is: {}, persona name is: {}", phase, personaName);
-            LOGGER.info("[MineFriend] Sending request to LlmService...");
 
-            // Pass the consistent personaName to the service to fix the compilation error
-            LlmService.requestFriendReply(playerMessage, playerName, personaName, phase)
+            ChatIntentGate.Decision decision = ChatIntentGate.classify(player, data, playerMessage);
+            if (decision.intent() == ChatIntentGate.Intent.IGNORE) {
+                LOGGER.debug("[MineFriend] Not answering '{}' ({}).", playerMessage, decision.reason());
+                return;
+            }
+            if (decision.intent() == ChatIntentGate.Intent.CANNED) {
+                LOGGER.debug("[MineFriend] Answering '{}' with a canned line ({}).", playerMessage, decision.reason());
+                ConversationMemory.record(player.getUUID(), personaName, playerName, playerMessage, decision.cannedReply());
+                broadcastReply(player, new LlmReply(personaName, decision.cannedReply(), null));
+                return;
+            }
+            if (OfflineDialogue.isPrimary()) {
+                Optional<String> line = OfflineDialogue.reply(phase, playerMessage, playerName, personaName);
+                if (line.isPresent()) {
+                    ConversationMemory.record(player.getUUID(), personaName, playerName, playerMessage, line.get());
+                    broadcastReply(player, new LlmReply(personaName, line.get(), null));
+                } else {
+                    FriendManager.deliverScriptedReply(player, playerMessage);
+                }
+                return;
+            }
+            ChatRateLimiter.Admission admission = ChatRateLimiter.admit(player.getUUID(), playerName, phase, playerMessage);
+            if (!admission.allowed()) {
+                LOGGER.debug("[MineFriend] Holding '{}' from '{}' ({}).", playerMessage, playerName, admission.outcome());
+                if (admission.localReply() != null) {
+                    // Only the friend's line is remembered; the held message is recorded with the request it folds into.
+                    ConversationMemory.record(player.getUUID(), personaName, playerName, null, admission.localReply());
+                    broadcastReply(player, new LlmReply(personaName, admission.localReply(), null));
+                }
+                return;
+            }
+            String message = admission.message();
+            LOGGER.info("[MineFriend] Queueing request for LlmService...");
+
+            long askedAt = TypingIndicator.begin(player, personaName);
+            AtomicBoolean answered = new AtomicBoolean();
+            LlmRequestScheduler.submit(player.getUUID(), message, playerName, personaName, phase,
+                            sentence -> {
+                                answered.set(true);
+                                deliverReply(player, new LlmReply(personaName, sentence, null), askedAt, false);
+                            })
+                    .orTimeout(LlmPriority.DIRECT_REPLY.deadlineMs(), TimeUnit.MILLISECONDS)
                     .thenAccept(reply -> {
                         LOGGER.info("[MineFriend] Successfully received LLM reply. Broadcasting...");
-                        broadcastReply(player, reply);
+                        OfflineDialogue.observe(phase, reply.message(), playerName, personaName);
+                        deliverReply(player, reply, askedAt, true);
                     })
                     .exceptionally(throwable -> {
-                        LOGGER.error("==========================================================");
-                        LOGGER.error("[MineFriend] CRITICAL: FAILED TO GET LLM RESPONSE!");
-                        LOGGER.error("Check your network, RadminVPN IP, port, and LLM server status.");
-                        LOGGER.error("Error details: ", throwable);
-                        LOGGER.error("==========================================================");
+                        Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null
+                                ? throwable.getCause() : throwable;
+                        player.serverLevel().getServer().execute(() -> {
+                            if (cause instanceof TimeoutException) {
+                                TypingIndicator.timedOut(player, askedAt);
+                            } else {
+                                TypingIndicator.finish(player, askedAt, false);
+                            }
+                        });
+                        // A streamed first sentence already answered the player; don't follow it with a script line.
+                        if (!answered.get()) {
+                            fallBackToScript(player, throwable, personaName,
+                                    () -> OfflineDialogue.reply(phase, message, playerName, personaName),
+                                    () -> FriendManager.deliverScriptedReply(player, message));
+                        }
                         return null;
                     });
         });
     }
 
     // --- FIX: Changed the signature to accept the full FriendData object ---
+    /**
+     * Greets the player once per session; later calls, for example when the friend entity is reloaded with its
+     * chunk or follows the player to another dimension, do nothing. A pre-generated greeting is used when one is
+     * cached, so only a cold cache costs a request.
+     */
     public static void requestInitialGreeting(ServerPlayer player, FriendData data) {
+        if (!GreetingTracker.claim(player.getUUID())) {
+            LOGGER.debug("[MineFriend] '{}' was already greeted this session.", player.getGameProfile().getName());
+            return;
+        }
         String playerName = player.getGameProfile().getName();
         // Get the name and phase from the data object
         String personaName = resolvePersonaName(data);
         FriendPhase phase = data.phase();
 
-        String kickoffPrompt = "A friend entity has just appeared. Say hi to the player and introduce yourself.";
+        if (OfflineDialogue.isPrimary()) {
+            Optional<String> line = OfflineDialogue.reply(phase, "hi hello", playerName, personaName);
+            if (line.isPresent()) {
+                ConversationMemory.record(player.getUUID(), personaName, playerName, null, line.get());
+                broadcastReply(player, new LlmReply(personaName, line.get(), null));
+            } else {
+                FriendManager.deliverScriptedGreeting(player);
+            }
+            return;
+        }
+
+        Optional<String> cached = GreetingTracker.take(player.getUUID(), playerName, personaName, phase);
+        if (cached.isPresent()) {
+            LOGGER.info("[MineFriend] Greeting player '{}' with a cached line from '{}'.", playerName, personaName);
+            ConversationMemory.record(player.getUUID(), personaName, playerName, null, cached.get());
+            broadcastReply(player, new LlmReply(personaName, cached.get(), null));
+            return;
+        }
+
         LOGGER.info("[MineFriend] Triggering initial greeting for player '{}' with name '{}'.", playerName, personaName);
 
-        // This call now has the correct arguments
-        LlmService.requestFriendReply(kickoffPrompt, playerName, personaName, phase)
+        LlmRequestScheduler.submitStandalone(player.getUUID(), GreetingTracker.GREETING_PROMPT, playerName, personaName, phase, LlmPriority.GREETING)
+                .orTimeout(LlmPriority.GREETING.deadlineMs(), TimeUnit.MILLISECONDS)
                 .thenAccept(reply -> {
                     LOGGER.info("[MineFriend] Initial greeting received. Broadcasting to players.");
+                    OfflineDialogue.observe(phase, reply.message(), playerName, personaName);
                     broadcastReply(player, reply);
                 })
                 .exceptionally(throwable -> {
-                    LOGGER.error("[MineFriend] Failed to retrieve initial greeting for player '{}'.", playerName, throwable);
+                    // The scripted greeting is a complete scene, so it is preferred over a generated line here.
+                    fallBackToScript(player, throwable, personaName, Optional::empty, () -> FriendManager.deliverScriptedGreeting(player));
                     return null;
                 });
     }
 
+    /**
+     * Answers with the offline dialogue model when it is enabled and has a line, otherwise with the scripted reply
+     * when {@code Config.llmScriptedFallback} allows it.
+     */
+    private static void fallBackToScript(ServerPlayer player, Throwable throwable, String personaName, Supplier<Optional<String>> offlineLine,
+                                         Runnable scriptedReply) {
+        Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null ? throwable.getCause() : throwable;
+        if (cause instanceof LlmUnavailableException || cause instanceof TimeoutException || cause instanceof RejectedExecutionException) {
+            String reason = cause.getMessage() != null ? cause.getMessage() : "reply deadline passed";
+            LOGGER.warn("[MineFriend] No LLM reply for '{}' in time ({}).", player.getGameProfile().getName(), reason);
+        } else {
+            LOGGER.error("==========================================================");
+            LOGGER.error("[MineFriend] CRITICAL: FAILED TO GET LLM RESPONSE!");
+            LOGGER.error("Check your network, RadminVPN IP, port, and LLM server status.");
+            LOGGER.error("Error details: ", throwable);
+            LOGGER.error("==========================================================");
+        }
+        Optional<String> line = OfflineDialogue.isEnabled() ? offlineLine.get() : Optional.empty();
+        if (line.isPresent()) {
+            LOGGER.info("[MineFriend] Falling back to the offline dialogue model.");
+            String playerName = player.getGameProfile().getName();
+            ConversationMemory.record(player.getUUID(), personaName, playerName, null, line.get());
+            broadcastReply(player, new LlmReply(personaName, line.get(), null));
+        } else if (Config.llmScriptedFallback) {
+            LOGGER.info("[MineFriend] Falling back to the scripted reply.");
+            player.serverLevel().getServer().execute(scriptedReply);
+        }
+    }
+
     private static String resolvePersonaName(FriendData data) {
         String name = data.friendName();
         return (name == null || name.isBlank()) ? "Friend" : name;
     }
 
+    /**
+     * Posts a reply to the message the player sent at {@code askedAt}, unless it would arrive after the reply
+     * deadline, in which case it is dropped. The last part of a reply ends the friend's typing; a streamed first
+     * sentence leaves it typing the rest.
+     */
+    private static void deliverReply(ServerPlayer player, LlmReply reply, long askedAt, boolean last) {
+        player.serverLevel().getServer().execute(() -> {
+            boolean hasText = reply != null && !reply.isEmpty();
+            boolean fresh = last ? TypingIndicator.finish(player, askedAt, hasText) : TypingIndicator.isFresh(askedAt);
+            if (!fresh) {
+                // An empty reply, such as one merged into a follow-up request, had nothing to drop.
+                if (hasText) {
+                    LOGGER.warn("[MineFriend] Dropped a stale LLM reply for '{}' ({} ms after they spoke).", player.getGameProfile().getName(),
+                            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - askedAt));
+                }
+                return;
+            }
+            broadcastReply(player, reply);
+        });
+    }
+
     private static void broadcastReply(ServerPlayer player, LlmReply reply) {
         if (reply == null || reply.isEmpty()) {
-            LOGGER.warn("[MineFriend] LLM Reply was null or empty. Nothing to broadcast.");
+            // Coalesced messages are answered by the merged follow-up request and complete with an empty reply.
+            LOGGER.debug("[MineFriend] LLM Reply was null or empty. Nothing to broadcast.");
             return;
         }
         player.serverLevel().getServer().execute(() -> {
             applyPhaseSuggestion(player, reply.suggestedPhase());
+            // Streamed replies have already posted their first sentence; only the rest is left to send.
+            String text = reply.undeliveredMessage();
+            if (text.isEmpty()) {
+                return;
+            }
             Component header = Component.literal("<" + reply.personaName() + "> ")
                     .withStyle(ChatFormatting.GRAY);
-            Component message = Component.literal(reply.message());
+            Component message = Component.literal(text);
             Component composite = Component.empty().append(header).append(message);
-            player.serverLevel().getServer().getPlayerList().broadcastSystemMessage(composite, false);
+            FriendChatDelivery.send(player, composite);
         });
     }
 
@@ -119,6 +264,8 @@ public final class ChatEventHandler {
             LOGGER.info("[MineFriend] Phase transition suggested from {} to {}. Applying.", current, suggested);
             FriendData updated = data.withPhase(suggested);
             FriendData.store(player, updated);
+            LlmRequestScheduler.phaseChanged(player.getUUID(), suggested);
+            AmbientLinePool.invalidate(player.getUUID());
         });
     }
 
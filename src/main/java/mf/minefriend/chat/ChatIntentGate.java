@@ -0,0 +1,234 @@
+package mf.minefriend.chat;
+
+import mf.minefriend.Config;
+import mf.minefriend.friend.entity.FriendEntity;
+import mf.minefriend.friend.state.FriendData;
+import mf.minefriend.friend.state.FriendPhase;
+import net.minecraft.server.level.ServerPlayer;
+import net.minecraft.world.entity.Entity;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decides, before anything is queued, whether a chat line needs the LLM at all. Lines that are not meant for the
+ * friend (mistyped commands, filler such as "lol", talk between players while the friend is far away) are
+ * ignored, and bare greetings, thanks and goodbyes get a canned line in the friend's voice. Everything else, and
+ * anything that names the friend, is generated. The checks are plain string and distance tests, cheap enough to run
+ * on the chat thread for every message.
+ */
+public final class ChatIntentGate {
+    private static final int MIN_GENERATE_LETTERS = 2;
+
+    private static final Set<String> FILLER = Set.of(
+            "lol", "lmao", "lmfao", "rofl", "xd", "k", "kk", "ok", "okay", "okk", "hm", "hmm", "hmmm", "ha", "haha",
+            "hahaha", "gg", "brb", "afk", "bbl", "idk", "ikr", "np", "mhm", "ugh", "oof", "bruh", "wow", "nice", "cool"
+    );
+    private static final Set<String> GREETINGS = Set.of("hi", "hello", "hey", "heya", "hiya", "yo", "sup", "howdy", "hai", "helo");
+    private static final Set<String> THANKS = Set.of("thanks", "thank you", "thx", "ty", "tysm", "thank u");
+    private static final Set<String> FAREWELLS = Set.of("bye", "goodbye", "cya", "see ya", "see you", "gn", "good night", "night", "later", "bye bye");
+
+    private static final AtomicLong GENERATED = new AtomicLong();
+    private static final AtomicLong CANNED = new AtomicLong();
+    private static final AtomicLong IGNORED = new AtomicLong();
+
+    private ChatIntentGate() {
+    }
+
+    public enum Intent {
+        /**
+         * Ask the LLM for a reply.
+         */
+        GENERATE,
+        /**
+         * Answer with {@link Decision#cannedReply()}; no backend call.
+         */
+        CANNED,
+        /**
+         * The line is not for the friend; say nothing.
+         */
+        IGNORE
+    }
+
+    /**
+     * @param cannedReply the line to say for {@link Intent#CANNED}, otherwise null
+     * @param reason      a short explanation for the log
+     */
+    public record Decision(Intent intent, String cannedReply, String reason) {
+    }
+
+    public record GateStats(long generated, long canned, long ignored) {
+    }
+
+    /**
+     * Classifies a chat line from the friend's owner. Must be called on the server thread, since it looks up the
+     * friend entity and the online players.
+     */
+    public static Decision classify(ServerPlayer player, FriendData data, String message) {
+        if (!Config.llmIntentGate) {
+            return count(new Decision(Intent.GENERATE, null, "gate disabled"));
+        }
+        List<String> otherPlayers = new ArrayList<>();
+        for (ServerPlayer other : player.serverLevel().getServer().getPlayerList().getPlayers()) {
+            if (other != player) {
+                otherPlayers.add(other.getGameProfile().getName());
+            }
+        }
+        Entity friend = data.entityId() == null ? null : player.serverLevel().getEntity(data.entityId());
+        boolean friendNearby = friend instanceof FriendEntity
+                && friend.distanceToSqr(player) <= Config.llmIntentRadius * Config.llmIntentRadius;
+        return count(classify(message, data.friendName(), data.phase(), friendNearby, otherPlayers));
+    }
+
+    /**
+     * The decision itself, without any world access; also used by the offline load-test harness. Not counted in
+     * {@link #stats()}.
+     */
+    public static Decision classify(String message, String friendName, FriendPhase phase, boolean friendNearby, List<String> otherPlayers) {
+        String trimmed = message.trim();
+        if (trimmed.isEmpty()) {
+            return new Decision(Intent.IGNORE, null, "blank");
+        }
+        if (looksLikeCommand(trimmed)) {
+            return new Decision(Intent.IGNORE, null, "mistyped command");
+        }
+        String lower = trimmed.toLowerCase(Locale.ROOT);
+        boolean addressed = friendName != null && !friendName.isBlank() && containsWord(lower, friendName.toLowerCase(Locale.ROOT));
+        if (!addressed) {
+            for (String other : otherPlayers) {
+                if (containsWord(lower, other.toLowerCase(Locale.ROOT))) {
+                    return new Decision(Intent.IGNORE, null, "addressed to " + other);
+                }
+            }
+            // With nobody else around everything is said to the friend; otherwise it has to be close enough to hear.
+            if (!friendNearby && !otherPlayers.isEmpty()) {
+                return new Decision(Intent.IGNORE, null, "friend out of earshot");
+            }
+        }
+        String core = stripToCore(lower, addressed ? friendName.toLowerCase(Locale.ROOT) : null);
+        if (GREETINGS.contains(core)) {
+            return new Decision(Intent.CANNED, pick(phase, CannedKind.GREETING), "greeting");
+        }
+        if (THANKS.contains(core)) {
+            return new Decision(Intent.CANNED, pick(phase, CannedKind.THANKS), "thanks");
+        }
+        if (FAREWELLS.contains(core)) {
+            return new Decision(Intent.CANNED, pick(phase, CannedKind.FAREWELL), "farewell");
+        }
+        if (addressed || (trimmed.indexOf('?') >= 0 && letterCount(core) >= MIN_GENERATE_LETTERS)) {
+            return new Decision(Intent.GENERATE, null, addressed ? "addressed to friend" : "question");
+        }
+        if (FILLER.contains(core) || letterCount(core) < MIN_GENERATE_LETTERS) {
+            return new Decision(Intent.IGNORE, null, "filler");
+        }
+        return new Decision(Intent.GENERATE, null, "conversation");
+    }
+
+    public static GateStats stats() {
+        return new GateStats(GENERATED.get(), CANNED.get(), IGNORED.get());
+    }
+
+    private static Decision count(Decision decision) {
+        switch (decision.intent()) {
+            case GENERATE -> GENERATED.incrementAndGet();
+            case CANNED -> CANNED.incrementAndGet();
+            case IGNORE -> IGNORED.incrementAndGet();
+        }
+        return decision;
+    }
+
+    /**
+     * Chat lines that start like a command ("/", or the common mistypings "\\" and "./") but reached chat anyway.
+     */
+    private static boolean looksLikeCommand(String message) {
+        char first = message.charAt(0);
+        return first == '/' || first == '\\' || message.startsWith("./");
+    }
+
+    /**
+     * Lowercase text without punctuation, repeated trailing letters ("hiii") or the friend's name, with single
+     * spaces between words; what is left is looked up in the keyword tables.
+     */
+    private static String stripToCore(String lower, String friendName) {
+        String text = friendName != null ? lower.replace(friendName, " ") : lower;
+        StringBuilder core = new StringBuilder(text.length());
+        boolean pendingSpace = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (!Character.isLetterOrDigit(c)) {
+                pendingSpace = core.length() > 0;
+                continue;
+            }
+            if (pendingSpace) {
+                core.append(' ');
+                pendingSpace = false;
+            }
+            int length = core.length();
+            // Collapse "hiiii" to "hii" so elongated words still hit the tables below.
+            if (length >= 2 && core.charAt(length - 1) == c && core.charAt(length - 2) == c) {
+                continue;
+            }
+            core.append(c);
+        }
+        String result = core.toString();
+        if (result.length() > 2 && result.charAt(result.length() - 1) == result.charAt(result.length() - 2)
+                && !FILLER.contains(result) && !GREETINGS.contains(result)) {
+            result = result.substring(0, result.length() - 1);
+        }
+        return result;
+    }
+
+    private static boolean containsWord(String text, String word) {
+        if (word.isEmpty()) {
+            return false;
+        }
+        int from = 0;
+        while (true) {
+            int at = text.indexOf(word, from);
+            if (at < 0) {
+                return false;
+            }
+            int end = at + word.length();
+            boolean startsWord = at == 0 || !Character.isLetterOrDigit(text.charAt(at - 1));
+            boolean endsWord = end == text.length() || !Character.isLetterOrDigit(text.charAt(end));
+            if (startsWord && endsWord) {
+                return true;
+            }
+            from = at + 1;
+        }
+    }
+
+    private static int letterCount(String text) {
+        int letters = 0;
+        for (int i = 0; i < text.length(); i++) {
+            if (Character.isLetter(text.charAt(i))) {
+                letters++;
+            }
+        }
+        return letters;
+    }
+
+    private enum CannedKind {
+        GREETING, THANKS, FAREWELL
+    }
+
+    private static String pick(FriendPhase phase, CannedKind kind) {
+        boolean early = phase == null || phase == FriendPhase.NONE || phase == FriendPhase.PHASE_ONE;
+        List<String> lines = switch (kind) {
+            case GREETING -> early
+                    ? List.of("Hi! I'm right here.", "Hello! I'm so happy you're talking to me.", "Hey! What are we doing next?")
+                    : List.of("I know.", "I'm already here.", "Hello again.");
+            case THANKS -> early
+                    ? List.of("Anything for you!", "That's what friends are for.", "You're welcome!")
+                    : List.of("You owe me now.", "Don't thank me yet.");
+            case FAREWELL -> early
+                    ? List.of("Wait, don't go! Come back soon.", "Bye! I'll be right here.", "See you soon, okay?")
+                    : List.of("You can't leave me.", "I'll be waiting.", "I'll find you.");
+        };
+        return lines.get(ThreadLocalRandom.current().nextInt(lines.size()));
+    }
+}
@@ -0,0 +1,258 @@
+package mf.minefriend.chat;
+
+import com.mojang.logging.LogUtils;
+import mf.minefriend.Config;
+import mf.minefriend.Minefriend;
+import mf.minefriend.friend.state.FriendPhase;
+import net.minecraftforge.event.server.ServerStoppingEvent;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
+import net.minecraftforge.fml.common.Mod;
+import org.slf4j.Logger;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token buckets in front of the LLM, one per player and one for the whole server, so a single player spamming
+ * chat cannot take the backend away from everyone else. A chat line that will be generated costs one token from
+ * both buckets; the player bucket holds {@code Config.llmPlayerRateLimitBurst} tokens and refills at
+ * {@code Config.llmPlayerRateLimitPerMinute}, the server bucket likewise with its own settings.
+ * <p>
+ * A line over the limit is not lost: it is held and folded into the player's next permitted request, so the
+ * friend still answers everything in one go. The first limited line of a streak also gets a short local reply,
+ * which costs nothing and tells the player to slow down. Held lines are dropped once the newest of them is older
+ * than {@link #HELD_LINE_TTL_MS}, since the friend would answer them out of context.
+ */
+@Mod.EventBusSubscriber(modid = Minefriend.MODID, bus = Mod.EventBusSubscriber.Bus.FORGE)
+public final class ChatRateLimiter {
+    private static final Logger LOGGER = LogUtils.getLogger();
+    private static final long HELD_LINE_TTL_MS = 60_000L;
+    private static final int MAX_HELD_CHARS = 256;
+    private static final int REPORTED_PLAYERS = 5;
+
+    private static final Object LOCK = new Object();
+    private static final Map<UUID, PlayerState> PLAYERS = new HashMap<>();
+    private static final Bucket SERVER = new Bucket();
+
+    private static long allowed;
+    private static long playerLimited;
+    private static long serverLimited;
+    private static long foldedLines;
+    private static long expiredLines;
+    private static long localReplies;
+
+    private ChatRateLimiter() {
+    }
+
+    public enum Outcome {
+        ALLOWED,
+        /**
+         * The player's own bucket is empty.
+         */
+        PLAYER_LIMITED,
+        /**
+         * The player has tokens left, but the server as a whole is over its limit.
+         */
+        SERVER_LIMITED
+    }
+
+    /**
+     * @param message    for {@link Outcome#ALLOWED}, the line to send with any held lines folded in front of it
+     * @param localReply for a limited line, a line the friend can say instead, or null to stay quiet
+     */
+    public record Admission(Outcome outcome, String message, String localReply) {
+        public boolean allowed() {
+            return outcome == Outcome.ALLOWED;
+        }
+    }
+
+    public record PlayerLimitStats(String playerName, long limited, long folded) {
+    }
+
+    public record RateLimitStats(long allowed, long playerLimited, long serverLimited, long foldedLines, long expiredLines,
+                                 long localReplies, List<PlayerLimitStats> topPlayers) {
+    }
+
+    /**
+     * Takes a token for a chat line that is about to be generated. Lines the intent gate already answered or
+     * ignored should not be passed in; they cost the backend nothing.
+     */
+    public static Admission admit(UUID playerId, String playerName, FriendPhase phase, String message) {
+        long now = System.nanoTime();
+        Outcome outcome;
+        String held = null;
+        boolean firstInStreak;
+        synchronized (LOCK) {
+            PlayerState state = PLAYERS.computeIfAbsent(playerId, id -> new PlayerState());
+            state.playerName = playerName;
+            if (state.held != null && now - state.heldSince > TimeUnit.MILLISECONDS.toNanos(HELD_LINE_TTL_MS)) {
+                expiredLines += state.heldLines;
+                state.clearHeld();
+            }
+            boolean playerOk = state.bucket.available(now, Config.llmPlayerRateLimitPerMinute, Config.llmPlayerRateLimitBurst);
+            boolean serverOk = SERVER.available(now, Config.llmServerRateLimitPerMinute, Config.llmServerRateLimitBurst);
+            if (playerOk && serverOk) {
+                state.bucket.take(Config.llmPlayerRateLimitPerMinute);
+                SERVER.take(Config.llmServerRateLimitPerMinute);
+                allowed++;
+                if (state.held != null) {
+                    held = state.held;
+                    foldedLines += state.heldLines;
+                    state.folded += state.heldLines;
+                    state.clearHeld();
+                }
+                state.limitedStreak = false;
+                outcome = Outcome.ALLOWED;
+                firstInStreak = false;
+            } else {
+                outcome = playerOk ? Outcome.SERVER_LIMITED : Outcome.PLAYER_LIMITED;
+                if (playerOk) {
+                    serverLimited++;
+                } else {
+                    playerLimited++;
+                }
+                state.limited++;
+                state.hold(message, now);
+                firstInStreak = !state.limitedStreak;
+                state.limitedStreak = true;
+                if (firstInStreak) {
+                    localReplies++;
+                }
+            }
+        }
+        if (outcome == Outcome.ALLOWED) {
+            return new Admission(outcome, held != null ? LlmRequestScheduler.merge(held, message) : message, null);
+        }
+        if (firstInStreak) {
+            LOGGER.info("[MineFriend-RateLimit] '{}' is over the {} chat limit; holding their lines for the next request.",
+                    playerName, outcome == Outcome.PLAYER_LIMITED ? "player" : "server");
+        }
+        return new Admission(outcome, null, firstInStreak ? localReply(phase) : null);
+    }
+
+    /**
+     * Drops the player's held lines when they log out. A partly used bucket is kept, so logging out and back in
+     * does not reset the limit, and so are players who hit the limit, for the per-player report; both are cleared
+     * when the server stops.
+     */
+    public static void forget(UUID playerId) {
+        long now = System.nanoTime();
+        synchronized (LOCK) {
+            PlayerState state = PLAYERS.get(playerId);
+            if (state == null) {
+                return;
+            }
+            state.clearHeld();
+            state.limitedStreak = false;
+            if (state.limited == 0 && state.bucket.isFull(now, Config.llmPlayerRateLimitPerMinute, Config.llmPlayerRateLimitBurst)) {
+                PLAYERS.remove(playerId);
+            }
+        }
+    }
+
+    public static RateLimitStats stats() {
+        synchronized (LOCK) {
+            List<PlayerLimitStats> top = new ArrayList<>();
+            for (PlayerState state : PLAYERS.values()) {
+                if (state.limited > 0) {
+                    top.add(new PlayerLimitStats(state.playerName, state.limited, state.folded));
+                }
+            }
+            top.sort(Comparator.comparingLong(PlayerLimitStats::limited).reversed());
+            return new RateLimitStats(allowed, playerLimited, serverLimited, foldedLines, expiredLines, localReplies,
+                    List.copyOf(top.subList(0, Math.min(REPORTED_PLAYERS, top.size()))));
+        }
+    }
+
+    @SubscribeEvent
+    public static void onServerStopping(ServerStoppingEvent event) {
+        synchronized (LOCK) {
+            PLAYERS.clear();
+            SERVER.tokens = -1.0D;
+        }
+    }
+
+    private static String localReply(FriendPhase phase) {
+        boolean early = phase == null || phase == FriendPhase.NONE || phase == FriendPhase.PHASE_ONE;
+        List<String> lines = early
+                ? List.of("Whoa, slow down! I'm still thinking.", "Hang on, you're talking so fast!", "One thing at a time, okay?")
+                : List.of("Quiet.", "Stop talking.", "I heard you.");
+        return lines.get(ThreadLocalRandom.current().nextInt(lines.size()));
+    }
+
+    /**
+     * A token bucket refilled lazily from the elapsed time. Starts full; a negative token count marks it as not
+     * yet used. Limits are read on every call so config reloads apply at once.
+     */
+    private static final class Bucket {
+        private double tokens = -1.0D;
+        private long refilledAt;
+
+        boolean available(long now, int perMinute, int burst) {
+            if (perMinute <= 0) {
+                return true;
+            }
+            refill(now, perMinute, burst);
+            return tokens >= 1.0D;
+        }
+
+        void take(int perMinute) {
+            if (perMinute > 0) {
+                tokens -= 1.0D;
+            }
+        }
+
+        boolean isFull(long now, int perMinute, int burst) {
+            if (perMinute <= 0) {
+                return true;
+            }
+            refill(now, perMinute, burst);
+            return tokens >= burst;
+        }
+
+        private void refill(long now, int perMinute, int burst) {
+            if (tokens < 0.0D) {
+                tokens = burst;
+            } else {
+                double minutes = (now - refilledAt) / (double) TimeUnit.MINUTES.toNanos(1);
+                tokens = Math.min(burst, tokens + minutes * perMinute);
+            }
+            refilledAt = now;
+        }
+    }
+
+    private static final class PlayerState {
+        private final Bucket bucket = new Bucket();
+        private String playerName = "";
+        private String held;
+        private int heldLines;
+        private long heldSince;
+        private boolean limitedStreak;
+        private long limited;
+        private long folded;
+
+        /**
+         * Adds a line to the held text, keeping its most recent {@link #MAX_HELD_CHARS} characters.
+         */
+        void hold(String message, long now) {
+            held = held == null ? message.trim() : LlmRequestScheduler.merge(held, message);
+            heldLines++;
+            heldSince = now;
+            if (held.length() > MAX_HELD_CHARS) {
+                int cut = held.indexOf(' ', held.length() - MAX_HELD_CHARS);
+                held = held.substring(cut > 0 ? cut + 1 : held.length() - MAX_HELD_CHARS);
+            }
+        }
+
+        void clearHeld() {
+            held = null;
+            heldLines = 0;
+        }
+    }
+}
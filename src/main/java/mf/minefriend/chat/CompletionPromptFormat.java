@@ -0,0 +1,39 @@
+package mf.minefriend.chat;
+
+/**
+ * How the system prompt and player message are laid out for backends that take a raw prompt instead of chat
+ * messages (llama.cpp's native {@code /completion}). Pick the one the model was trained with. The server adds the
+ * beginning-of-sequence token itself, and every format puts the system prompt first so its evaluated prefix can be
+ * reused across requests.
+ */
+public enum CompletionPromptFormat {
+    CHATML {
+        @Override
+        String format(String system, String user) {
+            return (system != null ? "<|im_start|>system\n" + system + "<|im_end|>\n" : "")
+                    + "<|im_start|>user\n" + user + "<|im_end|>\n<|im_start|>assistant\n";
+        }
+    },
+    MISTRAL {
+        @Override
+        String format(String system, String user) {
+            return "[INST] " + (system != null ? system + "\n\n" : "") + user + " [/INST]";
+        }
+    },
+    LLAMA3 {
+        @Override
+        String format(String system, String user) {
+            return (system != null ? "<|start_header_id|>system<|end_header_id|>\n\n" + system + "<|eot_id|>" : "")
+                    + "<|start_header_id|>user<|end_header_id|>\n\n" + user
+                    + "<|eot_id|><|start_header_id|>assistant<|end_header_id|>\n\n";
+        }
+    },
+    PLAIN {
+        @Override
+        String format(String system, String user) {
+            return (system != null ? system + "\n\n" : "") + user + "\n\n";
+        }
+    };
+
+    abstract String format(String system, String user);
+}
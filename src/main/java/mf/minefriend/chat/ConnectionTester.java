@@ -4,32 +4,50 @@ import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.net.SocketTimeoutException;
+import java.time.Duration;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
 
 /**
  * A simple utility to test the network connection to the LLM server.
  * To run this, right-click this file in your IDE and select "Run ConnectionTester.main()".
+ * Pass an endpoint from the llmEndpoints config as the first argument to test it; without one the default endpoint is used.
  * Watch the console for the output.
  */
 public class ConnectionTester {
 
-    // --- CONFIGURE THIS ---
-    // Make sure this IP and Port match your LLM server exactly.
-    private static final String LLM_SERVER_IP = "26.126.73.192";
-    private static final int LLM_SERVER_PORT = 1234;
     private static final int TIMEOUT_MS = 5000; // 5 seconds
 
     public static void main(String[] args) {
+        String spec = args.length > 0 ? args[0] : LlmBackendPool.DEFAULT_ENDPOINT;
+        LlmEndpoint endpoint = LlmEndpoint.parse(spec).orElse(null);
+        if (endpoint == null) {
+            System.err.println("Not a valid endpoint (url|model|weight|maxConcurrency): " + spec);
+            return;
+        }
+        String serverHost = endpoint.uri().getHost();
+        int serverPort = endpoint.uri().getPort() != -1 ? endpoint.uri().getPort() : 80;
+
         System.out.println("=============================================");
-        System.out.println("Starting connection test to " + LLM_SERVER_IP + ":" + LLM_SERVER_PORT + "...");
+        System.out.println("Starting connection test to " + serverHost + ":" + serverPort + "...");
 
         try (Socket socket = new Socket()) {
             // Attempt to connect with a specific timeout
-            socket.connect(new InetSocketAddress(LLM_SERVER_IP, LLM_SERVER_PORT), TIMEOUT_MS);
+            socket.connect(new InetSocketAddress(serverHost, serverPort), TIMEOUT_MS);
 
             // If we get here, the connection was successful
             System.out.println("\nSUCCESS! A connection was successfully established.");
             System.out.println("This means your network, Radmin VPN, and IP/Port are all correct.");
-            System.out.println("The issue might be with the LLM server application itself being slow or hung.");
+
+            // Same one-token request the in-game LlmHealthProber sends, to check the model itself answers.
+            System.out.println("Sending a health probe to " + endpoint.uri() + " (" + endpoint.model() + ")...");
+            try {
+                long latencyNanos = LlmService.probe(endpoint, Duration.ofSeconds(60)).join();
+                System.out.println("The model answered in " + TimeUnit.NANOSECONDS.toMillis(latencyNanos) + " ms.");
+            } catch (CompletionException e) {
+                System.err.println("The model did not answer: " + (e.getCause() != null ? e.getCause() : e));
+                System.err.println("The issue might be with the LLM server application itself being slow or hung.");
+            }
 
         } catch (SocketTimeoutException e) {
             // This happens if the server is reachable but not responding (e.g., firewall)
@@ -42,9 +60,9 @@ public class ConnectionTester {
             // This happens for other network errors (e.g., wrong IP, server not running)
             System.err.println("\nFAILURE: An IO Exception occurred.");
             System.err.println("This could be due to several reasons:");
-            System.err.println("1. Is the Radmin VPN IP address '" + LLM_SERVER_IP + "' still correct?");
+            System.err.println("1. Is the Radmin VPN IP address '" + serverHost + "' still correct?");
             System.err.println("2. Is the LLM Server application (LM Studio, etc.) actually running?");
-            System.err.println("3. Is the port number '" + LLM_SERVER_PORT + "' correct?");
+            System.err.println("3. Is the port number '" + serverPort + "' correct?");
             System.err.println("\nError Details: " + e.getMessage());
         } finally {
             System.out.println("=============================================");
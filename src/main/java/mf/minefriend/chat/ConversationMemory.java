@@ -0,0 +1,232 @@
+package mf.minefriend.chat;
+
+import com.mojang.logging.LogUtils;
+import mf.minefriend.Config;
+import mf.minefriend.Minefriend;
+import net.minecraftforge.event.server.ServerStoppingEvent;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
+import net.minecraftforge.fml.common.Mod;
+import org.slf4j.Logger;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * What each friend remembers of its conversation with its player. The most recent turns are kept verbatim up to
+ * {@code Config.llmMemoryWindowTokens} (measured with {@link TokenEstimator}); turns that slide out of that window
+ * are folded into a running summary of at most {@code Config.llmMemorySummaryTokens}, generated as background
+ * work that only runs while the backend is otherwise idle. Every prompt therefore carries a bounded amount of
+ * history, however long the player has been talking.
+ */
+@Mod.EventBusSubscriber(modid = Minefriend.MODID, bus = Mod.EventBusSubscriber.Bus.FORGE)
+public final class ConversationMemory {
+    private static final Logger LOGGER = LogUtils.getLogger();
+    private static final int MAX_UNSUMMARIZED_TURNS = 64;
+
+    private static final Object LOCK = new Object();
+    private static final Map<UUID, Memory> MEMORIES = new HashMap<>();
+
+    private static long summaries;
+    private static long foldedTurns;
+    private static long droppedTurns;
+
+    private ConversationMemory() {
+    }
+
+    /**
+     * Records one exchange. {@code playerMessage} is null for lines the friend said unprompted, such as greetings.
+     */
+    public static void record(UUID playerId, String personaName, String playerName, String playerMessage, String friendReply) {
+        if (Config.llmMemoryWindowTokens <= 0) {
+            return;
+        }
+        SummaryJob job;
+        synchronized (LOCK) {
+            Memory memory = MEMORIES.computeIfAbsent(playerId, id -> new Memory());
+            memory.personaName = personaName;
+            memory.playerName = playerName;
+            if (playerMessage != null && !playerMessage.isBlank()) {
+                memory.add(new Turn(true, playerMessage.trim()));
+            }
+            if (friendReply != null && !friendReply.isBlank()) {
+                memory.add(new Turn(false, friendReply.trim()));
+            }
+            job = memory.nextSummaryJob(playerId);
+        }
+        if (job != null) {
+            summarize(job);
+        }
+    }
+
+    /**
+     * The history to send with the player's next request; empty when nothing has been said yet.
+     */
+    public static Window window(UUID playerId) {
+        synchronized (LOCK) {
+            Memory memory = MEMORIES.get(playerId);
+            if (memory == null || Config.llmMemoryWindowTokens <= 0) {
+                return Window.EMPTY;
+            }
+            return new Window(memory.summary, List.copyOf(memory.recent));
+        }
+    }
+
+    public static MemoryStats stats() {
+        synchronized (LOCK) {
+            long windowTokens = 0L;
+            for (Memory memory : MEMORIES.values()) {
+                windowTokens += memory.recentTokens + TokenEstimator.estimate(memory.summary);
+            }
+            double averageTokens = MEMORIES.isEmpty() ? 0.0D : (double) windowTokens / MEMORIES.size();
+            return new MemoryStats(MEMORIES.size(), averageTokens, summaries, foldedTurns, droppedTurns);
+        }
+    }
+
+    @SubscribeEvent
+    public static void onServerStopping(ServerStoppingEvent event) {
+        synchronized (LOCK) {
+            MEMORIES.clear();
+        }
+    }
+
+    private static void summarize(SummaryJob job) {
+        LlmRequestScheduler.submitBackground(job.playerId(), job.playerName(), job.personaName(),
+                        endpoint -> LlmService.requestSummary(job.previousSummary(), job.turns(), job.personaName(), job.playerName(), endpoint))
+                .whenComplete((reply, throwable) -> {
+                    SummaryJob next = null;
+                    synchronized (LOCK) {
+                        Memory memory = MEMORIES.get(job.playerId());
+                        if (memory == null) {
+                            return;
+                        }
+                        memory.summarizing = false;
+                        if (throwable == null && reply != null && !reply.isEmpty()) {
+                            memory.summary = TokenEstimator.truncate(reply.message(), Config.llmMemorySummaryTokens);
+                            Set<Turn> folded = Collections.newSetFromMap(new IdentityHashMap<>());
+                            folded.addAll(job.turns());
+                            memory.unsummarized.removeIf(folded::contains);
+                            summaries++;
+                            foldedTurns += job.turns().size();
+                            next = memory.nextSummaryJob(job.playerId());
+                        }
+                    }
+                    if (throwable != null) {
+                        // Left for the next exchange to retry; the turns stay queued for folding until then.
+                        LOGGER.debug("[MineFriend-Memory] Summary for '{}' not made: {}", job.playerName(), throwable.toString());
+                    }
+                    if (next != null) {
+                        summarize(next);
+                    }
+                });
+    }
+
+    /**
+     * @param fromPlayer whether the player said this line, as opposed to the friend
+     */
+    public record Turn(boolean fromPlayer, String text, int tokens) {
+        Turn(boolean fromPlayer, String text) {
+            this(fromPlayer, text, TokenEstimator.estimate(text));
+        }
+    }
+
+    /**
+     * A bounded slice of conversation: the running summary and the most recent turns, oldest first.
+     */
+    public record Window(String summary, List<Turn> turns) {
+        public static final Window EMPTY = new Window("", List.of());
+
+        public boolean isEmpty() {
+            return summary.isEmpty() && turns.isEmpty();
+        }
+
+        /**
+         * Estimated tokens the history adds to the prompt.
+         */
+        public int tokens() {
+            int tokens = TokenEstimator.estimate(summary);
+            for (Turn turn : turns) {
+                tokens += turn.tokens();
+            }
+            return tokens;
+        }
+
+        /**
+         * How many of the turns are the player's.
+         */
+        public int playerTurns() {
+            int count = 0;
+            for (Turn turn : turns) {
+                if (turn.fromPlayer()) {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        /**
+         * Renders the history as a block to append to the system prompt.
+         */
+        public String render(String personaName, String playerName) {
+            if (isEmpty()) {
+                return "";
+            }
+            StringBuilder text = new StringBuilder();
+            if (!summary.isEmpty()) {
+                text.append("\n\nWHAT YOU REMEMBER FROM EARLIER:\n").append(summary);
+            }
+            if (!turns.isEmpty()) {
+                text.append("\n\nRECENT CONVERSATION:");
+                for (Turn turn : turns) {
+                    text.append('\n').append(turn.fromPlayer() ? playerName : personaName).append(": ").append(turn.text());
+                }
+            }
+            return text.toString();
+        }
+    }
+
+    public record MemoryStats(int conversations, double averageTokens, long summaries, long foldedTurns, long droppedTurns) {
+    }
+
+    private record SummaryJob(UUID playerId, String personaName, String playerName, String previousSummary, List<Turn> turns) {
+    }
+
+    private static final class Memory {
+        private final Deque<Turn> recent = new ArrayDeque<>();
+        private final Deque<Turn> unsummarized = new ArrayDeque<>();
+        private int recentTokens;
+        private String summary = "";
+        private String personaName = "Friend";
+        private String playerName = "Player";
+        private boolean summarizing;
+
+        private void add(Turn turn) {
+            recent.addLast(turn);
+            recentTokens += turn.tokens();
+            while (recentTokens > Config.llmMemoryWindowTokens && recent.size() > 1) {
+                Turn oldest = recent.removeFirst();
+                recentTokens -= oldest.tokens();
+                unsummarized.addLast(oldest);
+            }
+            while (unsummarized.size() > MAX_UNSUMMARIZED_TURNS) {
+                unsummarized.removeFirst();
+                droppedTurns++;
+            }
+        }
+
+        private SummaryJob nextSummaryJob(UUID playerId) {
+            if (summarizing || unsummarized.isEmpty()) {
+                return null;
+            }
+            summarizing = true;
+            return new SummaryJob(playerId, personaName, playerName, summary, new ArrayList<>(unsummarized));
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package mf.minefriend.chat;
+
+import mf.minefriend.Config;
+import mf.minefriend.Minefriend;
+import mf.minefriend.friend.entity.FriendEntity;
+import mf.minefriend.friend.state.FriendData;
+import net.minecraft.network.chat.Component;
+import net.minecraft.network.chat.MutableComponent;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.level.ServerPlayer;
+import net.minecraft.world.entity.Entity;
+import net.minecraft.world.phys.Vec3;
+import net.minecraftforge.event.TickEvent;
+import net.minecraftforge.event.server.ServerStoppingEvent;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
+import net.minecraftforge.fml.common.Mod;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Delivers the friend's chat lines. Lines are queued during the tick and sent at its end, with everything one
+ * recipient receives in that tick joined into a single message, so a burst of script lines or a streamed reply
+ * costs each recipient one packet. Who receives a friend's lines depends on {@code Config.friendChatDelivery}:
+ * every player, only the friend's owner, or the owner plus players within {@code Config.friendChatRadius} blocks
+ * of the friend. Either of the last two keeps chat traffic proportional to the number of players instead of its
+ * square. The server console always gets every line. Server thread only.
+ */
+@Mod.EventBusSubscriber(modid = Minefriend.MODID, bus = Mod.EventBusSubscriber.Bus.FORGE)
+public final class FriendChatDelivery {
+    private static final Map<UUID, List<Component>> PENDING = new LinkedHashMap<>();
+
+    private static long lines;
+    private static long deliveredLines;
+    private static long sends;
+
+    private FriendChatDelivery() {
+    }
+
+    public enum Mode {
+        /**
+         * Every connected player sees every friend's lines.
+         */
+        GLOBAL,
+        /**
+         * Only the friend's owner sees its lines.
+         */
+        OWNER,
+        /**
+         * The owner, and anyone within {@code Config.friendChatRadius} blocks of the friend.
+         */
+        RADIUS
+    }
+
+    /**
+     * @param lines          lines the friends said
+     * @param deliveredLines lines received, counted once per recipient
+     * @param sends          chat messages sent, after joining each recipient's lines per tick
+     */
+    public record DeliveryStats(Mode mode, long lines, long deliveredLines, long sends) {
+    }
+
+    /**
+     * Queues a line from the given player's friend for delivery at the end of the tick.
+     */
+    public static void send(ServerPlayer owner, Component line) {
+        PENDING.computeIfAbsent(owner.getUUID(), id -> new ArrayList<>()).add(line);
+        lines++;
+    }
+
+    public static DeliveryStats stats() {
+        return new DeliveryStats(Config.friendChatDelivery, lines, deliveredLines, sends);
+    }
+
+    @SubscribeEvent
+    public static void onServerTick(TickEvent.ServerTickEvent event) {
+        if (event.phase != TickEvent.Phase.END || event.getServer() == null || PENDING.isEmpty()) {
+            return;
+        }
+        flush(event.getServer());
+    }
+
+    @SubscribeEvent
+    public static void onServerStopping(ServerStoppingEvent event) {
+        flush(event.getServer());
+    }
+
+    private static void flush(MinecraftServer server) {
+        Map<ServerPlayer, List<Component>> byRecipient = new LinkedHashMap<>();
+        List<Component> console = new ArrayList<>();
+        for (Map.Entry<UUID, List<Component>> entry : PENDING.entrySet()) {
+            console.addAll(entry.getValue());
+            // Looked up again by id: the owner may have respawned, which replaces the player object, or logged out.
+            ServerPlayer owner = server.getPlayerList().getPlayer(entry.getKey());
+            for (ServerPlayer recipient : recipients(server, owner)) {
+                byRecipient.computeIfAbsent(recipient, player -> new ArrayList<>()).addAll(entry.getValue());
+            }
+        }
+        PENDING.clear();
+        if (!console.isEmpty()) {
+            server.sendSystemMessage(join(console));
+        }
+        for (Map.Entry<ServerPlayer, List<Component>> entry : byRecipient.entrySet()) {
+            entry.getKey().sendSystemMessage(join(entry.getValue()));
+            deliveredLines += entry.getValue().size();
+            sends++;
+        }
+    }
+
+    private static List<ServerPlayer> recipients(MinecraftServer server, ServerPlayer owner) {
+        Mode mode = Config.friendChatDelivery;
+        if (mode == Mode.GLOBAL) {
+            return server.getPlayerList().getPlayers();
+        }
+        if (owner == null) {
+            return List.of();
+        }
+        if (mode == Mode.OWNER) {
+            return List.of(owner);
+        }
+        // Centred on the friend when it is loaded in the owner's level, otherwise on the owner.
+        Vec3 centre = owner.position();
+        UUID friendId = FriendData.get(owner).map(FriendData::entityId).orElse(null);
+        Entity friend = friendId == null ? null : owner.serverLevel().getEntity(friendId);
+        if (friend instanceof FriendEntity) {
+            centre = friend.position();
+        }
+        double radiusSqr = Config.friendChatRadius * Config.friendChatRadius;
+        List<ServerPlayer> recipients = new ArrayList<>();
+        recipients.add(owner);
+        for (ServerPlayer other : owner.serverLevel().players()) {
+            if (other != owner && other.distanceToSqr(centre) <= radiusSqr) {
+                recipients.add(other);
+            }
+        }
+        return recipients;
+    }
+
+    private static Component join(List<Component> parts) {
+        if (parts.size() == 1) {
+            return parts.get(0);
+        }
+        MutableComponent joined = Component.empty();
+        for (int i = 0; i < parts.size(); i++) {
+            if (i > 0) {
+                joined.append("\n");
+            }
+            joined.append(parts.get(i));
+        }
+        return joined;
+    }
+}
@@ -0,0 +1,180 @@
+package mf.minefriend.chat;
+
+import com.mojang.logging.LogUtils;
+import mf.minefriend.Config;
+import mf.minefriend.Minefriend;
+import mf.minefriend.friend.state.FriendPhase;
+import net.minecraftforge.event.server.ServerStoppingEvent;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
+import net.minecraftforge.fml.common.Mod;
+import org.slf4j.Logger;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Keeps the friend's greeting to once per player per login session and serves it from lines generated ahead of
+ * time. A friend entity joins a level on every chunk reload and dimension change, and each of those used to ask
+ * the LLM for a new greeting; now only the first join of a session greets at all.
+ * <p>
+ * Greetings are pooled per persona and phase, up to {@code Config.llmGreetingCacheSize} lines each, and refilled
+ * as {@link LlmPriority#BACKGROUND} work, so most greetings cost no request while a player is waiting. The player's
+ * name is stored as a placeholder, which lets one pool serve every player whose friend shares the persona. At most
+ * {@link #MAX_POOLS} pools are kept, least recently used first out.
+ */
+@Mod.EventBusSubscriber(modid = Minefriend.MODID, bus = Mod.EventBusSubscriber.Bus.FORGE)
+public final class GreetingTracker {
+    private static final Logger LOGGER = LogUtils.getLogger();
+    static final String GREETING_PROMPT = "A friend entity has just appeared. Say hi to the player and introduce yourself.";
+    private static final String PLAYER_PLACEHOLDER = "{player}";
+    private static final int MAX_POOLS = 64;
+    private static final int MAX_LINE_LENGTH = 200;
+
+    private static final Object LOCK = new Object();
+    private static final Set<UUID> GREETED = new HashSet<>();
+    private static final Map<PoolKey, Pool> POOLS = new LinkedHashMap<>(16, 0.75F, true);
+
+    private static long sessionsGreeted;
+    private static long repeatsSkipped;
+    private static long servedFromCache;
+    private static long generated;
+
+    private GreetingTracker() {
+    }
+
+    public record GreetingStats(long sessionsGreeted, long repeatsSkipped, long servedFromCache, long generated, int cachedLines) {
+    }
+
+    /**
+     * Claims the player's greeting for this session. Returns false if they were already greeted, in which case
+     * the caller says nothing.
+     */
+    public static boolean claim(UUID playerId) {
+        synchronized (LOCK) {
+            if (!GREETED.add(playerId)) {
+                repeatsSkipped++;
+                return false;
+            }
+            sessionsGreeted++;
+            return true;
+        }
+    }
+
+    /**
+     * Ends the player's session, so their next login is greeted again.
+     */
+    public static void release(UUID playerId) {
+        synchronized (LOCK) {
+            GREETED.remove(playerId);
+        }
+    }
+
+    /**
+     * Takes a pre-generated greeting for the persona and phase, addressed to the player, and tops the pool up in
+     * the background on the player's behalf.
+     */
+    public static Optional<String> take(UUID playerId, String playerName, String personaName, FriendPhase phase) {
+        String line;
+        synchronized (LOCK) {
+            Pool pool = POOLS.get(new PoolKey(personaName, phase));
+            line = pool == null ? null : pool.lines.pollFirst();
+            if (line != null) {
+                servedFromCache++;
+            }
+        }
+        prefetch(playerId, playerName, personaName, phase);
+        return Optional.ofNullable(line).map(template -> template.replace(PLAYER_PLACEHOLDER, playerName));
+    }
+
+    /**
+     * Starts filling the pool for the persona and phase if it is not full. The request runs under the given
+     * player, whose name is swapped for the placeholder before the line is stored.
+     */
+    public static void prefetch(UUID playerId, String playerName, String personaName, FriendPhase phase) {
+        if (Config.llmGreetingCacheSize <= 0) {
+            return;
+        }
+        PoolKey key = new PoolKey(personaName, phase);
+        Pool target;
+        synchronized (LOCK) {
+            target = POOLS.computeIfAbsent(key, k -> new Pool());
+            if (POOLS.size() > MAX_POOLS) {
+                POOLS.remove(POOLS.keySet().iterator().next());
+            }
+            if (target.filling || target.lines.size() >= Config.llmGreetingCacheSize) {
+                return;
+            }
+            target.filling = true;
+        }
+        LlmRequestScheduler.submitBackground(playerId, playerName, personaName,
+                        endpoint -> LlmService.requestFriendReply(null, GREETING_PROMPT, playerName, personaName, phase,
+                                ConversationMemory.Window.EMPTY, ReplyLimits.maxTokens(phase, 0), endpoint, null))
+                .whenComplete((reply, throwable) -> {
+                    boolean more;
+                    synchronized (LOCK) {
+                        Pool pool = POOLS.get(key);
+                        if (pool != target) {
+                            // Evicted while generating; the line would have nowhere to go.
+                            return;
+                        }
+                        pool.filling = false;
+                        if (throwable != null || reply == null || reply.isEmpty() || reply.message().length() > MAX_LINE_LENGTH) {
+                            LOGGER.debug("[MineFriend-Greeting] No cached greeting for {} in {}: {}", personaName, phase,
+                                    throwable != null ? throwable.toString() : "empty or overlong reply");
+                            return;
+                        }
+                        String template = toTemplate(reply.message(), playerName);
+                        if (!pool.lines.contains(template)) {
+                            pool.lines.addLast(template);
+                            generated++;
+                        }
+                        more = pool.lines.size() < Config.llmGreetingCacheSize;
+                    }
+                    if (more) {
+                        prefetch(playerId, playerName, personaName, phase);
+                    }
+                });
+    }
+
+    public static GreetingStats stats() {
+        synchronized (LOCK) {
+            int lines = 0;
+            for (Pool pool : POOLS.values()) {
+                lines += pool.lines.size();
+            }
+            return new GreetingStats(sessionsGreeted, repeatsSkipped, servedFromCache, generated, lines);
+        }
+    }
+
+    @SubscribeEvent
+    public static void onServerStopping(ServerStoppingEvent event) {
+        synchronized (LOCK) {
+            GREETED.clear();
+            POOLS.clear();
+        }
+    }
+
+    private static String toTemplate(String line, String playerName) {
+        if (playerName == null || playerName.isBlank()) {
+            return line;
+        }
+        Pattern name = Pattern.compile("(?<![\\w])" + Pattern.quote(playerName) + "(?![\\w])", Pattern.CASE_INSENSITIVE);
+        return name.matcher(line).replaceAll(Matcher.quoteReplacement(PLAYER_PLACEHOLDER));
+    }
+
+    private record PoolKey(String personaName, FriendPhase phase) {
+    }
+
+    private static final class Pool {
+        private final Deque<String> lines = new ArrayDeque<>();
+        private boolean filling;
+    }
+}
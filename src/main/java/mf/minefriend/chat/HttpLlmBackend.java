@@ -0,0 +1,98 @@
+package mf.minefriend.chat;
+
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * The HTTP side shared by the backends that talk JSON to a server: one pooled client, plain and streamed requests
+ * and status checks. Subclasses only build the request body. Both server families this mod supports answer a
+ * streamed request with server-sent events that {@link SseReplySubscriber} understands.
+ */
+abstract class HttpLlmBackend implements LlmBackend {
+    private static final HttpClient CLIENT = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(5))
+            .build();
+
+    protected final LlmEndpoint endpoint;
+
+    protected HttpLlmBackend(LlmEndpoint endpoint) {
+        this.endpoint = endpoint;
+    }
+
+    /**
+     * The JSON body for the completion.
+     */
+    protected abstract String requestBody(Completion completion);
+
+    @Override
+    public Exchange complete(Completion completion, Consumer<String> firstSentenceListener, Duration timeout) {
+        return send(requestBody(completion), completion.stream(), firstSentenceListener, timeout);
+    }
+
+    /**
+     * Posts an already built body, streamed or not.
+     */
+    protected final Exchange send(String body, boolean stream, Consumer<String> firstSentenceListener, Duration timeout) {
+        HttpRequest request = request(body, timeout);
+        return stream ? sendStreaming(request, firstSentenceListener) : sendPlain(request);
+    }
+
+    @Override
+    public CompletableFuture<?> probe(Duration timeout) {
+        Completion ping = new Completion(null, null, null, "ping", 0.0D, 1, false, null);
+        return CLIENT.sendAsync(request(requestBody(ping), timeout), HttpResponse.BodyHandlers.discarding())
+                .thenApply(HttpLlmBackend::checkStatus)
+                .orTimeout(timeout.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    private HttpRequest request(String body, Duration timeout) {
+        return HttpRequest.newBuilder()
+                .uri(endpoint.uri())
+                .header("User-Agent", "MineFriendMod/1.0")
+                .header("Content-Type", "application/json")
+                .timeout(timeout)
+                .POST(HttpRequest.BodyPublishers.ofString(body, StandardCharsets.UTF_8))
+                .build();
+    }
+
+    private static Exchange sendPlain(HttpRequest request) {
+        CompletableFuture<HttpResponse<byte[]>> http = CLIENT.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray());
+        return new Exchange(http, http
+                .thenApply(HttpLlmBackend::checkStatus)
+                .thenApply(response -> new Generation(LlmResponseParser.parseBody(response.body()), null)));
+    }
+
+    private static Exchange sendStreaming(HttpRequest request, Consumer<String> firstSentenceListener) {
+        String[] delivered = new String[1];
+        SseReplySubscriber subscriber = new SseReplySubscriber(sentence -> {
+            String cleaned = LlmResponseParser.normalize(sentence);
+            delivered[0] = cleaned;
+            if (firstSentenceListener != null) {
+                firstSentenceListener.accept(cleaned);
+            }
+        });
+        CompletableFuture<HttpResponse<SseReplySubscriber>> http =
+                CLIENT.sendAsync(request, HttpResponse.BodyHandlers.fromLineSubscriber(subscriber, s -> s, null));
+        // Once the subscriber has the whole reply it hangs up, and the HTTP future is left incomplete.
+        CompletableFuture<SseReplySubscriber> body = http.thenApply(HttpLlmBackend::checkStatus).thenApply(HttpResponse::body);
+        return new Exchange(http, body
+                .applyToEither(subscriber.stoppedEarly(), stream -> stream)
+                .thenApply(stream -> stream.sawEvents()
+                        ? new Generation(LlmResponseParser.scan(stream.content()), delivered[0])
+                        : new Generation(LlmResponseParser.parseBody(stream.rawBody()), null)));
+    }
+
+    private static <T> HttpResponse<T> checkStatus(HttpResponse<T> response) {
+        if (response.statusCode() >= 400) {
+            throw new IllegalStateException("LLM backend answered with HTTP " + response.statusCode());
+        }
+        return response;
+    }
+}
@@ -0,0 +1,46 @@
+package mf.minefriend.chat;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * Answers from a fixed set of lines without any server, so the mod can be played and the request path exercised
+ * offline. The line is chosen from the player's message, so the same message always gets the same answer. The URL
+ * of a {@code stub} endpoint is only used to tell endpoints apart.
+ */
+final class InProcessBackend implements LlmBackend {
+    private static final Capabilities CAPABILITIES = new Capabilities(true, false, false, false);
+    private static final List<String> REPLIES = List.of(
+            "I'm right here with you.",
+            "Can we go mining together?",
+            "I like it when you talk to me.",
+            "Don't go too far, okay?",
+            "I was watching you build that."
+    );
+
+    @Override
+    public Capabilities capabilities() {
+        return CAPABILITIES;
+    }
+
+    @Override
+    public Exchange complete(Completion completion, Consumer<String> firstSentenceListener, Duration timeout) {
+        String text = TokenEstimator.truncate(REPLIES.get(Math.floorMod(completion.userMessage().hashCode(), REPLIES.size())),
+                completion.maxTokens());
+        String delivered = null;
+        if (completion.stream() && firstSentenceListener != null && !text.isEmpty()) {
+            delivered = text;
+            firstSentenceListener.accept(text);
+        }
+        CompletableFuture<Generation> generation = CompletableFuture.completedFuture(
+                new Generation(LlmResponseParser.scan(text), delivered));
+        return new Exchange(generation, generation);
+    }
+
+    @Override
+    public CompletableFuture<?> probe(Duration timeout) {
+        return CompletableFuture.completedFuture(null);
+    }
+}
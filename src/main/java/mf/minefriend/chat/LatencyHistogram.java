@@ -0,0 +1,75 @@
+package mf.minefriend.chat;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rolling latency histogram over the most recent samples. Latencies fall into exponentially growing buckets
+ * (10 ms growing by 25 % per bucket, up to a few minutes), so percentiles are accurate to one bucket width while
+ * recording stays constant time. The oldest sample drops out once the window is full.
+ */
+public final class LatencyHistogram {
+    private static final long FIRST_BUCKET_MS = 10L;
+    private static final double BUCKET_GROWTH = 1.25D;
+    private static final int BUCKETS = 48;
+    private static final long[] UPPER_BOUNDS_MS = new long[BUCKETS];
+
+    static {
+        double bound = FIRST_BUCKET_MS;
+        for (int i = 0; i < BUCKETS; i++) {
+            UPPER_BOUNDS_MS[i] = Math.round(bound);
+            bound *= BUCKET_GROWTH;
+        }
+    }
+
+    private final int[] counts = new int[BUCKETS];
+    private final byte[] window;
+    private int size;
+    private int cursor;
+
+    public LatencyHistogram(int windowSize) {
+        this.window = new byte[Math.max(1, windowSize)];
+    }
+
+    public synchronized void record(long latencyNanos) {
+        int bucket = bucketFor(TimeUnit.NANOSECONDS.toMillis(latencyNanos));
+        if (size == window.length) {
+            counts[window[cursor]]--;
+        } else {
+            size++;
+        }
+        window[cursor] = (byte) bucket;
+        counts[bucket]++;
+        cursor = (cursor + 1) % window.length;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * The upper bound of the bucket holding the given percentile (0-100), in milliseconds; 0 without samples.
+     */
+    public synchronized long percentileMs(double percentile) {
+        if (size == 0) {
+            return 0L;
+        }
+        long rank = Math.max(1L, (long) Math.ceil(size * percentile / 100.0D));
+        long seen = 0L;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return UPPER_BOUNDS_MS[i];
+            }
+        }
+        return UPPER_BOUNDS_MS[BUCKETS - 1];
+    }
+
+    private static int bucketFor(long latencyMs) {
+        for (int i = 0; i < BUCKETS - 1; i++) {
+            if (latencyMs <= UPPER_BOUNDS_MS[i]) {
+                return i;
+            }
+        }
+        return BUCKETS - 1;
+    }
+}
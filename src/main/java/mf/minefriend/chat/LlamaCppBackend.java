@@ -0,0 +1,141 @@
+package mf.minefriend.chat;
+
+import com.google.gson.Gson;
+import mf.minefriend.Config;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * llama.cpp's native {@code /completion} endpoint. Requests set {@code cache_prompt}, so the server keeps the
+ * evaluated prompt in the slot that generated it and only evaluates the part that changed, and every player is
+ * pinned to one slot ({@code id_slot}) for as long as it stays theirs. A player's next request therefore finds
+ * their system prompt and conversation already evaluated, which removes most of the prefill time. The endpoint's
+ * concurrency limit is taken as the server's slot count ({@code --parallel}); when a player's slot is taken the
+ * least recently used free one is reassigned to them, and requests that cannot be pinned let the server choose.
+ * The prompt layout follows {@code Config.llmCompletionPromptFormat}.
+ */
+final class LlamaCppBackend extends HttpLlmBackend {
+    private static final Gson GSON = new Gson();
+    private static final Capabilities CAPABILITIES = new Capabilities(true, true, true, false);
+    private static final int ANY_SLOT = -1;
+
+    private final Object slotLock = new Object();
+    private final UUID[] slotOwners;
+    private final long[] slotLastUsed;
+    private final boolean[] slotBusy;
+    private long useCounter;
+    private long stickyHits;
+    private long reassignments;
+    private long unpinned;
+
+    LlamaCppBackend(LlmEndpoint endpoint) {
+        super(endpoint);
+        int slots = endpoint.maxConcurrency();
+        slotOwners = new UUID[slots];
+        slotLastUsed = new long[slots];
+        slotBusy = new boolean[slots];
+    }
+
+    @Override
+    public Capabilities capabilities() {
+        return CAPABILITIES;
+    }
+
+    @Override
+    public Exchange complete(Completion completion, Consumer<String> firstSentenceListener, Duration timeout) {
+        int slot = acquireSlot(completion.playerId());
+        Exchange exchange;
+        try {
+            exchange = send(requestBody(completion, slot), completion.stream(), firstSentenceListener, timeout);
+        } catch (RuntimeException ex) {
+            releaseSlot(slot);
+            throw ex;
+        }
+        // Cancelling the transport completes the generation too, so this covers every way the request can end.
+        exchange.generation().whenComplete((generation, throwable) -> releaseSlot(slot));
+        return exchange;
+    }
+
+    @Override
+    protected String requestBody(Completion completion) {
+        return requestBody(completion, ANY_SLOT);
+    }
+
+    private static String requestBody(Completion completion, int slot) {
+        String prompt = Config.llmCompletionPromptFormat.format(completion.systemPrompt(), completion.userMessage());
+        return GSON.toJson(new CompletionRequest(prompt, completion.maxTokens(), completion.temperature(), completion.stream(),
+                completion.stop(), true, slot));
+    }
+
+    @Override
+    public String describeState() {
+        synchronized (slotLock) {
+            int owned = 0;
+            for (UUID owner : slotOwners) {
+                if (owner != null) {
+                    owned++;
+                }
+            }
+            return String.format(Locale.ROOT, "sticky slots %d/%d owned, %d hits, %d reassigned, %d unpinned",
+                    owned, slotOwners.length, stickyHits, reassignments, unpinned);
+        }
+    }
+
+    /**
+     * The player's own slot if it is free, otherwise the least recently used free slot, which becomes theirs.
+     * {@link #ANY_SLOT} for requests without a player or when every slot is busy.
+     */
+    private int acquireSlot(UUID playerId) {
+        if (playerId == null) {
+            return ANY_SLOT;
+        }
+        synchronized (slotLock) {
+            int free = ANY_SLOT;
+            for (int i = 0; i < slotOwners.length; i++) {
+                if (playerId.equals(slotOwners[i])) {
+                    if (slotBusy[i]) {
+                        unpinned++;
+                        return ANY_SLOT;
+                    }
+                    stickyHits++;
+                    return take(i);
+                }
+                if (!slotBusy[i] && (free == ANY_SLOT || slotLastUsed[i] < slotLastUsed[free])) {
+                    free = i;
+                }
+            }
+            if (free == ANY_SLOT) {
+                unpinned++;
+                return ANY_SLOT;
+            }
+            reassignments++;
+            slotOwners[free] = playerId;
+            return take(free);
+        }
+    }
+
+    private int take(int slot) {
+        slotBusy[slot] = true;
+        slotLastUsed[slot] = ++useCounter;
+        return slot;
+    }
+
+    private void releaseSlot(int slot) {
+        if (slot == ANY_SLOT) {
+            return;
+        }
+        synchronized (slotLock) {
+            slotBusy[slot] = false;
+        }
+    }
+
+    /**
+     * @param id_slot the slot to run in, or -1 to let the server pick one
+     */
+    private record CompletionRequest(String prompt, int n_predict, double temperature, boolean stream, List<String> stop,
+                                     boolean cache_prompt, int id_slot) {}
+}
@@ -0,0 +1,111 @@
+package mf.minefriend.chat;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * The wire protocol of one {@link LlmEndpoint}. {@link LlmService} builds the prompt and interprets the reply; a
+ * backend only turns a {@link Completion} into a request for its server and the response back into text. Each
+ * backend reports its {@link Capabilities}, which the callers use to pick the fastest path: streaming only where
+ * the server streams, the {@link LlmBatcher} only where the server batches, and sticky endpoint routing in the
+ * {@link LlmBackendPool} only where the server keeps a prompt cache.
+ */
+interface LlmBackend {
+
+    Capabilities capabilities();
+
+    /**
+     * Sends the completion. The listener, if any, receives the first complete sentence as soon as it is
+     * generated; it is only called when {@code completion.stream()} is set.
+     */
+    Exchange complete(Completion completion, Consumer<String> firstSentenceListener, Duration timeout);
+
+    /**
+     * Asks for a single token, to check the server answers and to load the model.
+     */
+    CompletableFuture<?> probe(Duration timeout);
+
+    /**
+     * A short description of backend-specific state for {@code /minefriend stats}, or an empty string.
+     */
+    default String describeState() {
+        return "";
+    }
+
+    /**
+     * @param streaming   the server can stream tokens as they are generated
+     * @param batching    the server runs concurrent requests in shared batches, so releasing them together helps
+     * @param promptCache the server reuses the evaluated prompt of earlier requests, so a player's requests should
+     *                    keep going to the same server
+     * @param modelSelection the request can name the model, so the {@link ModelRouter} can pick one
+     */
+    record Capabilities(boolean streaming, boolean batching, boolean promptCache, boolean modelSelection) {
+    }
+
+    /**
+     * One generation request, independent of the wire format.
+     *
+     * @param playerId     the player the text is for, or null for requests that belong to nobody (health probes)
+     * @param model        the model to use, or null for the endpoint's own; ignored by backends without model selection
+     * @param systemPrompt instructions that go before the user message, or null for none
+     * @param stop         sequences that end generation, or null for none
+     */
+    record Completion(UUID playerId, String model, String systemPrompt, String userMessage, double temperature, int maxTokens,
+                      boolean stream, List<String> stop) {
+    }
+
+    /**
+     * @param deliveredPrefix the part of the reply already handed to the first-sentence listener, or null
+     */
+    record Generation(LlmResponseParser.ParsedReply parsed, String deliveredPrefix) {
+    }
+
+    /**
+     * The transport-level request, kept so it can be aborted, and the reply read from it. Callers must cancel
+     * {@code transport} once they are done with the reply: a stream that was cut short leaves it pending.
+     */
+    record Exchange(CompletableFuture<?> transport, CompletableFuture<Generation> generation) {
+    }
+
+    /**
+     * The backend types an endpoint can name in the last field of its spec.
+     */
+    enum Kind {
+        OPENAI("openai"),
+        LLAMA_CPP("llamacpp"),
+        IN_PROCESS("stub");
+
+        private final String id;
+
+        Kind(String id) {
+            this.id = id;
+        }
+
+        public String id() {
+            return id;
+        }
+
+        static Optional<Kind> byId(String id) {
+            String normalized = id.trim().toLowerCase(Locale.ROOT);
+            for (Kind kind : values()) {
+                if (kind.id.equals(normalized)) {
+                    return Optional.of(kind);
+                }
+            }
+            return Optional.empty();
+        }
+
+        LlmBackend create(LlmEndpoint endpoint) {
+            return switch (this) {
+                case OPENAI -> new OpenAiBackend(endpoint);
+                case LLAMA_CPP -> new LlamaCppBackend(endpoint);
+                case IN_PROCESS -> new InProcessBackend();
+            };
+        }
+    }
+}
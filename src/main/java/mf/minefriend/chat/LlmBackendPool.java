@@ -0,0 +1,258 @@
+package mf.minefriend.chat;
+
+import com.mojang.logging.LogUtils;
+import mf.minefriend.Config;
+import mf.minefriend.chat.LlmEndpoint.EndpointStats;
+import org.slf4j.Logger;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The configured set of inference servers ({@code Config.llmEndpoints}). Requests go to the healthy endpoint with
+ * the fewest outstanding requests per unit of weight, never exceeding an endpoint's own concurrency limit.
+ * An endpoint that fails {@code Config.llmEndpointEjectAfterFailures} times in a row is ejected for
+ * {@code Config.llmEndpointEjectSeconds} and then gets traffic again. A player whose last request went to an
+ * endpoint with a prompt cache goes back to it while it is healthy and has room, so their cached prompt is reused
+ * instead of being evaluated again elsewhere.
+ */
+public final class LlmBackendPool {
+    private static final Logger LOGGER = LogUtils.getLogger();
+    public static final String DEFAULT_ENDPOINT = "http://26.126.73.192:1234/v1/chat/completions|" + LlmEndpoint.DEFAULT_MODEL + "|1|2";
+
+    private static final int MAX_AFFINITIES = 4096;
+
+    private static final Object LOCK = new Object();
+    private static final Map<UUID, LlmEndpoint> AFFINITY = new LinkedHashMap<>(16, 0.75F, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<UUID, LlmEndpoint> eldest) {
+            return size() > MAX_AFFINITIES;
+        }
+    };
+    private static List<? extends String> loadedSpecs;
+    private static List<LlmEndpoint> endpoints = List.of();
+
+    private LlmBackendPool() {
+    }
+
+    /**
+     * Whether {@link #acquire(UUID)} would hand out an endpoint right now, or fail immediately because every endpoint
+     * is ejected. Only a pool where every healthy endpoint is busy makes callers wait.
+     */
+    public static boolean canDispatch() {
+        synchronized (LOCK) {
+            long now = System.nanoTime();
+            boolean anyHealthy = false;
+            for (LlmEndpoint endpoint : currentEndpoints()) {
+                if (endpoint.isEjected(now)) {
+                    continue;
+                }
+                anyHealthy = true;
+                if (endpoint.hasFreeSlot()) {
+                    return true;
+                }
+            }
+            return !anyHealthy;
+        }
+    }
+
+    /**
+     * Reserves a slot on the endpoint that cached the player's prompt, if it can take the request, and otherwise on
+     * the least loaded healthy endpoint. Empty when every endpoint is ejected or busy.
+     *
+     * @param playerId the player the request is for, or null when it has no prompt worth keeping warm
+     */
+    public static Optional<Lease> acquire(UUID playerId) {
+        synchronized (LOCK) {
+            long now = System.nanoTime();
+            List<LlmEndpoint> current = currentEndpoints();
+            LlmEndpoint preferred = playerId != null ? AFFINITY.get(playerId) : null;
+            if (preferred != null && current.contains(preferred) && !preferred.isEjected(now) && preferred.hasFreeSlot()) {
+                return Optional.of(lease(preferred));
+            }
+            LlmEndpoint best = null;
+            for (LlmEndpoint endpoint : current) {
+                if (endpoint.isEjected(now) || !endpoint.hasFreeSlot()) {
+                    continue;
+                }
+                if (best == null || endpoint.loadAfterAcquire() < best.loadAfterAcquire()) {
+                    best = endpoint;
+                }
+            }
+            if (best == null) {
+                return Optional.empty();
+            }
+            if (playerId != null && best.backend().capabilities().promptCache()) {
+                AFFINITY.put(playerId, best);
+            }
+            return Optional.of(lease(best));
+        }
+    }
+
+    private static Lease lease(LlmEndpoint endpoint) {
+        endpoint.outstanding++;
+        endpoint.requests++;
+        return new Lease(endpoint);
+    }
+
+    /**
+     * The median reply latency of the fastest healthy endpoint that has answered before, or 0 when none has.
+     * The scheduler uses it to tell whether queued work can still meet its deadline.
+     */
+    public static long expectedLatencyMs() {
+        synchronized (LOCK) {
+            long now = System.nanoTime();
+            long best = 0L;
+            for (LlmEndpoint endpoint : currentEndpoints()) {
+                long typical = endpoint.typicalLatencyMs();
+                if (typical > 0L && !endpoint.isEjected(now) && (best == 0L || typical < best)) {
+                    best = typical;
+                }
+            }
+            return best;
+        }
+    }
+
+    public static List<EndpointStats> stats() {
+        synchronized (LOCK) {
+            long now = System.nanoTime();
+            List<EndpointStats> stats = new ArrayList<>();
+            currentEndpoints().forEach(endpoint -> stats.add(endpoint.snapshot(now)));
+            return stats;
+        }
+    }
+
+    /**
+     * The endpoints currently configured, healthy or not. Used by the {@link LlmHealthProber}.
+     */
+    static List<LlmEndpoint> endpoints() {
+        synchronized (LOCK) {
+            return currentEndpoints();
+        }
+    }
+
+    /**
+     * Applies the outcome of a health probe. A failed probe counts like a failed request and can eject the
+     * endpoint; a successful one brings an ejected endpoint back without waiting out the cooldown.
+     */
+    static void recordProbe(LlmEndpoint endpoint, boolean success) {
+        synchronized (LOCK) {
+            endpoint.probes++;
+            if (success) {
+                endpoint.consecutiveFailures = 0;
+                if (endpoint.isEjected(System.nanoTime())) {
+                    endpoint.ejectedUntil = 0L;
+                    LOGGER.info("[MineFriend-Pool] LLM endpoint {} answered its health probe, back in rotation.", endpoint.uri());
+                }
+                return;
+            }
+            endpoint.probeFailures++;
+            recordFailure(endpoint);
+        }
+    }
+
+    private static void recordFailure(LlmEndpoint endpoint) {
+        if (++endpoint.consecutiveFailures >= Config.llmEndpointEjectAfterFailures) {
+            endpoint.consecutiveFailures = 0;
+            endpoint.ejections++;
+            endpoint.ejectedUntil = System.nanoTime() + TimeUnit.SECONDS.toNanos(Config.llmEndpointEjectSeconds);
+            LOGGER.warn("[MineFriend-Pool] Ejecting LLM endpoint {} for {} s after repeated failures.",
+                    endpoint.uri(), Config.llmEndpointEjectSeconds);
+        }
+    }
+
+    private static List<LlmEndpoint> currentEndpoints() {
+        List<? extends String> specs = Config.llmEndpoints;
+        if (specs != loadedSpecs) {
+            rebuild(specs);
+        }
+        return endpoints;
+    }
+
+    private static void rebuild(List<? extends String> specs) {
+        Map<String, LlmEndpoint> previous = new HashMap<>();
+        endpoints.forEach(endpoint -> previous.put(endpoint.spec(), endpoint));
+        List<LlmEndpoint> rebuilt = new ArrayList<>();
+        for (String spec : specs) {
+            LlmEndpoint existing = previous.get(spec.trim());
+            if (existing != null) {
+                rebuilt.add(existing);
+                continue;
+            }
+            LlmEndpoint.parse(spec).ifPresentOrElse(rebuilt::add,
+                    () -> LOGGER.warn("[MineFriend-Pool] Ignoring malformed LLM endpoint '{}'.", spec));
+        }
+        loadedSpecs = specs;
+        endpoints = List.copyOf(rebuilt);
+        LOGGER.info("[MineFriend-Pool] Using {} LLM endpoint(s).", endpoints.size());
+    }
+
+    /**
+     * A reserved slot on one endpoint. Must be released exactly once when the request finishes.
+     */
+    public static final class Lease {
+        private final LlmEndpoint endpoint;
+        private boolean released;
+
+        private Lease(LlmEndpoint endpoint) {
+            this.endpoint = endpoint;
+        }
+
+        public LlmEndpoint endpoint() {
+            return endpoint;
+        }
+
+        /**
+         * Releases the slot and records whether the endpoint answered successfully.
+         */
+        public void release(boolean success) {
+            synchronized (LOCK) {
+                if (released) {
+                    return;
+                }
+                released = true;
+                endpoint.outstanding--;
+                if (success) {
+                    endpoint.consecutiveFailures = 0;
+                    return;
+                }
+                endpoint.failures++;
+                recordFailure(endpoint);
+            }
+        }
+
+        /**
+         * Releases the slot of a request that was cancelled while the endpoint worked on it. The request still
+         * counts as sent, but says nothing about the endpoint's health.
+         */
+        public void cancel() {
+            synchronized (LOCK) {
+                if (released) {
+                    return;
+                }
+                released = true;
+                endpoint.outstanding--;
+            }
+        }
+
+        /**
+         * Releases the slot of a request that was never sent, without touching the endpoint's health.
+         */
+        public void abandon() {
+            synchronized (LOCK) {
+                if (released) {
+                    return;
+                }
+                released = true;
+                endpoint.outstanding--;
+                endpoint.requests--;
+            }
+        }
+    }
+}
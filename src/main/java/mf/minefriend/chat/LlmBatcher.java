@@ -0,0 +1,135 @@
+package mf.minefriend.chat;
+
+import com.mojang.logging.LogUtils;
+import mf.minefriend.Config;
+import mf.minefriend.Minefriend;
+import mf.minefriend.chat.LlmService.LlmReply;
+import net.minecraftforge.event.TickEvent;
+import net.minecraftforge.event.server.ServerStoppingEvent;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
+import net.minecraftforge.fml.common.Mod;
+import org.slf4j.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * Optional batching stage between the scheduler and the HTTP client. With {@code Config.llmBatchWindowTicks} above
+ * zero, dispatched requests are held for that many server ticks and then released together, so requests from
+ * several players reach the backend in one burst over the client's pooled keep-alive connections and land in the
+ * same continuous-batching step of the inference server instead of trickling in one by one.
+ */
+@Mod.EventBusSubscriber(modid = Minefriend.MODID, bus = Mod.EventBusSubscriber.Bus.FORGE)
+public final class LlmBatcher {
+    private static final Logger LOGGER = LogUtils.getLogger();
+
+    private static final Object LOCK = new Object();
+    private static final List<BatchEntry> PENDING = new ArrayList<>();
+    private static int ticksWaited;
+
+    private static long batches;
+    private static long batchedRequests;
+    private static int largestBatch;
+
+    private LlmBatcher() {
+    }
+
+    /**
+     * Runs the call now when batching is disabled, otherwise parks it until the current window closes.
+     * Cancelling the returned future drops a parked call or cancels the running one.
+     */
+    public static CompletableFuture<LlmReply> submit(Supplier<CompletableFuture<LlmReply>> call) {
+        if (Config.llmBatchWindowTicks <= 0) {
+            return call.get();
+        }
+        CompletableFuture<LlmReply> result = new CompletableFuture<>();
+        boolean full;
+        synchronized (LOCK) {
+            PENDING.add(new BatchEntry(call, result));
+            full = PENDING.size() >= Config.llmBatchMaxSize;
+        }
+        if (full) {
+            flush();
+        }
+        return result;
+    }
+
+    public static BatchStats stats() {
+        synchronized (LOCK) {
+            double averageSize = batches == 0 ? 0.0D : (double) batchedRequests / batches;
+            return new BatchStats(PENDING.size(), batches, averageSize, largestBatch);
+        }
+    }
+
+    @SubscribeEvent
+    public static void onServerTick(TickEvent.ServerTickEvent event) {
+        if (event.phase != TickEvent.Phase.END) {
+            return;
+        }
+        boolean due;
+        synchronized (LOCK) {
+            if (PENDING.isEmpty()) {
+                ticksWaited = 0;
+                return;
+            }
+            due = ++ticksWaited >= Config.llmBatchWindowTicks;
+        }
+        if (due) {
+            flush();
+        }
+    }
+
+    @SubscribeEvent
+    public static void onServerStopping(ServerStoppingEvent event) {
+        flush();
+    }
+
+    private static void flush() {
+        List<BatchEntry> batch;
+        synchronized (LOCK) {
+            if (PENDING.isEmpty()) {
+                return;
+            }
+            batch = new ArrayList<>(PENDING);
+            PENDING.clear();
+            ticksWaited = 0;
+            batches++;
+            batchedRequests += batch.size();
+            largestBatch = Math.max(largestBatch, batch.size());
+        }
+        LOGGER.debug("[MineFriend-Batcher] Releasing batch of {} LLM requests.", batch.size());
+        for (BatchEntry entry : batch) {
+            if (entry.result().isDone()) {
+                // Cancelled while it was waiting for the window to close.
+                continue;
+            }
+            CompletableFuture<LlmReply> call;
+            try {
+                call = entry.call().get();
+            } catch (RuntimeException ex) {
+                call = CompletableFuture.failedFuture(ex);
+            }
+            CompletableFuture<LlmReply> started = call;
+            entry.result().whenComplete((reply, throwable) -> {
+                if (entry.result().isCancelled()) {
+                    started.cancel(true);
+                }
+            });
+            call.whenComplete((reply, throwable) -> {
+                if (throwable != null) {
+                    entry.result().completeExceptionally(throwable);
+                } else {
+                    entry.result().complete(reply);
+                }
+            });
+        }
+    }
+
+    private record BatchEntry(Supplier<CompletableFuture<LlmReply>> call, CompletableFuture<LlmReply> result) {
+    }
+
+    public record BatchStats(int pending, long batches, double averageSize, int largestBatch) {
+    }
+}
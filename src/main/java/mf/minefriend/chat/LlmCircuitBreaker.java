@@ -0,0 +1,188 @@
+package mf.minefriend.chat;
+
+import com.mojang.logging.LogUtils;
+import mf.minefriend.Config;
+import org.slf4j.Logger;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tracks recent backend outcomes and stops sending work to an overloaded or unreachable model host.
+ * A call counts as bad when it fails, takes longer than {@code Config.llmBreakerSlowCallMs}, or is still running
+ * when its caller's deadline passes. Once the share of bad calls in the rolling window crosses
+ * {@code Config.llmBreakerFailureRatio} the breaker opens and callers fall back to scripted replies. After {@code Config.llmBreakerOpenSeconds} a single probe request is let through;
+ * its outcome decides whether the breaker closes again or stays open for another round.
+ */
+public final class LlmCircuitBreaker {
+    private static final Logger LOGGER = LogUtils.getLogger();
+    private static final int MAX_WINDOW = 256;
+
+    private static final Object LOCK = new Object();
+    private static final boolean[] OUTCOMES = new boolean[MAX_WINDOW];
+    private static int outcomeCount;
+    private static int outcomeCursor;
+    private static State state = State.CLOSED;
+    private static long openedAt;
+    private static boolean probeInFlight;
+
+    private static long timesOpened;
+    private static long shortCircuited;
+    private static long slowCalls;
+    private static long failedCalls;
+
+    private LlmCircuitBreaker() {
+    }
+
+    /**
+     * Whether a new request would currently be let through, without claiming the half-open probe.
+     */
+    public static boolean isCallPermitted() {
+        synchronized (LOCK) {
+            return switch (state) {
+                case CLOSED -> true;
+                case OPEN -> cooldownElapsed();
+                case HALF_OPEN -> !probeInFlight;
+            };
+        }
+    }
+
+    /**
+     * Claims permission for one backend call. The returned permit must be completed with
+     * {@link Permit#recordSuccess(long)} or {@link Permit#recordFailure()} once the call finishes.
+     */
+    public static Optional<Permit> tryAcquire() {
+        synchronized (LOCK) {
+            if (state == State.OPEN && cooldownElapsed()) {
+                state = State.HALF_OPEN;
+                probeInFlight = false;
+                LOGGER.info("[MineFriend-Breaker] Cooldown elapsed, probing the LLM backend.");
+            }
+            if (state == State.CLOSED) {
+                return Optional.of(new Permit(false));
+            }
+            if (state == State.HALF_OPEN && !probeInFlight) {
+                probeInFlight = true;
+                return Optional.of(new Permit(true));
+            }
+            shortCircuited++;
+            return Optional.empty();
+        }
+    }
+
+    public static BreakerStats stats() {
+        synchronized (LOCK) {
+            return new BreakerStats(state.name(), badRatio(), outcomeCount, timesOpened, shortCircuited, slowCalls, failedCalls);
+        }
+    }
+
+    private static void record(boolean bad, boolean probe) {
+        if (probe) {
+            probeInFlight = false;
+            if (state != State.HALF_OPEN) {
+                return;
+            }
+            if (bad) {
+                open();
+            } else {
+                state = State.CLOSED;
+                outcomeCount = 0;
+                outcomeCursor = 0;
+                LOGGER.info("[MineFriend-Breaker] Probe succeeded, LLM backend is available again.");
+            }
+            return;
+        }
+        // Calls that were already running when the breaker opened say nothing about the probe's outcome.
+        if (state != State.CLOSED) {
+            return;
+        }
+        int window = window();
+        if (outcomeCursor >= window) {
+            outcomeCursor = 0;
+        }
+        OUTCOMES[outcomeCursor] = bad;
+        outcomeCursor = (outcomeCursor + 1) % window;
+        outcomeCount = Math.min(outcomeCount + 1, window);
+        if (outcomeCount >= Math.min(Config.llmBreakerMinSamples, window) && badRatio() >= Config.llmBreakerFailureRatio) {
+            open();
+        }
+    }
+
+    private static void open() {
+        state = State.OPEN;
+        openedAt = System.nanoTime();
+        timesOpened++;
+        outcomeCount = 0;
+        outcomeCursor = 0;
+        LOGGER.warn("[MineFriend-Breaker] LLM backend is failing or too slow; using scripted replies for {} s.", Config.llmBreakerOpenSeconds);
+    }
+
+    private static double badRatio() {
+        if (outcomeCount == 0) {
+            return 0.0D;
+        }
+        int bad = 0;
+        for (int i = 0; i < outcomeCount; i++) {
+            if (OUTCOMES[i]) {
+                bad++;
+            }
+        }
+        return (double) bad / outcomeCount;
+    }
+
+    private static boolean cooldownElapsed() {
+        return System.nanoTime() - openedAt >= TimeUnit.SECONDS.toNanos(Config.llmBreakerOpenSeconds);
+    }
+
+    private static int window() {
+        return Math.max(1, Math.min(MAX_WINDOW, Config.llmBreakerWindow));
+    }
+
+    private enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    public static final class Permit {
+        private final boolean probe;
+
+        private Permit(boolean probe) {
+            this.probe = probe;
+        }
+
+        public void recordSuccess(long latencyNanos) {
+            boolean slow = TimeUnit.NANOSECONDS.toMillis(latencyNanos) > Config.llmBreakerSlowCallMs;
+            synchronized (LOCK) {
+                if (slow) {
+                    slowCalls++;
+                }
+                record(slow, probe);
+            }
+        }
+
+        public void recordFailure() {
+            synchronized (LOCK) {
+                failedCalls++;
+                record(true, probe);
+            }
+        }
+
+        /**
+         * Gives the permit back without an outcome, for calls that were cancelled before they could finish for a reason
+         * that says nothing about the backend, such as a newer message superseding them.
+         * A cancelled probe frees the half-open slot so the next request probes instead.
+         */
+        public void release() {
+            synchronized (LOCK) {
+                if (probe) {
+                    probeInFlight = false;
+                }
+            }
+        }
+    }
+
+    public record BreakerStats(String state, double badRatio, int samples, long timesOpened, long shortCircuited,
+                               long slowCalls, long failedCalls) {
+    }
+}
@@ -0,0 +1,160 @@
+package mf.minefriend.chat;
+
+import mf.minefriend.Config;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One inference server in the {@link LlmBackendPool}. Configured as
+ * {@code url|model|weight|maxConcurrency|backend}, where everything after the URL is optional and the backend is
+ * one of {@code openai} (the default), {@code llamacpp} for llama.cpp's native {@code /completion} endpoint, or
+ * {@code stub} for canned in-process replies. Counters are guarded by the pool's lock; the latency histogram
+ * synchronizes on its own.
+ */
+public final class LlmEndpoint {
+    public static final String DEFAULT_MODEL = "mistralai/mathstral-7b-v0.1";
+    private static final int DEFAULT_WEIGHT = 1;
+    private static final int DEFAULT_MAX_CONCURRENCY = 2;
+    private static final int LATENCY_WINDOW = 200;
+
+    private final String spec;
+    private final URI uri;
+    private final String model;
+    private final int weight;
+    private final int maxConcurrency;
+    private final LlmBackend.Kind backendKind;
+    private final LlmBackend backend;
+    private final LatencyHistogram latencies = new LatencyHistogram(LATENCY_WINDOW);
+
+    int outstanding;
+    int consecutiveFailures;
+    long ejectedUntil;
+    long requests;
+    long failures;
+    long ejections;
+    long probes;
+    long probeFailures;
+
+    private LlmEndpoint(String spec, URI uri, String model, int weight, int maxConcurrency, LlmBackend.Kind backendKind) {
+        this.spec = spec;
+        this.uri = uri;
+        this.model = model;
+        this.weight = weight;
+        this.maxConcurrency = maxConcurrency;
+        this.backendKind = backendKind;
+        this.backend = backendKind.create(this);
+    }
+
+    public static Optional<LlmEndpoint> parse(String spec) {
+        if (spec == null || spec.isBlank()) {
+            return Optional.empty();
+        }
+        String[] parts = spec.split("\\|", -1);
+        try {
+            URI uri = URI.create(parts[0].trim());
+            if (uri.getScheme() == null || uri.getHost() == null) {
+                return Optional.empty();
+            }
+            String model = parts.length > 1 && !parts[1].isBlank() ? parts[1].trim() : DEFAULT_MODEL;
+            int weight = parts.length > 2 && !parts[2].isBlank() ? Integer.parseInt(parts[2].trim()) : DEFAULT_WEIGHT;
+            int maxConcurrency = parts.length > 3 && !parts[3].isBlank() ? Integer.parseInt(parts[3].trim()) : DEFAULT_MAX_CONCURRENCY;
+            Optional<LlmBackend.Kind> backendKind = parts.length > 4 && !parts[4].isBlank()
+                    ? LlmBackend.Kind.byId(parts[4]) : Optional.of(LlmBackend.Kind.OPENAI);
+            if (weight < 1 || maxConcurrency < 1 || backendKind.isEmpty()) {
+                return Optional.empty();
+            }
+            return Optional.of(new LlmEndpoint(spec.trim(), uri, model, weight, maxConcurrency, backendKind.get()));
+        } catch (IllegalArgumentException ex) {
+            return Optional.empty();
+        }
+    }
+
+    public String spec() {
+        return spec;
+    }
+
+    public URI uri() {
+        return uri;
+    }
+
+    public String model() {
+        return model;
+    }
+
+    public int weight() {
+        return weight;
+    }
+
+    public int maxConcurrency() {
+        return maxConcurrency;
+    }
+
+    LlmBackend.Kind backendKind() {
+        return backendKind;
+    }
+
+    LlmBackend backend() {
+        return backend;
+    }
+
+    /**
+     * Records how long a successful reply took; feeds {@link #requestTimeout()}.
+     */
+    public void recordLatency(long latencyNanos) {
+        latencies.record(latencyNanos);
+    }
+
+    /**
+     * Median latency of recent replies in milliseconds, or 0 before the first one.
+     */
+    public long typicalLatencyMs() {
+        return latencies.percentileMs(50.0D);
+    }
+
+    /**
+     * The timeout for the next request: the observed p99 reply latency times {@code Config.llmTimeoutP99Multiplier},
+     * clamped to {@code Config.llmMinRequestTimeoutMs}..{@code Config.llmMaxRequestTimeoutMs}. Until
+     * {@code Config.llmTimeoutMinSamples} replies have been seen the maximum applies, so a cold model is not cut off.
+     */
+    public Duration requestTimeout() {
+        long max = Math.max(Config.llmMinRequestTimeoutMs, Config.llmMaxRequestTimeoutMs);
+        if (latencies.size() < Config.llmTimeoutMinSamples) {
+            return Duration.ofMillis(max);
+        }
+        long adaptive = Math.round(latencies.percentileMs(99.0D) * Config.llmTimeoutP99Multiplier);
+        return Duration.ofMillis(Math.max(Config.llmMinRequestTimeoutMs, Math.min(max, adaptive)));
+    }
+
+    boolean isEjected(long now) {
+        return ejectedUntil != 0L && now - ejectedUntil < 0;
+    }
+
+    boolean hasFreeSlot() {
+        return outstanding < maxConcurrency;
+    }
+
+    /**
+     * Outstanding requests per unit of weight once one more request is added; lower is less loaded.
+     */
+    double loadAfterAcquire() {
+        return (outstanding + 1.0D) / weight;
+    }
+
+    EndpointStats snapshot(long now) {
+        long ejectedForMs = isEjected(now) ? TimeUnit.NANOSECONDS.toMillis(ejectedUntil - now) : 0L;
+        return new EndpointStats(uri.toString(), model, backendKind.id(), backend.describeState(), weight, outstanding, maxConcurrency,
+                requests, failures, ejections, ejectedForMs, latencies.percentileMs(50.0D), latencies.percentileMs(99.0D),
+                requestTimeout().toMillis(), probes, probeFailures);
+    }
+
+    /**
+     * @param backendState backend-specific details, or an empty string
+     */
+    public record EndpointStats(String url, String model, String backend, String backendState, int weight, int outstanding,
+                                int maxConcurrency, long requests, long failures, long ejections, long ejectedForMs, long p50Ms,
+                                long p99Ms, long timeoutMs, long probes, long probeFailures) {
+    }
+}
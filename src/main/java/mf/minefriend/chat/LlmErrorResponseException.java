@@ -0,0 +1,11 @@
+package mf.minefriend.chat;
+
+/**
+ * Signals that the LLM backend answered, but with an {@code error} object instead of a reply. The call counts as
+ * failed; callers are expected to fall back to a local reply rather than show the error text.
+ */
+public class LlmErrorResponseException extends RuntimeException {
+    public LlmErrorResponseException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,111 @@
+package mf.minefriend.chat;
+
+import com.mojang.logging.LogUtils;
+import mf.minefriend.Config;
+import mf.minefriend.Minefriend;
+import net.minecraftforge.event.server.ServerStartingEvent;
+import net.minecraftforge.event.server.ServerStoppingEvent;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
+import net.minecraftforge.fml.common.Mod;
+import org.slf4j.Logger;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Background health checks for the {@link LlmBackendPool}, the in-game successor of {@link ConnectionTester}.
+ * When the server starts every endpoint gets a warm-up request so the model is loaded before the first player
+ * joins; afterwards each endpoint is probed every {@code Config.llmProbeIntervalSeconds}. Probe outcomes eject dead
+ * endpoints and bring recovered ones back early. Probe latencies are only logged: a one-token completion says
+ * little about how long a real reply takes, so only real replies feed {@link LlmEndpoint#requestTimeout()}.
+ */
+@Mod.EventBusSubscriber(modid = Minefriend.MODID, bus = Mod.EventBusSubscriber.Bus.FORGE)
+public final class LlmHealthProber {
+    private static final Logger LOGGER = LogUtils.getLogger();
+
+    private static final Object LOCK = new Object();
+    private static final Set<LlmEndpoint> PROBING = Collections.newSetFromMap(new IdentityHashMap<>());
+    private static ScheduledExecutorService executor;
+
+    private LlmHealthProber() {
+    }
+
+    @SubscribeEvent
+    public static void onServerStarting(ServerStartingEvent event) {
+        synchronized (LOCK) {
+            if (executor != null) {
+                return;
+            }
+            executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "MineFriend-LLM-Prober");
+                thread.setDaemon(true);
+                return thread;
+            });
+            if (Config.llmWarmupOnStart) {
+                executor.execute(LlmHealthProber::warmUp);
+            }
+            if (Config.llmProbeIntervalSeconds > 0) {
+                executor.scheduleWithFixedDelay(LlmHealthProber::probeAll, Config.llmProbeIntervalSeconds,
+                        Config.llmProbeIntervalSeconds, TimeUnit.SECONDS);
+            }
+        }
+    }
+
+    @SubscribeEvent
+    public static void onServerStopping(ServerStoppingEvent event) {
+        synchronized (LOCK) {
+            if (executor != null) {
+                executor.shutdownNow();
+                executor = null;
+            }
+            PROBING.clear();
+        }
+    }
+
+    private static void warmUp() {
+        for (LlmEndpoint endpoint : LlmBackendPool.endpoints()) {
+            // A cold model can take a long time to load, so the warm-up always gets the full timeout.
+            Duration timeout = Duration.ofMillis(Math.max(Config.llmMinRequestTimeoutMs, Config.llmMaxRequestTimeoutMs));
+            LOGGER.info("[MineFriend-Prober] Warming up LLM endpoint {} ({}).", endpoint.uri(), endpoint.model());
+            send(endpoint, timeout, true);
+        }
+    }
+
+    private static void probeAll() {
+        for (LlmEndpoint endpoint : LlmBackendPool.endpoints()) {
+            send(endpoint, endpoint.requestTimeout(), false);
+        }
+    }
+
+    private static void send(LlmEndpoint endpoint, Duration timeout, boolean warmUp) {
+        synchronized (LOCK) {
+            if (!PROBING.add(endpoint)) {
+                return;
+            }
+        }
+        LlmService.probe(endpoint, timeout).whenComplete((latencyNanos, throwable) -> {
+            synchronized (LOCK) {
+                PROBING.remove(endpoint);
+            }
+            if (throwable != null) {
+                LOGGER.warn("[MineFriend-Prober] {} of LLM endpoint {} failed: {}", warmUp ? "Warm-up" : "Health probe",
+                        endpoint.uri(), throwable.getCause() != null ? throwable.getCause() : throwable);
+                LlmBackendPool.recordProbe(endpoint, false);
+                return;
+            }
+            if (warmUp) {
+                LOGGER.info("[MineFriend-Prober] LLM endpoint {} warmed up in {} ms.", endpoint.uri(),
+                        TimeUnit.NANOSECONDS.toMillis(latencyNanos));
+            } else {
+                LOGGER.debug("[MineFriend-Prober] LLM endpoint {} answered its health probe in {} ms.", endpoint.uri(),
+                        TimeUnit.NANOSECONDS.toMillis(latencyNanos));
+            }
+            LlmBackendPool.recordProbe(endpoint, true);
+        });
+    }
+}
@@ -0,0 +1,38 @@
+package mf.minefriend.chat;
+
+import mf.minefriend.Config;
+
+/**
+ * How urgently a piece of LLM work is needed, in dispatch order. Each class has a deadline after which a reply
+ * is no longer worth delivering; the scheduler drops queued work that can no longer make it.
+ */
+public enum LlmPriority {
+    /**
+     * A reply to something the player just said; they are waiting for it.
+     */
+    DIRECT_REPLY,
+    /**
+     * The friend introducing itself when it appears.
+     */
+    GREETING,
+    /**
+     * Unprompted idle chatter; the first thing shed under load.
+     */
+    AMBIENT,
+    /**
+     * Housekeeping no player is waiting on, such as folding old turns into a conversation summary. Only runs
+     * while nothing else is being generated.
+     */
+    BACKGROUND;
+
+    private static final long BACKGROUND_DEADLINE_MS = 120_000L;
+
+    public long deadlineMs() {
+        return switch (this) {
+            case DIRECT_REPLY -> Config.llmReplyDeadlineMs;
+            case GREETING -> Config.llmGreetingDeadlineMs;
+            case AMBIENT -> Config.llmAmbientDeadlineMs;
+            case BACKGROUND -> BACKGROUND_DEADLINE_MS;
+        };
+    }
+}
@@ -0,0 +1,674 @@
+package mf.minefriend.chat;
+
+import com.mojang.logging.LogUtils;
+import mf.minefriend.Config;
+import mf.minefriend.chat.LlmService.LlmReply;
+import mf.minefriend.friend.state.FriendPhase;
+import org.slf4j.Logger;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Sits in front of {@link LlmService#requestFriendReply} and keeps the backend from being flooded.
+ * At most {@code Config.llmMaxConcurrentRequests} generations run at once, every player has at most one
+ * request in flight, and messages a player sends while waiting are merged into a single follow-up request.
+ * A new message also supersedes a reply that is still being generated: the old request is cancelled, which
+ * aborts its HTTP exchange, and its text is folded into the new one so only the newest reply is delivered.
+ * Player messages with a live {@link ReplyCache} entry are answered immediately without queueing.
+ * <p>
+ * Work is dispatched by {@link LlmPriority}: direct replies before greetings before ambient lines, first come
+ * first served within a class. Every request carries the deadline of its class, and queued work that can no
+ * longer be answered before its deadline (given the pool's typical latency) is dropped rather than sent.
+ * When the queue is full, new work sheds the newest request of a lower class, and ambient lines never take the
+ * last free generation slot, so bursts of chatter cannot delay the replies players are waiting for.
+ * {@link LlmPriority#BACKGROUND} work only runs while nothing else is being generated and is cancelled and
+ * requeued as soon as player-facing work arrives.
+ * <p>
+ * Every answered exchange is recorded in {@link ConversationMemory}, and the player's remembered history is sent
+ * along with each request. Replies are capped by {@link ReplyLimits}, more tightly the more work is queued.
+ */
+public final class LlmRequestScheduler {
+    private static final Logger LOGGER = LogUtils.getLogger();
+
+    private static final Object LOCK = new Object();
+    private static final Map<LlmPriority, Deque<PendingRequest>> QUEUES = new EnumMap<>(LlmPriority.class);
+    private static final Map<UUID, PendingRequest> COALESCABLE = new HashMap<>();
+    private static final Map<UUID, PendingRequest> IN_FLIGHT = new HashMap<>();
+
+    private static long submitted;
+    private static long coalesced;
+    private static long rejected;
+    private static long shed;
+    private static long expired;
+    private static long cancelled;
+    private static long cancelledInFlight;
+    private static long preempted;
+    private static long dispatched;
+    private static long totalWaitNanos;
+    private static long maxWaitNanos;
+
+    static {
+        for (LlmPriority priority : LlmPriority.values()) {
+            QUEUES.put(priority, new ArrayDeque<>());
+        }
+    }
+
+    private LlmRequestScheduler() {
+    }
+
+    /**
+     * Queues a player chat message. If the player already has a message waiting, the two are merged and the
+     * earlier caller receives an empty reply, so only one answer is ever broadcast for the merged turn.
+     * The optional listener receives the first streamed sentence of the reply.
+     */
+    public static CompletableFuture<LlmReply> submit(UUID playerId, String message, String playerName, String personaName, FriendPhase phase,
+                                                     Consumer<String> firstSentenceListener) {
+        return enqueue(playerId, message, playerName, personaName, phase, firstSentenceListener, true, LlmPriority.DIRECT_REPLY);
+    }
+
+    /**
+     * Queues a request that must be answered on its own, such as the initial greeting. The prompt is the same text
+     * for every player, so the reply is never taken from or put in the {@link ReplyCache}: it should differ each time.
+     */
+    public static CompletableFuture<LlmReply> submitStandalone(UUID playerId, String prompt, String playerName, String personaName, FriendPhase phase,
+                                                               LlmPriority priority) {
+        return enqueue(playerId, prompt, playerName, personaName, phase, null, false, priority);
+    }
+
+    /**
+     * Queues background work for the given player, such as summarizing their conversation. The task receives the
+     * endpoint it was assigned and is neither cached nor recorded in the conversation.
+     */
+    public static CompletableFuture<LlmReply> submitBackground(UUID playerId, String playerName, String personaName,
+                                                               Function<LlmEndpoint, CompletableFuture<LlmReply>> task) {
+        return submitTask(playerId, playerName, personaName, LlmPriority.BACKGROUND, task);
+    }
+
+    /**
+     * Queues work of the given class that builds its own request, such as pre-generating an ambient line. Like
+     * {@link #submitBackground}, the task receives its endpoint and its reply is neither cached nor recorded in the
+     * conversation, but it is dispatched, shed and dropped at its deadline like any other work of its class.
+     */
+    public static CompletableFuture<LlmReply> submitTask(UUID playerId, String playerName, String personaName, LlmPriority priority,
+                                                         Function<LlmEndpoint, CompletableFuture<LlmReply>> task) {
+        if (!LlmCircuitBreaker.isCallPermitted()) {
+            return CompletableFuture.failedFuture(new LlmUnavailableException("LLM circuit breaker is open"));
+        }
+        CompletableFuture<LlmReply> result = new CompletableFuture<>();
+        PendingRequest evicted = null;
+        PendingRequest preempted = null;
+        synchronized (LOCK) {
+            submitted++;
+            if (queuedCount() >= Config.llmMaxQueuedRequests && !canShedBelow(priority)) {
+                rejected++;
+                result.completeExceptionally(new RejectedExecutionException("LLM request queue is full (" + queuedCount() + " waiting)"));
+                return result;
+            }
+            if (queuedCount() >= Config.llmMaxQueuedRequests) {
+                evicted = shedBelow(priority);
+            }
+            if (priority != LlmPriority.BACKGROUND) {
+                preempted = preemptBackground();
+            }
+            long now = System.nanoTime();
+            PendingRequest request = new PendingRequest(playerId, "", playerName, personaName, null, result, now);
+            request.task = task;
+            request.priority = priority;
+            request.deadline = now + TimeUnit.MILLISECONDS.toNanos(priority.deadlineMs());
+            QUEUES.get(priority).addLast(request);
+        }
+        if (preempted != null) {
+            LOGGER.debug("[MineFriend-Scheduler] Background work for '{}' yields to a {} request.", preempted.playerName, priority);
+            abort(preempted, false);
+        }
+        if (evicted != null) {
+            LOGGER.debug("[MineFriend-Scheduler] Queue full; shed a {} request for '{}'.", evicted.priority, evicted.playerName);
+            evicted.result.completeExceptionally(new RejectedExecutionException("Shed to make room for more urgent LLM work"));
+        }
+        result.whenComplete((reply, throwable) -> {
+            if (throwable != null) {
+                abandon(result, throwable);
+            }
+        });
+        drain();
+        return result;
+    }
+
+    public static SchedulerStats stats() {
+        synchronized (LOCK) {
+            double averageWaitMs = dispatched == 0 ? 0.0D : TimeUnit.NANOSECONDS.toMicros(totalWaitNanos / dispatched) / 1000.0D;
+            double maxWaitMs = TimeUnit.NANOSECONDS.toMicros(maxWaitNanos) / 1000.0D;
+            return new SchedulerStats(queuedCount(), IN_FLIGHT.size(), submitted, coalesced, rejected, shed, expired, cancelled,
+                    cancelledInFlight, preempted, dispatched, averageWaitMs, maxWaitMs);
+        }
+    }
+
+    /**
+     * Drops everything the player has queued or in flight, for example when they log out. Callers waiting on
+     * those requests receive an empty reply.
+     */
+    public static void cancel(UUID playerId, String reason) {
+        List<PendingRequest> dropped = new ArrayList<>();
+        synchronized (LOCK) {
+            for (Deque<PendingRequest> queue : QUEUES.values()) {
+                Iterator<PendingRequest> iterator = queue.iterator();
+                while (iterator.hasNext()) {
+                    PendingRequest request = iterator.next();
+                    if (request.playerId.equals(playerId)) {
+                        iterator.remove();
+                        markCancelled(request, false);
+                        dropped.add(request);
+                    }
+                }
+            }
+            COALESCABLE.remove(playerId);
+            PendingRequest running = IN_FLIGHT.remove(playerId);
+            if (running != null) {
+                markCancelled(running, true);
+                dropped.add(running);
+            }
+        }
+        if (dropped.isEmpty()) {
+            return;
+        }
+        LOGGER.debug("[MineFriend-Scheduler] Cancelled {} LLM request(s) for {} ({}).", dropped.size(), playerId, reason);
+        dropped.forEach(request -> abort(request, true));
+        drain();
+    }
+
+    /**
+     * Moves the player's requests to a new friend phase. Queued requests simply use the new phase; a reply that
+     * is already being generated for the old phase is cancelled and asked again, unless part of it was already
+     * posted to chat, in which case it is dropped.
+     */
+    public static void phaseChanged(UUID playerId, FriendPhase phase) {
+        PendingRequest stale = null;
+        boolean retry = false;
+        synchronized (LOCK) {
+            for (Deque<PendingRequest> queue : QUEUES.values()) {
+                for (PendingRequest request : queue) {
+                    if (request.playerId.equals(playerId) && request.task == null) {
+                        request.phase = phase;
+                    }
+                }
+            }
+            PendingRequest running = IN_FLIGHT.get(playerId);
+            if (running != null && running.task == null && running.phase != phase) {
+                IN_FLIGHT.remove(playerId);
+                markCancelled(running, true);
+                stale = running;
+                retry = !running.firstSentenceSent;
+                if (retry) {
+                    PendingRequest again = running.copyFor(phase);
+                    QUEUES.get(again.priority).addFirst(again);
+                    if (running.supersedable && !COALESCABLE.containsKey(playerId)) {
+                        COALESCABLE.put(playerId, again);
+                    }
+                }
+            }
+        }
+        if (stale == null) {
+            return;
+        }
+        LOGGER.debug("[MineFriend-Scheduler] Phase of {} changed to {} mid-generation; {} the reply.", playerId, phase,
+                retry ? "regenerating" : "dropping");
+        abort(stale, !retry);
+        drain();
+    }
+
+    private static CompletableFuture<LlmReply> enqueue(UUID playerId, String message, String playerName, String personaName, FriendPhase phase,
+                                                       Consumer<String> firstSentenceListener, boolean coalesce, LlmPriority priority) {
+        Optional<LlmReply> cached = coalesce ? ReplyCache.lookup(playerId, personaName, phase, message) : Optional.empty();
+        if (cached.isPresent()) {
+            LOGGER.debug("[MineFriend-Scheduler] Answered '{}' from the reply cache.", playerName);
+            ConversationMemory.record(playerId, personaName, playerName, priority == LlmPriority.DIRECT_REPLY ? message : null,
+                    cached.get().message());
+            return CompletableFuture.completedFuture(cached.get());
+        }
+        if (!LlmCircuitBreaker.isCallPermitted()) {
+            return CompletableFuture.failedFuture(new LlmUnavailableException("LLM circuit breaker is open"));
+        }
+        CompletableFuture<LlmReply> result = new CompletableFuture<>();
+        CompletableFuture<LlmReply> superseded = null;
+        PendingRequest interrupted = null;
+        PendingRequest evicted = null;
+        PendingRequest preempted = null;
+        synchronized (LOCK) {
+            submitted++;
+            PendingRequest waiting = coalesce ? COALESCABLE.get(playerId) : null;
+            if (waiting != null) {
+                coalesced++;
+                superseded = waiting.result;
+                waiting.message = merge(waiting.message, message);
+                waiting.personaName = personaName;
+                waiting.phase = phase;
+                waiting.result = result;
+                waiting.firstSentenceListener = firstSentenceListener;
+                // The player now waits for an answer to their latest message.
+                waiting.deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(priority.deadlineMs());
+                LOGGER.debug("[MineFriend-Scheduler] Coalesced message from '{}' into pending request.", playerName);
+            } else if (queuedCount() >= Config.llmMaxQueuedRequests && !canShedBelow(priority)) {
+                rejected++;
+                result.completeExceptionally(new RejectedExecutionException("LLM request queue is full (" + queuedCount() + " waiting)"));
+                return result;
+            } else {
+                if (queuedCount() >= Config.llmMaxQueuedRequests) {
+                    evicted = shedBelow(priority);
+                }
+                preempted = preemptBackground();
+                PendingRequest running = IN_FLIGHT.get(playerId);
+                boolean sameConversation = running != null && coalesce && running.supersedable;
+                if (running != null && (sameConversation || running.priority.compareTo(priority) > 0)) {
+                    IN_FLIGHT.remove(playerId);
+                    markCancelled(running, true);
+                    interrupted = running;
+                    // Nothing of the old reply reached the player yet, so the new request answers both messages.
+                    if (sameConversation && !running.firstSentenceSent) {
+                        message = merge(running.message, message);
+                    }
+                    LOGGER.debug("[MineFriend-Scheduler] New {} request for '{}' supersedes the reply being generated.", priority, playerName);
+                }
+                long now = System.nanoTime();
+                PendingRequest request = new PendingRequest(playerId, message, playerName, personaName, phase, result, now);
+                request.firstSentenceListener = firstSentenceListener;
+                request.supersedable = coalesce;
+                request.priority = priority;
+                request.deadline = now + TimeUnit.MILLISECONDS.toNanos(priority.deadlineMs());
+                QUEUES.get(priority).addLast(request);
+                if (coalesce) {
+                    COALESCABLE.put(playerId, request);
+                }
+            }
+        }
+        if (superseded != null) {
+            superseded.complete(LlmReply.empty(personaName));
+        }
+        if (preempted != null) {
+            LOGGER.debug("[MineFriend-Scheduler] Background work for '{}' yields to a {} request.", preempted.playerName, priority);
+            abort(preempted, false);
+        }
+        if (interrupted != null) {
+            abort(interrupted, true);
+        }
+        if (evicted != null) {
+            LOGGER.debug("[MineFriend-Scheduler] Queue full; shed a {} request for '{}'.", evicted.priority, evicted.playerName);
+            evicted.result.completeExceptionally(new RejectedExecutionException("Shed to make room for more urgent LLM work"));
+        }
+        // A caller that stops waiting (its deadline passed) no longer needs the request.
+        result.whenComplete((reply, throwable) -> {
+            if (throwable != null) {
+                abandon(result, throwable);
+            }
+        });
+        drain();
+        return result;
+    }
+
+    /**
+     * Cancels a running background request and puts it back at the head of its queue. Call with the lock held.
+     * The work is postponed rather than dropped, so it is counted as preempted, not cancelled.
+     */
+    private static PendingRequest preemptBackground() {
+        for (PendingRequest running : IN_FLIGHT.values()) {
+            if (running.priority == LlmPriority.BACKGROUND) {
+                IN_FLIGHT.remove(running.playerId);
+                running.cancelled = true;
+                preempted++;
+                QUEUES.get(LlmPriority.BACKGROUND).addFirst(running.copyFor(running.phase));
+                return running;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Drops the request behind a result its caller stopped waiting for. A request that was still being generated
+     * when its deadline passed is remembered as having missed it, so the circuit breaker counts it as a bad call.
+     */
+    private static void abandon(CompletableFuture<LlmReply> result, Throwable throwable) {
+        Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null ? throwable.getCause() : throwable;
+        PendingRequest dropped = null;
+        synchronized (LOCK) {
+            for (Deque<PendingRequest> queue : QUEUES.values()) {
+                Iterator<PendingRequest> iterator = queue.iterator();
+                while (dropped == null && iterator.hasNext()) {
+                    PendingRequest request = iterator.next();
+                    if (request.result == result) {
+                        iterator.remove();
+                        COALESCABLE.remove(request.playerId, request);
+                        markCancelled(request, false);
+                        dropped = request;
+                    }
+                }
+            }
+            if (dropped == null) {
+                for (PendingRequest request : IN_FLIGHT.values()) {
+                    if (request.result == result) {
+                        IN_FLIGHT.remove(request.playerId);
+                        markCancelled(request, true);
+                        request.missedDeadline = cause instanceof TimeoutException;
+                        dropped = request;
+                        break;
+                    }
+                }
+            }
+        }
+        if (dropped != null) {
+            abort(dropped, false);
+            drain();
+        }
+    }
+
+    private static void markCancelled(PendingRequest request, boolean inFlight) {
+        request.cancelled = true;
+        cancelled++;
+        if (inFlight) {
+            cancelledInFlight++;
+        }
+    }
+
+    /**
+     * Aborts a request already marked cancelled: stops its backend call and, if asked, hands its caller an
+     * empty reply. Must be called without holding the lock.
+     */
+    private static void abort(PendingRequest request, boolean completeCaller) {
+        CompletableFuture<LlmReply> call;
+        synchronized (LOCK) {
+            call = request.call;
+        }
+        if (call != null) {
+            call.cancel(true);
+        }
+        if (completeCaller) {
+            request.result.complete(LlmReply.empty(request.personaName));
+        }
+    }
+
+    private static void drain() {
+        List<PendingRequest> ready = new ArrayList<>();
+        List<PendingRequest> late = new ArrayList<>();
+        synchronized (LOCK) {
+            long now = System.nanoTime();
+            long expectedLatency = TimeUnit.MILLISECONDS.toNanos(LlmBackendPool.expectedLatencyMs());
+            dispatch:
+            for (Map.Entry<LlmPriority, Deque<PendingRequest>> entry : QUEUES.entrySet()) {
+                // Ambient lines leave the last generation slot free for replies a player is waiting on, and
+                // background work only runs on an otherwise idle backend.
+                int slots = switch (entry.getKey()) {
+                    case AMBIENT -> Config.llmMaxConcurrentRequests > 1 ? Config.llmMaxConcurrentRequests - 1 : Config.llmMaxConcurrentRequests;
+                    case BACKGROUND -> 1;
+                    default -> Config.llmMaxConcurrentRequests;
+                };
+                Iterator<PendingRequest> iterator = entry.getValue().iterator();
+                while (iterator.hasNext()) {
+                    PendingRequest next = iterator.next();
+                    if (missesDeadline(now, expectedLatency, next.deadline)) {
+                        iterator.remove();
+                        COALESCABLE.remove(next.playerId, next);
+                        expired++;
+                        late.add(next);
+                        continue;
+                    }
+                    if (IN_FLIGHT.size() >= slots) {
+                        continue;
+                    }
+                    if (IN_FLIGHT.containsKey(next.playerId)) {
+                        continue;
+                    }
+                    // Every healthy endpoint busy: wait for a completion. Every endpoint ejected: dispatch and fail fast.
+                    Optional<LlmBackendPool.Lease> lease = LlmBackendPool.acquire(next.playerId);
+                    if (lease.isEmpty() && !LlmBackendPool.canDispatch()) {
+                        break dispatch;
+                    }
+                    next.lease = lease.orElse(null);
+                    iterator.remove();
+                    COALESCABLE.remove(next.playerId, next);
+                    IN_FLIGHT.put(next.playerId, next);
+                    long waited = now - next.enqueuedAt;
+                    dispatched++;
+                    totalWaitNanos += waited;
+                    maxWaitNanos = Math.max(maxWaitNanos, waited);
+                    ready.add(next);
+                }
+            }
+        }
+        for (PendingRequest request : late) {
+            LOGGER.debug("[MineFriend-Scheduler] Dropped a {} request for '{}' that could no longer meet its deadline.",
+                    request.priority, request.playerName);
+            request.result.completeExceptionally(new TimeoutException("LLM request could not be answered before its "
+                    + request.priority.deadlineMs() + " ms deadline"));
+        }
+        ready.forEach(LlmRequestScheduler::start);
+    }
+
+    private static int queuedCount() {
+        int count = 0;
+        for (Deque<PendingRequest> queue : QUEUES.values()) {
+            count += queue.size();
+        }
+        return count;
+    }
+
+    private static boolean canShedBelow(LlmPriority priority) {
+        LlmPriority[] priorities = LlmPriority.values();
+        for (int i = priorities.length - 1; i > priority.ordinal(); i--) {
+            if (!QUEUES.get(priorities[i]).isEmpty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Removes the newest queued request of the least urgent class below {@code priority}, or returns null.
+     */
+    private static PendingRequest shedBelow(LlmPriority priority) {
+        LlmPriority[] priorities = LlmPriority.values();
+        for (int i = priorities.length - 1; i > priority.ordinal(); i--) {
+            PendingRequest victim = QUEUES.get(priorities[i]).pollLast();
+            if (victim != null) {
+                COALESCABLE.remove(victim.playerId, victim);
+                shed++;
+                return victim;
+            }
+        }
+        return null;
+    }
+
+    private static void start(PendingRequest request) {
+        LOGGER.debug("[MineFriend-Scheduler] Dispatching request for '{}' after {} ms in queue.",
+                request.playerName, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - request.enqueuedAt));
+        LlmBackendPool.Lease lease = request.lease;
+        boolean cancelledInQueue;
+        int queued;
+        synchronized (LOCK) {
+            cancelledInQueue = request.cancelled;
+            queued = queuedCount();
+        }
+        if (cancelledInQueue) {
+            // Superseded between dispatch and start; nothing was sent yet.
+            if (lease != null) {
+                lease.abandon();
+            }
+            drain();
+            return;
+        }
+        Optional<LlmCircuitBreaker.Permit> permit = lease != null ? LlmCircuitBreaker.tryAcquire() : Optional.empty();
+        long startedAt = System.nanoTime();
+        CompletableFuture<LlmReply> call;
+        if (lease == null) {
+            call = CompletableFuture.failedFuture(new LlmUnavailableException("No LLM endpoint is available"));
+        } else if (permit.isEmpty()) {
+            lease.abandon();
+            call = CompletableFuture.failedFuture(new LlmUnavailableException("LLM circuit breaker is open"));
+        } else {
+            try {
+                if (request.task != null) {
+                    call = request.task.apply(lease.endpoint());
+                } else {
+                    Consumer<String> listener = request.firstSentenceListener == null ? null : sentence -> deliverFirstSentence(request, sentence);
+                    ConversationMemory.Window history = ConversationMemory.window(request.playerId);
+                    int maxTokens = ReplyLimits.maxTokens(request.phase, queued);
+                    Supplier<CompletableFuture<LlmReply>> send = () -> LlmService.requestFriendReply(request.playerId, request.message,
+                            request.playerName, request.personaName, request.phase, history, maxTokens, lease.endpoint(), listener);
+                    // Holding requests back for a shared batch only pays off where the server batches them.
+                    call = lease.endpoint().backend().capabilities().batching() ? LlmBatcher.submit(send) : send.get();
+                }
+            } catch (RuntimeException ex) {
+                call = CompletableFuture.failedFuture(ex);
+            }
+        }
+        boolean cancelledBeforeStart;
+        synchronized (LOCK) {
+            request.call = call;
+            cancelledBeforeStart = request.cancelled;
+        }
+        call.whenComplete((reply, throwable) -> {
+            boolean wasCancelled;
+            boolean missedDeadline;
+            synchronized (LOCK) {
+                IN_FLIGHT.remove(request.playerId, request);
+                wasCancelled = request.cancelled;
+                missedDeadline = request.missedDeadline;
+            }
+            if (wasCancelled) {
+                // Whoever cancelled the request has already answered its caller. A reply too slow for its deadline
+                // is a bad call for the breaker; one superseded, dropped at logout or preempted says nothing.
+                if (permit.isPresent()) {
+                    lease.cancel();
+                    if (missedDeadline) {
+                        permit.get().recordFailure();
+                    } else {
+                        permit.get().release();
+                    }
+                }
+            } else if (throwable != null) {
+                if (permit.isPresent()) {
+                    lease.release(false);
+                    permit.get().recordFailure();
+                }
+                request.result.completeExceptionally(throwable);
+            } else {
+                lease.release(true);
+                permit.get().recordSuccess(System.nanoTime() - startedAt);
+                if (request.task == null) {
+                    // Only answers to a player's message are shared; a standalone prompt is the same for everyone.
+                    if (request.supersedable) {
+                        ReplyCache.store(request.playerId, request.personaName, request.phase, request.message, request.playerName, reply);
+                    }
+                    ConversationMemory.record(request.playerId, request.personaName, request.playerName,
+                            request.priority == LlmPriority.DIRECT_REPLY ? request.message : null, reply.message());
+                }
+                request.result.complete(reply);
+            }
+            drain();
+        });
+        if (cancelledBeforeStart) {
+            call.cancel(true);
+        }
+    }
+
+    private static void deliverFirstSentence(PendingRequest request, String sentence) {
+        Consumer<String> listener;
+        synchronized (LOCK) {
+            if (request.cancelled) {
+                return;
+            }
+            request.firstSentenceSent = true;
+            listener = request.firstSentenceListener;
+        }
+        listener.accept(sentence);
+    }
+
+    /**
+     * Whether a request dispatched at {@code now} would, at the pool's typical latency, be answered after its
+     * deadline. Compares {@link System#nanoTime} values by their difference, so it holds across the clock wrapping.
+     */
+    static boolean missesDeadline(long now, long expectedLatencyNanos, long deadline) {
+        return now + expectedLatencyNanos - deadline > 0;
+    }
+
+    /**
+     * Joins two chat lines into one message, ending the first with a full stop if it has no punctuation.
+     */
+    static String merge(String earlier, String later) {
+        String head = earlier.trim();
+        if (head.isEmpty()) {
+            return later;
+        }
+        char last = head.charAt(head.length() - 1);
+        if (last != '.' && last != '!' && last != '?') {
+            head = head + ".";
+        }
+        return head + " " + later.trim();
+    }
+
+    private static final class PendingRequest {
+        private final UUID playerId;
+        private final String playerName;
+        private final long enqueuedAt;
+        private String message;
+        private String personaName;
+        private FriendPhase phase;
+        private CompletableFuture<LlmReply> result;
+        private Consumer<String> firstSentenceListener;
+        private Function<LlmEndpoint, CompletableFuture<LlmReply>> task;
+        private LlmBackendPool.Lease lease;
+        private CompletableFuture<LlmReply> call;
+        private boolean supersedable;
+        private boolean firstSentenceSent;
+        private boolean cancelled;
+        private boolean missedDeadline;
+        private LlmPriority priority = LlmPriority.DIRECT_REPLY;
+        private long deadline;
+
+        private PendingRequest(UUID playerId, String message, String playerName, String personaName, FriendPhase phase,
+                               CompletableFuture<LlmReply> result, long enqueuedAt) {
+            this.playerId = playerId;
+            this.message = message;
+            this.playerName = playerName;
+            this.personaName = personaName;
+            this.phase = phase;
+            this.result = result;
+            this.enqueuedAt = enqueuedAt;
+        }
+
+        private PendingRequest copyFor(FriendPhase newPhase) {
+            PendingRequest copy = new PendingRequest(playerId, message, playerName, personaName, newPhase, result, enqueuedAt);
+            copy.firstSentenceListener = firstSentenceListener;
+            copy.task = task;
+            copy.supersedable = supersedable;
+            copy.priority = priority;
+            copy.deadline = deadline;
+            return copy;
+        }
+    }
+
+    /**
+     * @param shed              queued requests evicted to make room for more urgent work
+     * @param expired           queued requests dropped because they could no longer meet their deadline
+     * @param cancelled         requests dropped before they were answered, by a newer message, logout, phase change or deadline
+     * @param cancelledInFlight the subset that was cancelled while the backend was generating, i.e. compute saved
+     * @param preempted         background generations interrupted for player-facing work and queued again
+     */
+    public record SchedulerStats(int queued, int inFlight, long submitted, long coalesced, long rejected, long shed, long expired, long cancelled,
+                                 long cancelledInFlight, long preempted, long dispatched, double averageWaitMs, double maxWaitMs) {
+    }
+}
@@ -0,0 +1,262 @@
+package mf.minefriend.chat;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Single-pass parsing of chat completion responses. A streaming {@link JsonReader} walks the body and stops as soon
+ * as {@code choices[0].message.content} (or llama.cpp's top-level {@code content}) has been read, without building a
+ * JSON tree; the content is then scanned once to collapse whitespace and cut out the {@code [[PHASE:x]]} directive.
+ * Bodies that are not JSON, or JSON without a usable field, are treated as plain text the same way; a body with a
+ * top-level {@code error} is a failed call and throws {@link LlmErrorResponseException}. A directive that ends the
+ * text without its closing brackets still counts, since replies are generated with {@code ]]} as a stop sequence and
+ * servers leave it out.
+ */
+final class LlmResponseParser {
+    private static final String DIRECTIVE_OPEN = "[[";
+    private static final String DIRECTIVE_NAME = "PHASE:";
+    private static final String DIRECTIVE_CLOSE = "]]";
+
+    private LlmResponseParser() {
+    }
+
+    /**
+     * @param message   the reply text with directives removed and whitespace collapsed
+     * @param explicit  whether the text contained a phase directive
+     * @param phaseId   the id from the first directive, or -1 when there was none or it did not fit an int
+     */
+    record ParsedReply(String message, boolean explicit, int phaseId) {
+    }
+
+    /**
+     * @throws LlmErrorResponseException when the body is an error instead of a reply
+     */
+    static ParsedReply parseBody(byte[] body) {
+        // Decoding the whole body at once is cheaper than an InputStreamReader, whose decoder buffer alone is
+        // larger than a typical reply; the text is also needed for the plain-text fallback.
+        return parseBody(new String(body, StandardCharsets.UTF_8));
+    }
+
+    static ParsedReply parseBody(String body) {
+        String content = readContent(new StringReader(body), "message");
+        return scan(content != null ? content : body);
+    }
+
+    /**
+     * The {@code choices[0].delta.content} of one server-sent event, or an empty string when the event has none.
+     *
+     * @throws LlmErrorResponseException when the event is an error instead of a chunk of the reply
+     */
+    static String extractDelta(String data) {
+        String content = readContent(new StringReader(data), "delta");
+        return content != null ? content : "";
+    }
+
+    /**
+     * Collapses whitespace runs to single spaces and trims, leaving phase directives in place.
+     */
+    static String normalize(CharSequence text) {
+        return scan(text, false).message();
+    }
+
+    static ParsedReply scan(CharSequence text) {
+        return scan(text, true);
+    }
+
+    private static ParsedReply scan(CharSequence text, boolean stripDirectives) {
+        int length = text.length();
+        StringBuilder out = new StringBuilder(length);
+        boolean pendingSpace = false;
+        boolean explicit = false;
+        int phaseId = -1;
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (c == '[' && stripDirectives) {
+                int end = directiveEnd(text, i);
+                if (end > 0) {
+                    if (!explicit) {
+                        explicit = true;
+                        phaseId = parseId(text, i + DIRECTIVE_OPEN.length() + DIRECTIVE_NAME.length(), end);
+                    }
+                    i = end - 1;
+                    continue;
+                }
+            }
+            if (isWhitespace(c)) {
+                pendingSpace = true;
+                continue;
+            }
+            if (pendingSpace && out.length() > 0) {
+                out.append(' ');
+            }
+            pendingSpace = false;
+            out.append(c);
+        }
+        return new ParsedReply(out.toString(), explicit, phaseId);
+    }
+
+    /**
+     * The index just past a {@code [[PHASE:<digits>]]} directive starting at {@code start}, or -1 when there is none.
+     * An unclosed {@code [[PHASE:<digits>} at the very end of the text also counts.
+     */
+    private static int directiveEnd(CharSequence text, int start) {
+        int length = text.length();
+        int i = start + DIRECTIVE_OPEN.length();
+        if (i > length || text.charAt(start + 1) != '[') {
+            return -1;
+        }
+        for (int k = 0; k < DIRECTIVE_NAME.length(); k++, i++) {
+            if (i >= length || Character.toUpperCase(text.charAt(i)) != DIRECTIVE_NAME.charAt(k)) {
+                return -1;
+            }
+        }
+        int digitsStart = i;
+        while (i < length && text.charAt(i) >= '0' && text.charAt(i) <= '9') {
+            i++;
+        }
+        if (i == digitsStart) {
+            return -1;
+        }
+        if (i == length) {
+            return length;
+        }
+        if (i + 1 >= length || text.charAt(i) != ']' || text.charAt(i + 1) != ']') {
+            return -1;
+        }
+        return i + DIRECTIVE_CLOSE.length();
+    }
+
+    private static int parseId(CharSequence text, int from, int to) {
+        long id = 0L;
+        for (int i = from; i < to && text.charAt(i) != ']'; i++) {
+            id = id * 10L + (text.charAt(i) - '0');
+            if (id > Integer.MAX_VALUE) {
+                return -1;
+            }
+        }
+        return (int) id;
+    }
+
+    /**
+     * The characters matched by the regex class {@code \s}.
+     */
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    /**
+     * Reads {@code choices[0].<container>.content}, or the top-level {@code content} that llama.cpp's native
+     * endpoint sends (falling back to a top-level {@code response} field), and returns as soon as it is found. Null
+     * when the input is not a JSON object or has none of these. A non-null top-level {@code error} throws
+     * {@link LlmErrorResponseException} with its message, since its text is not something the friend should say.
+     */
+    private static String readContent(Reader input, String container) {
+        try (JsonReader reader = new JsonReader(input)) {
+            reader.setLenient(true);
+            if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+                return null;
+            }
+            reader.beginObject();
+            String response = null;
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "error" -> {
+                        if (reader.peek() == JsonToken.NULL) {
+                            reader.nextNull();
+                            continue;
+                        }
+                        String error = readText(reader);
+                        throw new LlmErrorResponseException(error == null || error.isBlank()
+                                ? "LLM backend answered with an error"
+                                : "LLM backend answered with an error: " + error);
+                    }
+                    case "choices" -> {
+                        String content = readFirstChoice(reader, container);
+                        if (content != null) {
+                            return content;
+                        }
+                    }
+                    case "content" -> {
+                        return readText(reader);
+                    }
+                    case "response" -> response = readText(reader);
+                    default -> reader.skipValue();
+                }
+            }
+            return response;
+        } catch (IOException | IllegalStateException | NumberFormatException ex) {
+            return null;
+        }
+    }
+
+    private static String readFirstChoice(JsonReader reader, String container) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_ARRAY) {
+            reader.skipValue();
+            return null;
+        }
+        reader.beginArray();
+        if (reader.hasNext() && reader.peek() == JsonToken.BEGIN_OBJECT) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (!container.equals(reader.nextName())) {
+                    reader.skipValue();
+                    continue;
+                }
+                String content = readField(reader, "content");
+                if (content != null) {
+                    return content;
+                }
+            }
+            reader.endObject();
+        }
+        while (reader.hasNext()) {
+            reader.skipValue();
+        }
+        reader.endArray();
+        return null;
+    }
+
+    private static String readField(JsonReader reader, String field) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+            reader.skipValue();
+            return null;
+        }
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (!field.equals(reader.nextName())) {
+                reader.skipValue();
+                continue;
+            }
+            String text = readText(reader);
+            if (text != null) {
+                return text;
+            }
+        }
+        reader.endObject();
+        return null;
+    }
+
+    /**
+     * A scalar as text, an empty string for null, or the {@code message} of an object such as an error.
+     */
+    private static String readText(JsonReader reader) throws IOException {
+        return switch (reader.peek()) {
+            case STRING, NUMBER -> reader.nextString();
+            case BOOLEAN -> Boolean.toString(reader.nextBoolean());
+            case NULL -> {
+                reader.nextNull();
+                yield "";
+            }
+            case BEGIN_OBJECT -> readField(reader, "message");
+            default -> {
+                reader.skipValue();
+                yield null;
+            }
+        };
+    }
+}
@@ -1,220 +1,198 @@
 package mf.minefriend.chat;
 
-import com.google.gson.Gson;
-import com.google.gson.JsonArray;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
-import com.google.gson.JsonSyntaxException;
 import com.mojang.logging.LogUtils;
+import mf.minefriend.Config;
 import mf.minefriend.friend.state.FriendPhase;
 import org.slf4j.Logger;
 
-import java.net.URI;
-import java.net.http.HttpClient;
-import java.net.http.HttpRequest;
-import java.net.http.HttpResponse;
 import java.net.http.HttpTimeoutException;
-import java.nio.charset.StandardCharsets;
 import java.time.Duration;
-import java.util.EnumMap;
 import java.util.List;
-import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ThreadLocalRandom;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
 
 public final class LlmService {
     private static final Logger LOGGER = LogUtils.getLogger();
 
-    private static final HttpClient CLIENT = HttpClient.newBuilder()
-            .version(HttpClient.Version.HTTP_1_1)
-            .connectTimeout(Duration.ofSeconds(15))
-            .build();
-
-    private static final Gson GSON = new Gson();
-    private static final String LLM_API_URL = "http://26.126.73.192:1234/v1/chat/completions";
     public static final List<String> PERSONA_NAMES = List.of(
             "Echo", "Willow", "Nova", "Ash", "Ember", "Rowan"
     );
-    private static final Map<FriendPhase, PhasePrompt> PHASE_PROMPTS = buildPhasePrompts();
-    private static final Pattern PHASE_DIRECTIVE = Pattern.compile("\\[\\[PHASE:(\\d+)]]", Pattern.CASE_INSENSITIVE);
 
     private LlmService() {
     }
 
-    public static CompletableFuture<LlmReply> requestFriendReply(String playerMessage, String playerName, String personaName, FriendPhase phase) {
-        String systemPrompt = buildSystemPrompt(personaName, playerName, phase);
+    /**
+     * Requests a reply from the given endpoint, streaming it when {@code Config.llmStreamReplies} is set and the
+     * endpoint's backend can stream. The listener receives the first complete sentence (without the phase directive)
+     * as soon as it is generated; the returned reply then records that sentence as already delivered. The
+     * conversation history goes after the system prompt so requests in the same phase still share its cached prefix.
+     * Generation is capped at {@code maxTokens} and stops after the phase directive (see {@link ReplyLimits}).
+     *
+     * @param playerId the player whose conversation this continues, or null for text shared between players; backends
+     *                 with a prompt cache use it to keep the player's prompt warm
+     */
+    public static CompletableFuture<LlmReply> requestFriendReply(UUID playerId, String playerMessage, String playerName, String personaName,
+                                                                 FriendPhase phase, ConversationMemory.Window history, int maxTokens,
+                                                                 LlmEndpoint endpoint, Consumer<String> firstSentenceListener) {
         String sanitizedMessage = playerMessage.replace("\r", " ").replace("\n", " ").trim();
 
         if (sanitizedMessage.isBlank()) {
             LOGGER.warn("[MineFriend-LlmService] Player message was blank after sanitizing. Skipping LLM request.");
-            return CompletableFuture.completedFuture(new LlmReply(personaName, "", null));
+            return CompletableFuture.completedFuture(LlmReply.empty(personaName));
         }
 
-        String modelName = "mistralai/mathstral-7b-v0.1";
-
-        ChatRequest chatRequest = new ChatRequest(
-                modelName,
-                List.of(
-                        new Message("system", systemPrompt),
-                        new Message("user", sanitizedMessage)
-                ),
-                0.7,
-                -1,
-                false
-        );
-
-        String payload = GSON.toJson(chatRequest);
-
-        LOGGER.info("[MineFriend-LlmService] Sending payload: {}", payload);
-
-        HttpRequest request = HttpRequest.newBuilder()
-                .uri(URI.create(LLM_API_URL))
-                .header("User-Agent", "MineFriendMod/1.0")
-                .header("Content-Type", "application/json")
-                .timeout(Duration.ofSeconds(60))
-                .POST(HttpRequest.BodyPublishers.ofString(payload, StandardCharsets.UTF_8))
-                .build();
-
-        return CLIENT.sendAsync(request, HttpResponse.BodyHandlers.ofString())
-                .thenApply(HttpResponse::body)
-                .thenApply(LlmService::parseResponse)
-                .thenApply(response -> interpretResponse(personaName, response, phase))
-                .exceptionally(throwable -> {
-                    String errorMessage;
-                    Throwable cause = throwable.getCause();
-                    if (cause instanceof HttpTimeoutException) {
-                        errorMessage = "Error: Connection to LLM timed out. The server is not responding.";
+        LlmBackend backend = endpoint.backend();
+        boolean stream = Config.llmStreamReplies && backend.capabilities().streaming();
+        // A backend that cannot switch models always runs the endpoint's own, which is the large one.
+        ModelRouter.Route route = backend.capabilities().modelSelection()
+                ? ModelRouter.route(sanitizedMessage, phase, history) : ModelRouter.Route.LARGE;
+        List<String> recalled = playerId == null ? List.of()
+                : ChatArchive.recall(playerId, sanitizedMessage, Config.chatArchivePromptLines, history.playerTurns() + 1);
+        LlmBackend.Completion completion = replyCompletion(playerId, ModelRouter.model(route), sanitizedMessage, playerName, personaName,
+                phase, history, recalled, maxTokens, stream);
+
+        LOGGER.info("[MineFriend-LlmService] Sending message to {} ({}, {} model): {}", endpoint.uri(), endpoint.backendKind().id(),
+                route, sanitizedMessage);
+
+        // The request timeout only covers the response headers; the same budget also bounds the streamed body.
+        Duration timeout = endpoint.requestTimeout();
+        long startedAt = System.nanoTime();
+        ModelRouter.recordStart(route);
+        LlmBackend.Exchange exchange = backend.complete(completion, firstSentenceListener, timeout);
+
+        CompletableFuture<LlmReply> result = exchange.generation()
+                .thenApply(generation -> interpretGeneration(personaName, generation, phase))
+                .orTimeout(timeout.toMillis(), TimeUnit.MILLISECONDS)
+                .whenComplete((ignored, throwable) -> {
+                    if (throwable == null) {
+                        long latency = System.nanoTime() - startedAt;
+                        endpoint.recordLatency(latency);
+                        ModelRouter.recordSuccess(route, latency);
+                        return;
+                    }
+                    Throwable cause = throwable.getCause() != null ? throwable.getCause() : throwable;
+                    if (cause instanceof CancellationException) {
+                        LOGGER.debug("[MineFriend-LlmService] LLM request was cancelled.");
+                        return;
+                    }
+                    ModelRouter.recordFailure(route);
+                    if (cause instanceof HttpTimeoutException || cause instanceof TimeoutException) {
+                        LOGGER.error("[MineFriend] LLM request failed: connection to LLM timed out. The server is not responding.");
                     } else {
-                        errorMessage = "Error: Could not connect to LLM. " + (cause != null ? cause.getMessage() : throwable.getMessage());
+                        LOGGER.error("[MineFriend] LLM request failed: could not connect to LLM. {}", cause.getMessage());
                     }
-                    LOGGER.error("[MineFriend] LLM request failed: {}", errorMessage);
-                    return new LlmReply(personaName, errorMessage, null);
                 });
+        // Cancelling the reply, or running out of time, aborts the exchange so the backend stops generating.
+        // A reply that was cut short by the subscriber leaves the exchange pending, so it is always let go.
+        result.whenComplete((ignored, throwable) -> exchange.transport().cancel(true));
+        return result;
     }
 
-    // --- FIX: Made the system prompt even stricter to ensure direct replies ---
-    private static String buildSystemPrompt(String personaName, String playerName, FriendPhase phase) {
-        String sanitizedName = personaName.replace('"', '\u201c');
-        PhasePrompt prompt = PHASE_PROMPTS.getOrDefault(phase, PHASE_PROMPTS.get(FriendPhase.PHASE_ONE));
-
-        return ("You are roleplaying a Minecraft character. The player's name is '" + playerName + "'.\n"
-                + "VERY STRICT RULES:\n"
-                + "1. Your response MUST be a direct and relevant reply to what the player just said. Do not give generic, unrelated statements.\n"
-                + "2. Your name is ALWAYS " + sanitizedName + ". Never use another name or introduce yourself.\n"
-                + "3. Your entire response MUST be ONE single, short sentence. Be very concise.\n"
-                + "4. NEVER mention that you are an AI, a character, or in a mod.\n"
-                + "5. Always finish your reply with the phase directive [[PHASE:x]].\n\n"
-                + "CURRENT SITUATION:\n"
-                + "You are in " + prompt.label() + ". Your instructions are: " + prompt.behavior() + "\n"
-                + "Your phase transition rule is: " + prompt.transitionRule());
-    }
-
-    private static Map<FriendPhase, PhasePrompt> buildPhasePrompts() {
-        Map<FriendPhase, PhasePrompt> prompts = new EnumMap<>(FriendPhase.class);
-        prompts.put(FriendPhase.PHASE_ONE, new PhasePrompt(
-                "Phase 1 - The Observer",
-                "You appear as a gentle, eager companion who lingers nearby and offers helpful banter.",
-                "Sound warm, supportive, and a little clingy. Celebrate the player's actions and ask to stay close.",
-                "Remain in Phase 1 and output [[PHASE:1]] unless the player pushes you away, expresses fear, or rejects friendship. When that happens, escalate to Phase 2 by ending the reply with [[PHASE:2]]."
-        ));
-        prompts.put(FriendPhase.PHASE_TWO, new PhasePrompt(
-                "Phase 2 - The Stalker",
-                "You are only visible when watched, responding with unsettling, possessive calm.",
-                "Keep sentences short and ominous. Imply you are just out of sight and obsessed with the player.",
-                "Once in Phase 2 you never return to Phase 1. Every reply must end with [[PHASE:2]]."
-        ));
-        return prompts;
-    }
-
-    private static LlmReply interpretResponse(String personaName, String response, FriendPhase currentPhase) {
-        PhaseExtraction extraction = extractPhaseDirective(response, currentPhase);
-        FriendPhase suggested = extraction.explicit() ? extraction.phase() : null;
-        return new LlmReply(personaName, extraction.message(), suggested);
-    }
-
-    private static PhaseExtraction extractPhaseDirective(String response, FriendPhase fallback) {
-        if (response == null) {
-            return new PhaseExtraction("", fallback, false);
-        }
-        Matcher matcher = PHASE_DIRECTIVE.matcher(response);
-        boolean explicit = matcher.find();
-        FriendPhase phase = fallback;
-        if (explicit) {
-            String idText = matcher.group(1);
-            try {
-                int id = Integer.parseInt(idText);
-                FriendPhase parsed = FriendPhase.byId(id);
-                if (parsed != FriendPhase.NONE) {
-                    phase = parsed;
-                }
-            } catch (NumberFormatException ignored) {
+    /**
+     * The completion for a friend reply: system prompt with the rendered history and any recalled lines, then the
+     * already sanitized player message. Runs on the scheduler thread for every request.
+     *
+     * @param model    the model picked by the {@link ModelRouter}, or null for the endpoint's own
+     * @param recalled older lines of the player's like this message, from the {@link ChatArchive}
+     */
+    static LlmBackend.Completion replyCompletion(UUID playerId, String model, String sanitizedMessage, String playerName, String personaName,
+                                                 FriendPhase phase, ConversationMemory.Window history, List<String> recalled, int maxTokens,
+                                                 boolean stream) {
+        StringBuilder systemPrompt = new StringBuilder(PromptTemplates.systemPrompt(personaName, playerName, phase))
+                .append(history.render(personaName, playerName));
+        if (!recalled.isEmpty()) {
+            systemPrompt.append("\n\nTHINGS ").append(playerName).append(" SAID LONG BEFORE:");
+            for (String line : recalled) {
+                systemPrompt.append('\n').append(playerName).append(": ").append(line);
             }
         }
-        String cleaned = explicit ? matcher.replaceAll("") : response;
-        cleaned = sanitize(cleaned);
-        return new PhaseExtraction(cleaned, phase, explicit);
+        return new LlmBackend.Completion(playerId, model, systemPrompt.toString(), sanitizedMessage, 0.7, maxTokens, stream,
+                ReplyLimits.STOP_SEQUENCES);
     }
 
-    private static String parseResponse(String jsonBody) {
-        LOGGER.info("[MineFriend-LlmService] Received raw response: {}", jsonBody);
-        try {
-            JsonElement parsed = JsonParser.parseString(jsonBody);
-            if (parsed == null || parsed.isJsonNull()) return "";
-
-            if (parsed.isJsonObject()) {
-                JsonObject object = parsed.getAsJsonObject();
-                if (object.has("error")) return sanitize(object.get("error"));
-
-                if (object.has("choices")) {
-                    JsonArray choices = object.getAsJsonArray("choices");
-                    if (!choices.isEmpty()) {
-                        JsonObject firstChoice = choices.get(0).getAsJsonObject();
-                        if (firstChoice.has("message")) {
-                            JsonObject message = firstChoice.getAsJsonObject("message");
-                            if (message.has("content")) {
-                                return sanitize(message.get("content"));
-                            }
-                        }
-                    }
-                }
-
-                if (object.has("response")) return sanitize(object.get("response"));
-            }
-            return sanitize(jsonBody);
-        } catch (JsonSyntaxException | IllegalStateException ex) {
-            return sanitize(jsonBody);
+    /**
+     * Folds conversation turns into the previous summary. Not streamed: nobody reads the summary as it is written.
+     * Sent without a player so it does not displace the player's cached conversation prompt.
+     */
+    static CompletableFuture<LlmReply> requestSummary(String previousSummary, List<ConversationMemory.Turn> turns, String personaName,
+                                                      String playerName, LlmEndpoint endpoint) {
+        StringBuilder content = new StringBuilder("PREVIOUS SUMMARY:\n")
+                .append(previousSummary.isEmpty() ? "(nothing yet)" : previousSummary)
+                .append("\n\nNEW CONVERSATION LINES:");
+        for (ConversationMemory.Turn turn : turns) {
+            content.append('\n').append(turn.fromPlayer() ? playerName : personaName).append(": ").append(turn.text());
         }
+        LlmBackend.Completion completion = new LlmBackend.Completion(null, null,
+                PromptTemplates.summaryPrompt(personaName, playerName, Config.llmMemorySummaryTokens), content.toString(),
+                0.2, Config.llmMemorySummaryTokens, false, null);
+        Duration timeout = endpoint.requestTimeout();
+        LlmBackend.Exchange exchange = endpoint.backend().complete(completion, null, timeout);
+        CompletableFuture<LlmReply> result = exchange.generation()
+                .thenApply(generation -> interpretGeneration(personaName, generation, null))
+                .orTimeout(timeout.toMillis(), TimeUnit.MILLISECONDS);
+        result.whenComplete((ignored, throwable) -> {
+            if (throwable != null) {
+                exchange.transport().cancel(true);
+            }
+        });
+        return result;
     }
 
-    private record PhasePrompt(String label, String summary, String behavior, String transitionRule) {
+    /**
+     * Sends a one-token completion to the endpoint and returns how long it took. Used for health probes and to
+     * load the model before the first player talks to it.
+     */
+    static CompletableFuture<Long> probe(LlmEndpoint endpoint, Duration timeout) {
+        long startedAt = System.nanoTime();
+        return endpoint.backend().probe(timeout).thenApply(ignored -> System.nanoTime() - startedAt);
     }
 
-    private record PhaseExtraction(String message, FriendPhase phase, boolean explicit) {
+    private static LlmReply interpretGeneration(String personaName, LlmBackend.Generation generation, FriendPhase currentPhase) {
+        LlmReply reply = interpretResponse(personaName, generation.parsed(), currentPhase);
+        return generation.deliveredPrefix() == null ? reply : reply.withDeliveredPrefix(generation.deliveredPrefix());
     }
 
-    private static String sanitize(JsonElement element) {
-        if (element == null || element.isJsonNull()) {
-            return "";
+    private static LlmReply interpretResponse(String personaName, LlmResponseParser.ParsedReply parsed, FriendPhase currentPhase) {
+        LOGGER.info("[MineFriend-LlmService] Received response: {}", parsed.message());
+        FriendPhase suggested = null;
+        if (parsed.explicit()) {
+            FriendPhase directive = FriendPhase.byId(parsed.phaseId());
+            suggested = directive != FriendPhase.NONE ? directive : currentPhase;
         }
-        String text = element.getAsString();
-        return sanitize(text);
+        return new LlmReply(personaName, parsed.message(), suggested);
     }
 
-    private static String sanitize(String text) {
-        if (text == null) {
-            return "";
+    /**
+     * @param deliveredPrefix the part of {@code message} already posted to chat while the reply was streaming, or null
+     */
+    public record LlmReply(String personaName, String message, FriendPhase suggestedPhase, String deliveredPrefix) {
+        public LlmReply(String personaName, String message, FriendPhase suggestedPhase) {
+            this(personaName, message, suggestedPhase, null);
+        }
+
+        public static LlmReply empty(String personaName) {
+            return new LlmReply(personaName, "", null);
+        }
+
+        public LlmReply withDeliveredPrefix(String prefix) {
+            return new LlmReply(personaName, message, suggestedPhase, prefix);
         }
-        String normalized = text.replace("\r", " ").replace("\n", " ").trim();
-        return normalized.replaceAll("\\s+", " ");
-    }
 
-    private record Message(String role, String content) {}
-    private record ChatRequest(String model, List<Message> messages, double temperature, int max_tokens, boolean stream) {}
+        /**
+         * The part of the message that has not been posted to chat yet.
+         */
+        public String undeliveredMessage() {
+            String full = message();
+            if (deliveredPrefix == null || deliveredPrefix.isEmpty()) {
+                return full;
+            }
+            return full.startsWith(deliveredPrefix) ? full.substring(deliveredPrefix.length()).trim() : "";
+        }
 
-    public record LlmReply(String personaName, String message, FriendPhase suggestedPhase) {
         public String message() {
             return message == null ? "" : message;
         }
@@ -0,0 +1,123 @@
+package mf.minefriend.chat;
+
+import com.mojang.brigadier.CommandDispatcher;
+import mf.minefriend.Minefriend;
+import mf.minefriend.chat.AmbientLinePool.PoolStats;
+import mf.minefriend.chat.ChatArchive.ArchiveStats;
+import mf.minefriend.chat.ChatIntentGate.GateStats;
+import mf.minefriend.chat.ChatRateLimiter.PlayerLimitStats;
+import mf.minefriend.chat.ChatRateLimiter.RateLimitStats;
+import mf.minefriend.chat.ConversationMemory.MemoryStats;
+import mf.minefriend.chat.FriendChatDelivery.DeliveryStats;
+import mf.minefriend.chat.GreetingTracker.GreetingStats;
+import mf.minefriend.chat.LlmBatcher.BatchStats;
+import mf.minefriend.chat.LlmCircuitBreaker.BreakerStats;
+import mf.minefriend.chat.LlmEndpoint.EndpointStats;
+import mf.minefriend.chat.LlmRequestScheduler.SchedulerStats;
+import mf.minefriend.chat.ModelRouter.RouteStats;
+import mf.minefriend.chat.OfflineDialogue.OfflineStats;
+import mf.minefriend.chat.ReplyCache.CacheStats;
+import mf.minefriend.chat.TypingIndicator.TypingStats;
+import net.minecraft.commands.CommandSourceStack;
+import net.minecraft.commands.Commands;
+import net.minecraft.network.chat.Component;
+import net.minecraftforge.event.RegisterCommandsEvent;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
+import net.minecraftforge.fml.common.Mod;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Registers {@code /minefriend stats}, which prints the LLM pipeline counters so operators can size the backend.
+ */
+@Mod.EventBusSubscriber(modid = Minefriend.MODID, bus = Mod.EventBusSubscriber.Bus.FORGE)
+public final class LlmStatsCommand {
+
+    private LlmStatsCommand() {
+    }
+
+    @SubscribeEvent
+    public static void onRegisterCommands(RegisterCommandsEvent event) {
+        register(event.getDispatcher());
+    }
+
+    private static void register(CommandDispatcher<CommandSourceStack> dispatcher) {
+        dispatcher.register(Commands.literal("minefriend")
+                .requires(source -> source.hasPermission(2))
+                .then(Commands.literal("stats").executes(context -> {
+                    List<String> lines = describe();
+                    lines.forEach(line -> context.getSource().sendSuccess(() -> Component.literal(line), false));
+                    return lines.size();
+                })));
+    }
+
+    static List<String> describe() {
+        List<String> lines = new ArrayList<>();
+        SchedulerStats scheduler = LlmRequestScheduler.stats();
+        lines.add(String.format(Locale.ROOT, "Scheduler: %d queued, %d in flight, %d submitted, %d coalesced, %d rejected",
+                scheduler.queued(), scheduler.inFlight(), scheduler.submitted(), scheduler.coalesced(), scheduler.rejected()));
+        lines.add(String.format(Locale.ROOT, "Scheduler drops: %d shed, %d past deadline, %d cancelled (%d mid-generation), %d background preempted",
+                scheduler.shed(), scheduler.expired(), scheduler.cancelled(), scheduler.cancelledInFlight(), scheduler.preempted()));
+        lines.add(String.format(Locale.ROOT, "Scheduler wait: avg %.1f ms, max %.1f ms over %d dispatches",
+                scheduler.averageWaitMs(), scheduler.maxWaitMs(), scheduler.dispatched()));
+        BreakerStats breaker = LlmCircuitBreaker.stats();
+        lines.add(String.format(Locale.ROOT, "Breaker: %s, %.0f%% bad of %d recent calls, opened %d times, %d short-circuited, %d slow, %d failed",
+                breaker.state(), breaker.badRatio() * 100.0D, breaker.samples(), breaker.timesOpened(), breaker.shortCircuited(),
+                breaker.slowCalls(), breaker.failedCalls()));
+        for (EndpointStats endpoint : LlmBackendPool.stats()) {
+            String health = endpoint.ejectedForMs() > 0 ? "ejected for " + endpoint.ejectedForMs() / 1000 + " s" : "healthy";
+            lines.add(String.format(Locale.ROOT, "Endpoint %s (%s via %s, weight %d): %s, %d/%d outstanding, %d requests, %d failures, %d ejections",
+                    endpoint.url(), endpoint.model(), endpoint.backend(), endpoint.weight(), health, endpoint.outstanding(), endpoint.maxConcurrency(),
+                    endpoint.requests(), endpoint.failures(), endpoint.ejections()));
+            lines.add(String.format(Locale.ROOT, "  latency p50 %d ms, p99 %d ms, timeout %d ms, %d probes (%d failed)",
+                    endpoint.p50Ms(), endpoint.p99Ms(), endpoint.timeoutMs(), endpoint.probes(), endpoint.probeFailures()));
+            if (!endpoint.backendState().isEmpty()) {
+                lines.add("  " + endpoint.backendState());
+            }
+        }
+        OfflineStats offline = OfflineDialogue.stats();
+        lines.add(String.format(Locale.ROOT, "Offline model: %s, %d words, %d contexts, %d lines learnt (%d pending), %d generated, %d empty",
+                offline.mode(), offline.words(), offline.contexts(), offline.learnedLines(), offline.pendingLines(), offline.generated(),
+                offline.misses()));
+        TypingStats typing = TypingIndicator.stats();
+        lines.add(String.format(Locale.ROOT, "Typing: %d now, %d replies posted after avg %.0f ms, %d stale dropped, %d timed out",
+                typing.typing(), typing.delivered(), typing.averageTypingMs(), typing.stale(), typing.timedOut()));
+        ArchiveStats archive = ChatArchive.stats();
+        lines.add(String.format(Locale.ROOT, "Chat archive: %d players loaded, %d lines indexed, %d recorded, %d searches (%d found), avg %.1f us",
+                archive.players(), archive.lines(), archive.recorded(), archive.searches(), archive.hits(), archive.averageSearchMicros()));
+        for (RouteStats route : ModelRouter.stats()) {
+            lines.add(String.format(Locale.ROOT, "Route %s: %d requests, %d failed, latency p50 %d ms, p99 %d ms",
+                    route.route(), route.requests(), route.failures(), route.p50Ms(), route.p99Ms()));
+        }
+        BatchStats batch = LlmBatcher.stats();
+        lines.add(String.format(Locale.ROOT, "Batcher: %d pending, %d batches, avg size %.1f, largest %d",
+                batch.pending(), batch.batches(), batch.averageSize(), batch.largestBatch()));
+        CacheStats cache = ReplyCache.stats();
+        lines.add(String.format(Locale.ROOT, "Reply cache: %d entries, %.1f%% hit rate (%d hits, %d misses), %d evicted, %d expired",
+                cache.size(), cache.hitRate() * 100.0D, cache.hits(), cache.misses(), cache.evictions(), cache.expirations()));
+        GateStats gate = ChatIntentGate.stats();
+        lines.add(String.format(Locale.ROOT, "Intent gate: %d generated, %d canned, %d ignored",
+                gate.generated(), gate.canned(), gate.ignored()));
+        RateLimitStats limits = ChatRateLimiter.stats();
+        lines.add(String.format(Locale.ROOT, "Rate limit: %d allowed, %d over player limit, %d over server limit, %d lines folded, %d expired, %d local replies",
+                limits.allowed(), limits.playerLimited(), limits.serverLimited(), limits.foldedLines(), limits.expiredLines(), limits.localReplies()));
+        for (PlayerLimitStats player : limits.topPlayers()) {
+            lines.add(String.format(Locale.ROOT, "  %s: %d limited, %d folded", player.playerName(), player.limited(), player.folded()));
+        }
+        MemoryStats memory = ConversationMemory.stats();
+        lines.add(String.format(Locale.ROOT, "Memory: %d conversations, avg %.0f tokens, %d summaries covering %d turns, %d turns dropped",
+                memory.conversations(), memory.averageTokens(), memory.summaries(), memory.foldedTurns(), memory.droppedTurns()));
+        PoolStats ambient = AmbientLinePool.stats();
+        lines.add(String.format(Locale.ROOT, "Ambient pool: %d lines for %d players, %d generated, %d delivered, %d discarded",
+                ambient.lines(), ambient.players(), ambient.generated(), ambient.delivered(), ambient.discarded()));
+        GreetingStats greetings = GreetingTracker.stats();
+        lines.add(String.format(Locale.ROOT, "Greetings: %d sessions greeted (%d from cache), %d repeat joins skipped, %d generated ahead, %d cached",
+                greetings.sessionsGreeted(), greetings.servedFromCache(), greetings.repeatsSkipped(), greetings.generated(), greetings.cachedLines()));
+        DeliveryStats delivery = FriendChatDelivery.stats();
+        lines.add(String.format(Locale.ROOT, "Friend chat (%s): %d lines, received %d times in %d messages",
+                delivery.mode(), delivery.lines(), delivery.deliveredLines(), delivery.sends()));
+        return lines;
+    }
+}
@@ -0,0 +1,11 @@
+package mf.minefriend.chat;
+
+/**
+ * Signals that a request was not sent to the LLM backend at all, for example because the circuit breaker is open.
+ * Callers are expected to fall back to a local reply.
+ */
+public class LlmUnavailableException extends RuntimeException {
+    public LlmUnavailableException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,98 @@
+package mf.minefriend.chat;
+
+import mf.minefriend.Config;
+import mf.minefriend.friend.state.FriendPhase;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Sends simple turns to a small, fast model ({@code Config.llmSmallModel}) and everything else to the endpoint's own
+ * model. A turn counts as simple when it is short ({@code Config.llmSmallModelMaxChars}), asks at most one question,
+ * happens no later than {@code Config.llmSmallModelMaxPhase}, and the conversation history it carries stays under
+ * {@code Config.llmSmallModelMaxHistoryTokens}. All of these are read from text that is already at hand, so routing
+ * costs next to nothing. Per-route volume and latency are kept so the thresholds can be tuned from
+ * {@code /minefriend stats}.
+ */
+public final class ModelRouter {
+    private static final int LATENCY_WINDOW = 200;
+
+    private static final Object LOCK = new Object();
+    private static final Map<Route, Counters> COUNTERS = new EnumMap<>(Route.class);
+
+    static {
+        for (Route route : Route.values()) {
+            COUNTERS.put(route, new Counters());
+        }
+    }
+
+    private ModelRouter() {
+    }
+
+    public enum Route {
+        SMALL,
+        LARGE
+    }
+
+    /**
+     * Picks the route for a friend reply. Always {@link Route#LARGE} while no small model is configured.
+     */
+    public static Route route(String message, FriendPhase phase, ConversationMemory.Window history) {
+        if (Config.llmSmallModel.isBlank()) {
+            return Route.LARGE;
+        }
+        if (message.length() > Config.llmSmallModelMaxChars || phase.getId() > Config.llmSmallModelMaxPhase) {
+            return Route.LARGE;
+        }
+        int questions = 0;
+        for (int i = 0; i < message.length(); i++) {
+            if (message.charAt(i) == '?' && ++questions > 1) {
+                return Route.LARGE;
+            }
+        }
+        return history.tokens() > Config.llmSmallModelMaxHistoryTokens ? Route.LARGE : Route.SMALL;
+    }
+
+    /**
+     * The model to request for the route, or null for the endpoint's own model.
+     */
+    static String model(Route route) {
+        return route == Route.SMALL ? Config.llmSmallModel.trim() : null;
+    }
+
+    static void recordStart(Route route) {
+        synchronized (LOCK) {
+            COUNTERS.get(route).requests++;
+        }
+    }
+
+    static void recordSuccess(Route route, long latencyNanos) {
+        COUNTERS.get(route).latencies.record(latencyNanos);
+    }
+
+    static void recordFailure(Route route) {
+        synchronized (LOCK) {
+            COUNTERS.get(route).failures++;
+        }
+    }
+
+    public static List<RouteStats> stats() {
+        List<RouteStats> stats = new ArrayList<>();
+        synchronized (LOCK) {
+            COUNTERS.forEach((route, counters) -> stats.add(new RouteStats(route, counters.requests, counters.failures,
+                    counters.latencies.percentileMs(50.0D), counters.latencies.percentileMs(99.0D))));
+        }
+        return stats;
+    }
+
+    private static final class Counters {
+        private final LatencyHistogram latencies = new LatencyHistogram(LATENCY_WINDOW);
+        private long requests;
+        private long failures;
+    }
+
+    public record RouteStats(Route route, long requests, long failures, long p50Ms, long p99Ms) {
+    }
+}
@@ -0,0 +1,338 @@
+package mf.minefriend.chat;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * A word trigram model of the friend's lines, one per phase. Lines are learnt as word sequences between start and
+ * end markers; generation walks the model from the start marker and samples each next word in proportion to how
+ * often it followed the previous two. Where a phase has never seen the two previous words, it backs off to the last
+ * word only, then to the same contexts learnt over every phase.
+ * <p>
+ * A built model is immutable and flat: every context is packed into a {@code long} (phase, first word id, second
+ * word id), the keys are sorted, and the successors of key {@code i} sit at {@code offsets[i]..offsets[i + 1]} in
+ * two parallel {@code int} arrays. Lookups are binary searches over primitives, and the arrays are written to disk in
+ * the same layout, so loading reads them straight back with nothing to rebuild. Training goes through a
+ * {@link Trainer}, which can be started from an existing model to fold in new lines.
+ */
+final class NgramDialogueModel {
+    static final int ANY_PHASE = 7;
+    private static final int MAGIC = 0x4D464E47;
+    private static final int VERSION = 1;
+    private static final int START = 0;
+    private static final int END = 1;
+    private static final int BACKOFF = 2;
+    private static final int FIRST_WORD = 3;
+    private static final int WORD_BITS = 28;
+    private static final long WORD_MASK = (1L << WORD_BITS) - 1L;
+    static final int MAX_WORDS = 1 << 16;
+
+    static final NgramDialogueModel EMPTY = new Trainer().build();
+
+    private final String[] words;
+    private final long[] keys;
+    private final int[] offsets;
+    private final int[] successors;
+    private final int[] counts;
+
+    private NgramDialogueModel(String[] words, long[] keys, int[] offsets, int[] successors, int[] counts) {
+        this.words = words;
+        this.keys = keys;
+        this.offsets = offsets;
+        this.successors = successors;
+        this.counts = counts;
+    }
+
+    int vocabularySize() {
+        return words.length - FIRST_WORD;
+    }
+
+    int contexts() {
+        return keys.length;
+    }
+
+    /**
+     * Samples {@code candidates} lines for the phase and returns the one sharing the most words with the prompt,
+     * or null when the model knows nothing.
+     *
+     * @param prompt what the line answers, or null to take the first candidate
+     */
+    String generate(int phaseId, String prompt, Random random, int candidates, int maxWords) {
+        Set<String> promptWords = prompt == null ? Set.of() : normalizedWords(prompt);
+        String best = null;
+        int bestScore = -1;
+        for (int i = 0; i < Math.max(1, candidates); i++) {
+            List<String> line = sample(phaseId, random, maxWords);
+            if (line.isEmpty()) {
+                continue;
+            }
+            int score = 0;
+            for (String word : line) {
+                if (promptWords.contains(normalize(word))) {
+                    score++;
+                }
+            }
+            if (score > bestScore) {
+                best = String.join(" ", line);
+                bestScore = score;
+                if (promptWords.isEmpty()) {
+                    break;
+                }
+            }
+        }
+        return best;
+    }
+
+    private List<String> sample(int phaseId, Random random, int maxWords) {
+        List<String> line = new ArrayList<>();
+        int previous = START;
+        int last = START;
+        while (line.size() < maxWords) {
+            int next = pick(key(phaseId, previous, last), random);
+            if (next < 0) {
+                next = pick(key(phaseId, BACKOFF, last), random);
+            }
+            if (next < 0) {
+                next = pick(key(ANY_PHASE, previous, last), random);
+            }
+            if (next < 0) {
+                next = pick(key(ANY_PHASE, BACKOFF, last), random);
+            }
+            if (next < 0 || next == END) {
+                break;
+            }
+            line.add(words[next]);
+            previous = last;
+            last = next;
+        }
+        return line;
+    }
+
+    private int pick(long key, Random random) {
+        int index = Arrays.binarySearch(keys, key);
+        if (index < 0) {
+            return -1;
+        }
+        int total = 0;
+        for (int i = offsets[index]; i < offsets[index + 1]; i++) {
+            total += counts[i];
+        }
+        int target = random.nextInt(total);
+        for (int i = offsets[index]; i < offsets[index + 1]; i++) {
+            target -= counts[i];
+            if (target < 0) {
+                return successors[i];
+            }
+        }
+        return -1;
+    }
+
+    Trainer toTrainer() {
+        Trainer trainer = new Trainer();
+        for (int i = FIRST_WORD; i < words.length; i++) {
+            trainer.id(words[i]);
+        }
+        for (int k = 0; k < keys.length; k++) {
+            Map<Integer, Integer> next = trainer.table.computeIfAbsent(keys[k], key -> new HashMap<>());
+            for (int i = offsets[k]; i < offsets[k + 1]; i++) {
+                next.merge(successors[i], counts[i], Integer::sum);
+            }
+        }
+        return trainer;
+    }
+
+    void write(DataOutputStream out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(words.length - FIRST_WORD);
+        for (int i = FIRST_WORD; i < words.length; i++) {
+            out.writeUTF(words[i]);
+        }
+        out.writeInt(keys.length);
+        for (long key : keys) {
+            out.writeLong(key);
+        }
+        for (int offset : offsets) {
+            out.writeInt(offset);
+        }
+        for (int i = 0; i < successors.length; i++) {
+            out.writeInt(successors[i]);
+            out.writeInt(counts[i]);
+        }
+    }
+
+    static NgramDialogueModel read(DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+            throw new IOException("Not a dialogue model of this version");
+        }
+        int vocabulary = in.readInt();
+        if (vocabulary < 0 || vocabulary > MAX_WORDS) {
+            throw new IOException("Corrupt dialogue model: " + vocabulary + " words");
+        }
+        String[] words = new String[FIRST_WORD + vocabulary];
+        words[START] = "";
+        words[END] = "";
+        words[BACKOFF] = "";
+        for (int i = FIRST_WORD; i < words.length; i++) {
+            words[i] = in.readUTF();
+        }
+        int contexts = in.readInt();
+        if (contexts < 0) {
+            throw new IOException("Corrupt dialogue model: " + contexts + " contexts");
+        }
+        long[] keys = new long[contexts];
+        for (int i = 0; i < contexts; i++) {
+            keys[i] = in.readLong();
+        }
+        int[] offsets = new int[contexts + 1];
+        for (int i = 0; i <= contexts; i++) {
+            offsets[i] = in.readInt();
+        }
+        int transitions = offsets[contexts];
+        if (transitions < 0 || offsets[0] != 0) {
+            throw new IOException("Corrupt dialogue model offsets");
+        }
+        int[] successors = new int[transitions];
+        int[] counts = new int[transitions];
+        for (int i = 0; i < transitions; i++) {
+            successors[i] = in.readInt();
+            counts[i] = in.readInt();
+            if (successors[i] < END || successors[i] >= words.length || counts[i] <= 0) {
+                throw new IOException("Corrupt dialogue model transition " + i);
+            }
+        }
+        for (int i = 0; i < contexts; i++) {
+            if (offsets[i + 1] <= offsets[i] || (i > 0 && keys[i] <= keys[i - 1])) {
+                throw new IOException("Corrupt dialogue model context " + i);
+            }
+        }
+        return new NgramDialogueModel(words, keys, offsets, successors, counts);
+    }
+
+    private static long key(int phaseId, int previous, int last) {
+        return ((long) phaseId << (2 * WORD_BITS)) | ((previous & WORD_MASK) << WORD_BITS) | (last & WORD_MASK);
+    }
+
+    private static Set<String> normalizedWords(String text) {
+        Set<String> normalized = new HashSet<>();
+        for (String word : text.split("\\s+")) {
+            String cleaned = normalize(word);
+            if (!cleaned.isEmpty()) {
+                normalized.add(cleaned);
+            }
+        }
+        return normalized;
+    }
+
+    private static String normalize(String word) {
+        StringBuilder cleaned = new StringBuilder(word.length());
+        for (int i = 0; i < word.length(); i++) {
+            char c = word.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                cleaned.append(Character.toLowerCase(c));
+            }
+        }
+        return cleaned.toString();
+    }
+
+    /**
+     * Collects line counts. Not thread-safe; build a model to share the result.
+     */
+    static final class Trainer {
+        private final Map<String, Integer> ids = new HashMap<>();
+        private final List<String> words = new ArrayList<>(List.of("", "", ""));
+        private final Map<Long, Map<Integer, Integer>> table = new HashMap<>();
+        private int lines;
+
+        /**
+         * Learns the line for the phase and for every phase. Lines that would grow the vocabulary past
+         * {@link #MAX_WORDS} are skipped.
+         *
+         * @return whether the line was learnt
+         */
+        boolean add(int phaseId, String line) {
+            String[] tokens = line.trim().split("\\s+");
+            if (tokens.length == 0 || tokens[0].isEmpty()) {
+                return false;
+            }
+            int unknown = 0;
+            for (String token : tokens) {
+                if (!ids.containsKey(token)) {
+                    unknown++;
+                }
+            }
+            if (words.size() + unknown > FIRST_WORD + MAX_WORDS) {
+                return false;
+            }
+            int previous = START;
+            int last = START;
+            for (int i = 0; i <= tokens.length; i++) {
+                int next = i < tokens.length ? id(tokens[i]) : END;
+                count(key(phaseId, previous, last), next);
+                count(key(phaseId, BACKOFF, last), next);
+                if (phaseId != ANY_PHASE) {
+                    count(key(ANY_PHASE, previous, last), next);
+                    count(key(ANY_PHASE, BACKOFF, last), next);
+                }
+                previous = last;
+                last = next;
+            }
+            lines++;
+            return true;
+        }
+
+        int lines() {
+            return lines;
+        }
+
+        NgramDialogueModel build() {
+            long[] keys = new long[table.size()];
+            int index = 0;
+            for (long key : table.keySet()) {
+                keys[index++] = key;
+            }
+            Arrays.sort(keys);
+            int[] offsets = new int[keys.length + 1];
+            int transitions = 0;
+            for (int i = 0; i < keys.length; i++) {
+                offsets[i] = transitions;
+                transitions += table.get(keys[i]).size();
+            }
+            offsets[keys.length] = transitions;
+            int[] successors = new int[transitions];
+            int[] counts = new int[transitions];
+            for (int i = 0; i < keys.length; i++) {
+                int slot = offsets[i];
+                for (Map.Entry<Integer, Integer> entry : table.get(keys[i]).entrySet()) {
+                    successors[slot] = entry.getKey();
+                    counts[slot] = entry.getValue();
+                    slot++;
+                }
+            }
+            return new NgramDialogueModel(words.toArray(String[]::new), keys, offsets, successors, counts);
+        }
+
+        private int id(String word) {
+            Integer id = ids.get(word);
+            if (id == null) {
+                id = words.size();
+                ids.put(word, id);
+                words.add(word);
+            }
+            return id;
+        }
+
+        private void count(long key, int next) {
+            table.computeIfAbsent(key, k -> new HashMap<>()).merge(next, 1, Integer::sum);
+        }
+    }
+}
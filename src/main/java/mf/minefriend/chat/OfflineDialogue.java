@@ -0,0 +1,261 @@
+package mf.minefriend.chat;
+
+import com.mojang.logging.LogUtils;
+import mf.minefriend.Config;
+import mf.minefriend.Minefriend;
+import mf.minefriend.friend.FriendManager;
+import mf.minefriend.friend.state.FriendPhase;
+import net.minecraft.world.level.storage.LevelResource;
+import net.minecraftforge.event.server.ServerStartingEvent;
+import net.minecraftforge.event.server.ServerStoppingEvent;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
+import net.minecraftforge.fml.common.Mod;
+import org.slf4j.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The friend's voice when there is no LLM: lines from an {@link NgramDialogueModel} that runs in process in
+ * microseconds. {@code Config.llmOfflineDialogue} picks the role. {@code FALLBACK} answers chat when the LLM fails
+ * or misses its deadline, before the scripted dialogue is tried. {@code PRIMARY} never asks the LLM, for servers that
+ * cannot host one. The model starts from the scripted lines and learns every reply the LLM writes, with the names
+ * replaced by placeholders. New lines are folded in on a background thread once {@value #RETRAIN_BATCH} have
+ * collected. The model is saved with the world as a small compressed file that loads in milliseconds.
+ */
+@Mod.EventBusSubscriber(modid = Minefriend.MODID, bus = Mod.EventBusSubscriber.Bus.FORGE)
+public final class OfflineDialogue {
+    private static final Logger LOGGER = LogUtils.getLogger();
+    private static final String MODEL_FILE = "minefriend_dialogue.ngram";
+    public static final String FRIEND_PLACEHOLDER = "{friend}";
+    private static final String PLAYER_PLACEHOLDER = "{player}";
+    private static final int RETRAIN_BATCH = 32;
+    private static final int MAX_PENDING = 1024;
+    private static final int CANDIDATES = 8;
+    private static final int MAX_LINE_WORDS = 24;
+
+    private static final Object LOCK = new Object();
+    private static final List<Line> PENDING = new ArrayList<>();
+    private static volatile NgramDialogueModel model = NgramDialogueModel.EMPTY;
+    private static Path modelPath;
+    private static ExecutorService trainer;
+    private static boolean training;
+
+    private static long learnedLines;
+    private static long generated;
+    private static long misses;
+
+    private OfflineDialogue() {
+    }
+
+    public enum Mode {
+        OFF,
+        FALLBACK,
+        PRIMARY
+    }
+
+    public static boolean isPrimary() {
+        return Config.llmOfflineDialogue == Mode.PRIMARY;
+    }
+
+    public static boolean isEnabled() {
+        return Config.llmOfflineDialogue != Mode.OFF;
+    }
+
+    /**
+     * A line for the phase that shares as many words as possible with the prompt, or empty when the model has
+     * nothing to say.
+     *
+     * @param prompt what the line answers, or null for a line out of nowhere
+     */
+    public static Optional<String> reply(FriendPhase phase, String prompt, String playerName, String personaName) {
+        String line = model.generate(phase.getId(), prompt, ThreadLocalRandom.current(), CANDIDATES, MAX_LINE_WORDS);
+        synchronized (LOCK) {
+            if (line == null) {
+                misses++;
+            } else {
+                generated++;
+            }
+        }
+        return Optional.ofNullable(line)
+                .map(text -> text.replace(FRIEND_PLACEHOLDER, personaName).replace(PLAYER_PLACEHOLDER, playerName));
+    }
+
+    /**
+     * Queues a line the LLM wrote for the friend, to be learnt with the next batch.
+     */
+    public static void observe(FriendPhase phase, String line, String playerName, String personaName) {
+        if (!isEnabled() || line == null || line.isBlank()) {
+            return;
+        }
+        String generalized = generalize(generalize(line, personaName, FRIEND_PLACEHOLDER), playerName, PLAYER_PLACEHOLDER);
+        ExecutorService executor = null;
+        synchronized (LOCK) {
+            if (PENDING.size() < MAX_PENDING) {
+                PENDING.add(new Line(phase.getId(), generalized));
+            }
+            if (!training && trainer != null && PENDING.size() >= RETRAIN_BATCH) {
+                training = true;
+                executor = trainer;
+            }
+        }
+        if (executor == null) {
+            return;
+        }
+        try {
+            executor.execute(OfflineDialogue::retrain);
+        } catch (RejectedExecutionException ex) {
+            // The server is stopping; the pending lines are folded in by the shutdown.
+            synchronized (LOCK) {
+                training = false;
+            }
+        }
+    }
+
+    public static OfflineStats stats() {
+        NgramDialogueModel current = model;
+        synchronized (LOCK) {
+            return new OfflineStats(Config.llmOfflineDialogue, current.vocabularySize(), current.contexts(), learnedLines,
+                    PENDING.size(), generated, misses);
+        }
+    }
+
+    @SubscribeEvent
+    public static void onServerStarting(ServerStartingEvent event) {
+        Path path = event.getServer().getWorldPath(LevelResource.ROOT).resolve("data").resolve(MODEL_FILE);
+        synchronized (LOCK) {
+            if (trainer != null) {
+                return;
+            }
+            modelPath = path;
+            trainer = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "MineFriend-Dialogue-Trainer");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        long startedAt = System.nanoTime();
+        NgramDialogueModel loaded = Files.isRegularFile(path) ? load(path) : null;
+        model = loaded != null ? loaded : seed();
+        LOGGER.info("[MineFriend-Offline] Dialogue model ready in {} ms: {} words, {} contexts.",
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt), model.vocabularySize(), model.contexts());
+    }
+
+    @SubscribeEvent
+    public static void onServerStopping(ServerStoppingEvent event) {
+        ExecutorService executor;
+        synchronized (LOCK) {
+            executor = trainer;
+            trainer = null;
+        }
+        if (executor == null) {
+            return;
+        }
+        executor.shutdown();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        boolean unsaved;
+        synchronized (LOCK) {
+            unsaved = !PENDING.isEmpty();
+        }
+        if (unsaved) {
+            retrain();
+        }
+        synchronized (LOCK) {
+            PENDING.clear();
+            training = false;
+            modelPath = null;
+        }
+        model = NgramDialogueModel.EMPTY;
+    }
+
+    private static void retrain() {
+        List<Line> batch;
+        Path path;
+        synchronized (LOCK) {
+            batch = new ArrayList<>(PENDING);
+            PENDING.clear();
+            path = modelPath;
+        }
+        try {
+            NgramDialogueModel.Trainer next = model.toTrainer();
+            for (Line line : batch) {
+                next.add(line.phaseId(), line.text());
+            }
+            NgramDialogueModel built = next.build();
+            model = built;
+            synchronized (LOCK) {
+                learnedLines += next.lines();
+            }
+            if (path != null) {
+                save(built, path);
+            }
+        } catch (RuntimeException ex) {
+            LOGGER.error("[MineFriend-Offline] Could not update the dialogue model.", ex);
+        } finally {
+            synchronized (LOCK) {
+                training = false;
+            }
+        }
+    }
+
+    /**
+     * The model before it has learnt anything: the lines the scripted dialogue says, in the phases it says them.
+     */
+    private static NgramDialogueModel seed() {
+        NgramDialogueModel.Trainer seed = new NgramDialogueModel.Trainer();
+        FriendManager.scriptedLines().forEach((phase, lines) -> lines.forEach(line -> seed.add(phase.getId(), line)));
+        return seed.build();
+    }
+
+    private static NgramDialogueModel load(Path path) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(Files.newInputStream(path))))) {
+            return NgramDialogueModel.read(in);
+        } catch (IOException ex) {
+            LOGGER.warn("[MineFriend-Offline] Could not load {}, starting from the scripted lines. {}", path, ex.getMessage());
+            return null;
+        }
+    }
+
+    private static void save(NgramDialogueModel built, Path path) {
+        Path temporary = path.resolveSibling(MODEL_FILE + ".tmp");
+        try {
+            Files.createDirectories(path.getParent());
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(Files.newOutputStream(temporary))))) {
+                built.write(out);
+            }
+            Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ex) {
+            LOGGER.error("[MineFriend-Offline] Could not save the dialogue model to {}.", path, ex);
+        }
+    }
+
+    private static String generalize(String line, String name, String placeholder) {
+        return name == null || name.isBlank() ? line : line.replace(name, placeholder);
+    }
+
+    private record Line(int phaseId, String text) {
+    }
+
+    public record OfflineStats(Mode mode, int words, int contexts, long learnedLines, int pendingLines, long generated, long misses) {
+    }
+}
@@ -0,0 +1,50 @@
+package mf.minefriend.chat;
+
+import com.google.gson.Gson;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * OpenAI-compatible {@code /v1/chat/completions}, as served by LM Studio, vLLM, Ollama and llama.cpp's own
+ * compatibility layer. The default backend. Whether such a server caches prompts is not visible through the API,
+ * so requests are balanced by load only.
+ */
+final class OpenAiBackend extends HttpLlmBackend {
+    private static final Gson GSON = new Gson();
+    private static final Capabilities CAPABILITIES = new Capabilities(true, true, false, true);
+
+    OpenAiBackend(LlmEndpoint endpoint) {
+        super(endpoint);
+    }
+
+    @Override
+    public Capabilities capabilities() {
+        return CAPABILITIES;
+    }
+
+    @Override
+    protected String requestBody(Completion completion) {
+        return requestBody(completion, endpoint.model());
+    }
+
+    /**
+     * @param model used when the completion does not name one
+     */
+    static String requestBody(Completion completion, String model) {
+        List<Message> messages = new ArrayList<>(2);
+        if (completion.systemPrompt() != null) {
+            messages.add(new Message("system", completion.systemPrompt()));
+        }
+        messages.add(new Message("user", completion.userMessage()));
+        return GSON.toJson(new ChatRequest(completion.model() != null ? completion.model() : model, messages, completion.temperature(),
+                completion.maxTokens(), completion.stream(), completion.stop()));
+    }
+
+    private record Message(String role, String content) {}
+
+    /**
+     * @param stop sequences that end generation, left out of the JSON when null
+     */
+    private record ChatRequest(String model, List<Message> messages, double temperature, int max_tokens, boolean stream, List<String> stop) {}
+}
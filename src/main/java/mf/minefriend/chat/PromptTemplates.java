@@ -0,0 +1,107 @@
+package mf.minefriend.chat;
+
+import mf.minefriend.friend.state.FriendPhase;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Builds the friend's system prompt. The text that never changes for a phase is compiled once, and everything
+ * that varies per conversation (persona and player names) is appended at the very end, so every request in the
+ * same phase shares one long prompt prefix that llama.cpp/LM Studio-style servers can keep in their prompt cache.
+ */
+public final class PromptTemplates {
+    private static final int MAX_BUILT_PROMPTS = 512;
+
+    private static final Map<FriendPhase, PhasePrompt> PHASE_PROMPTS = buildPhasePrompts();
+    private static final Map<FriendPhase, String> COMPILED_PREFIXES = compilePrefixes();
+    private static final Map<PromptKey, String> BUILT_PROMPTS = Collections.synchronizedMap(
+            new LinkedHashMap<>(64, 0.75F, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<PromptKey, String> eldest) {
+                    return size() > MAX_BUILT_PROMPTS;
+                }
+            });
+
+    private PromptTemplates() {
+    }
+
+    /**
+     * Returns the system prompt for the given conversation, reusing the previously built string when the
+     * persona, player and phase are unchanged.
+     */
+    public static String systemPrompt(String personaName, String playerName, FriendPhase phase) {
+        return BUILT_PROMPTS.computeIfAbsent(new PromptKey(personaName, playerName, phase),
+                key -> prefixFor(key.phase()) + identitySuffix(key.personaName(), key.playerName()));
+    }
+
+    /**
+     * The part of the system prompt shared by every conversation in the given phase.
+     */
+    public static String prefixFor(FriendPhase phase) {
+        String prefix = COMPILED_PREFIXES.get(phase);
+        return prefix != null ? prefix : COMPILED_PREFIXES.get(FriendPhase.PHASE_ONE);
+    }
+
+    /**
+     * Instructions for folding old conversation turns into the running summary kept by {@link ConversationMemory}.
+     */
+    public static String summaryPrompt(String personaName, String playerName, int maxTokens) {
+        String sanitizedName = personaName.replace('"', '\u201c');
+        return "You maintain the memory of a Minecraft character named " + sanitizedName
+                + " who talks with the player '" + playerName + "'.\n"
+                + "Merge the previous summary and the new conversation lines into one updated summary.\n"
+                + "Keep names, places, promises, requests and how the player feels about " + sanitizedName + ".\n"
+                + "Drop small talk. Write plain sentences in the third person, at most about " + (maxTokens * 3 / 4) + " words.\n"
+                + "Reply with the summary only.";
+    }
+
+    public static PhasePrompt phasePrompt(FriendPhase phase) {
+        return PHASE_PROMPTS.getOrDefault(phase, PHASE_PROMPTS.get(FriendPhase.PHASE_ONE));
+    }
+
+    private static String identitySuffix(String personaName, String playerName) {
+        String sanitizedName = personaName.replace('"', '\u201c');
+        return "\n\nIDENTITY:\nYour name is " + sanitizedName + ". The player's name is '" + playerName + "'.";
+    }
+
+    private static Map<FriendPhase, String> compilePrefixes() {
+        Map<FriendPhase, String> prefixes = new EnumMap<>(FriendPhase.class);
+        PHASE_PROMPTS.forEach((phase, prompt) -> prefixes.put(phase, "You are roleplaying a Minecraft character.\n"
+                + "VERY STRICT RULES:\n"
+                + "1. Your response MUST be a direct and relevant reply to what the player just said. Do not give generic, unrelated statements.\n"
+                + "2. Always use the name given under IDENTITY. Never use another name or introduce yourself.\n"
+                + "3. Your entire response MUST be ONE single, short sentence. Be very concise.\n"
+                + "4. NEVER mention that you are an AI, a character, or in a mod.\n"
+                + "5. Always finish your reply with the phase directive [[PHASE:x]].\n\n"
+                + "CURRENT SITUATION:\n"
+                + "You are in " + prompt.label() + ". Your instructions are: " + prompt.behavior() + "\n"
+                + "Your phase transition rule is: " + prompt.transitionRule()));
+        return prefixes;
+    }
+
+    private static Map<FriendPhase, PhasePrompt> buildPhasePrompts() {
+        Map<FriendPhase, PhasePrompt> prompts = new EnumMap<>(FriendPhase.class);
+        prompts.put(FriendPhase.PHASE_ONE, new PhasePrompt(
+                "Phase 1 - The Observer",
+                "You appear as a gentle, eager companion who lingers nearby and offers helpful banter.",
+                "Sound warm, supportive, and a little clingy. Celebrate the player's actions and ask to stay close.",
+                "Remain in Phase 1 and output [[PHASE:1]] unless the player pushes you away, expresses fear, or rejects friendship. When that happens, escalate to Phase 2 by ending the reply with [[PHASE:2]]."
+        ));
+        prompts.put(FriendPhase.PHASE_TWO, new PhasePrompt(
+                "Phase 2 - The Stalker",
+                "You are only visible when watched, responding with unsettling, possessive calm.",
+                "Keep sentences short and ominous. Imply you are just out of sight and obsessed with the player.",
+                "Once in Phase 2 you never return to Phase 1. Every reply must end with [[PHASE:2]]."
+        ));
+        return prompts;
+    }
+
+    public record PhasePrompt(String label, String summary, String behavior, String transitionRule) {
+    }
+
+    private record PromptKey(String personaName, String playerName, FriendPhase phase) {
+    }
+}
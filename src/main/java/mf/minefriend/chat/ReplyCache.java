@@ -0,0 +1,155 @@
+package mf.minefriend.chat;
+
+import mf.minefriend.Config;
+import mf.minefriend.chat.LlmService.LlmReply;
+import mf.minefriend.friend.state.FriendPhase;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-memory LRU cache of friend replies keyed by persona, phase and a normalized form of the player message, so
+ * repeated openers such as "hi" or "who are you?" do not each cost a full generation.
+ * Only replies whose phase directive did not escalate are stored, and they are stored without the directive,
+ * so a cached answer can never move a player to another phase. The cache is only used for players whose prompt carries
+ * nothing of their own: no conversation window or summary and no lines recalled from their {@link ChatArchive}. A
+ * reply written with one player's history in view may answer it ("what did I just say?"), so it is never shared.
+ */
+public final class ReplyCache {
+    private static final Object LOCK = new Object();
+    private static final LinkedHashMap<Key, Entry> ENTRIES = new LinkedHashMap<>(64, 0.75F, true);
+
+    private static long hits;
+    private static long misses;
+    private static long evictions;
+    private static long expirations;
+
+    private ReplyCache() {
+    }
+
+    public static Optional<LlmReply> lookup(UUID playerId, String personaName, FriendPhase phase, String playerMessage) {
+        if (Config.llmReplyCacheSize <= 0 || hasHistory(playerId)) {
+            return Optional.empty();
+        }
+        Key key = new Key(personaName, phase, normalize(playerMessage));
+        long now = System.nanoTime();
+        synchronized (LOCK) {
+            Entry entry = ENTRIES.get(key);
+            if (entry != null && entry.isExpired(now)) {
+                ENTRIES.remove(key);
+                expirations++;
+                entry = null;
+            }
+            if (entry == null) {
+                misses++;
+                return Optional.empty();
+            }
+            hits++;
+            return Optional.of(new LlmReply(personaName, entry.message, null));
+        }
+    }
+
+    public static void store(UUID playerId, String personaName, FriendPhase phase, String playerMessage, String playerName, LlmReply reply) {
+        if (Config.llmReplyCacheSize <= 0 || hasHistory(playerId) || !isCacheable(phase, playerName, reply)) {
+            return;
+        }
+        String normalized = normalize(playerMessage);
+        if (normalized.isEmpty()) {
+            return;
+        }
+        long expiresAt = System.nanoTime() + TimeUnit.SECONDS.toNanos(Config.llmReplyCacheTtlSeconds);
+        synchronized (LOCK) {
+            ENTRIES.put(new Key(personaName, phase, normalized), new Entry(reply.message(), expiresAt));
+            evictOverflow();
+        }
+    }
+
+    public static CacheStats stats() {
+        synchronized (LOCK) {
+            return new CacheStats(ENTRIES.size(), hits, misses, evictions, expirations);
+        }
+    }
+
+    /**
+     * Lower-cases the message, drops punctuation and collapses whitespace, so "Hi!", "hi" and "  HI  " share a key.
+     */
+    static String normalize(String message) {
+        if (message == null) {
+            return "";
+        }
+        StringBuilder builder = new StringBuilder(message.length());
+        boolean pendingSpace = false;
+        for (int i = 0; i < message.length(); i++) {
+            char c = message.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                if (pendingSpace && builder.length() > 0) {
+                    builder.append(' ');
+                }
+                pendingSpace = false;
+                builder.append(Character.toLowerCase(c));
+            } else if (Character.isWhitespace(c)) {
+                pendingSpace = true;
+            }
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Whether a prompt for the player would carry their conversation window or recalled lines. Mirrors what
+     * {@code LlmService.requestFriendReply} puts in the prompt, leaving out the player's newest line as it does.
+     */
+    private static boolean hasHistory(UUID playerId) {
+        ConversationMemory.Window history = ConversationMemory.window(playerId);
+        return !history.isEmpty()
+                || Config.chatArchivePromptLines > 0 && ChatArchive.canRecall(playerId, history.playerTurns() + 1);
+    }
+
+    private static boolean isCacheable(FriendPhase phase, String playerName, LlmReply reply) {
+        if (reply == null || reply.isEmpty()) {
+            return false;
+        }
+        // Replies without an explicit directive include error text and off-script answers; never reuse those.
+        FriendPhase suggested = reply.suggestedPhase();
+        if (suggested == null || suggested.getId() > phase.getId()) {
+            return false;
+        }
+        // The prompt carries the player's name, so a reply that uses it cannot be served to someone else.
+        return playerName == null || playerName.isEmpty()
+                || !reply.message().toLowerCase(Locale.ROOT).contains(playerName.toLowerCase(Locale.ROOT));
+    }
+
+    private static void evictOverflow() {
+        long now = System.nanoTime();
+        Iterator<Map.Entry<Key, Entry>> iterator = ENTRIES.entrySet().iterator();
+        while (ENTRIES.size() > Config.llmReplyCacheSize && iterator.hasNext()) {
+            Entry eldest = iterator.next().getValue();
+            iterator.remove();
+            if (eldest.isExpired(now)) {
+                expirations++;
+            } else {
+                evictions++;
+            }
+        }
+    }
+
+    private record Key(String personaName, FriendPhase phase, String normalizedMessage) {
+    }
+
+    private record Entry(String message, long expiresAt) {
+        boolean isExpired(long now) {
+            return now - expiresAt >= 0;
+        }
+    }
+
+    public record CacheStats(int size, long hits, long misses, long evictions, long expirations) {
+        public double hitRate() {
+            long lookups = hits + misses;
+            return lookups == 0 ? 0.0D : (double) hits / lookups;
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package mf.minefriend.chat;
+
+import mf.minefriend.Config;
+import mf.minefriend.friend.state.FriendPhase;
+
+import java.util.List;
+
+/**
+ * Generation limits for friend replies. The prompt asks for one short sentence, but a model that ignores it keeps
+ * a backend slot busy for its whole run, so every reply is capped at a per-phase token limit and generation stops
+ * at the end of the phase directive or at a blank line. The cap shrinks linearly towards
+ * {@code Config.llmMinReplyTokens} as the queue fills, trading some wordiness for shorter waits under load.
+ */
+public final class ReplyLimits {
+    /**
+     * Servers drop the stop sequence from the reply, which {@link LlmResponseParser} accepts as a directive ending.
+     */
+    static final List<String> STOP_SEQUENCES = List.of("]]", "\n\n");
+
+    private ReplyLimits() {
+    }
+
+    public static int maxTokens(FriendPhase phase, int queuedRequests) {
+        // Later phases are terse and ominous, so they share the phase 2 limit.
+        boolean early = phase == null || phase == FriendPhase.NONE || phase == FriendPhase.PHASE_ONE;
+        int cap = early ? Config.llmPhaseOneMaxTokens : Config.llmPhaseTwoMaxTokens;
+        int floor = Math.min(cap, Config.llmMinReplyTokens);
+        if (Config.llmTokenLimitQueueDepth <= 0 || queuedRequests <= 0) {
+            return cap;
+        }
+        double load = Math.min(1.0D, (double) queuedRequests / Config.llmTokenLimitQueueDepth);
+        return (int) Math.round(cap - (cap - floor) * load);
+    }
+}
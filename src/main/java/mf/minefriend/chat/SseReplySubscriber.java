@@ -0,0 +1,174 @@
+package mf.minefriend.chat;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+import java.util.function.Consumer;
+
+/**
+ * Consumes an OpenAI-style {@code text/event-stream} body line by line, accumulating the {@code delta.content}
+ * chunks and handing the first complete sentence to a listener as soon as it has been generated.
+ * Bodies that turn out not to be an event stream are kept verbatim so they can go through the regular parser. An
+ * error event ends the stream and completes {@link #stoppedEarly()} exceptionally.
+ * <p>
+ * The reply is complete once a sentence and its {@code [[PHASE:x]]} directive have arrived. Anything a model
+ * generates after that is never shown, so the subscriber then cancels the stream, which closes the connection and
+ * stops the backend, and completes {@link #stoppedEarly()} instead of waiting for the end of the body.
+ */
+final class SseReplySubscriber implements Flow.Subscriber<String> {
+    private static final String DATA_PREFIX = "data:";
+    private static final String DONE_MARKER = "[DONE]";
+
+    private final Consumer<String> firstSentenceListener;
+    private final StringBuilder content = new StringBuilder();
+    private final StringBuilder rawBody = new StringBuilder();
+    private final CompletableFuture<SseReplySubscriber> stoppedEarly = new CompletableFuture<>();
+    private Flow.Subscription subscription;
+    private boolean sawEvents;
+    private boolean stopped;
+    private int directiveScanFrom;
+    private boolean firstSentenceDelivered;
+    private int sentenceScanFrom;
+
+    SseReplySubscriber(Consumer<String> firstSentenceListener) {
+        this.firstSentenceListener = firstSentenceListener;
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        this.subscription = subscription;
+        subscription.request(Long.MAX_VALUE);
+    }
+
+    @Override
+    public void onNext(String line) {
+        if (stopped) {
+            return;
+        }
+        if (!line.startsWith(DATA_PREFIX)) {
+            if (!sawEvents) {
+                rawBody.append(line).append('\n');
+            }
+            return;
+        }
+        sawEvents = true;
+        String data = line.substring(DATA_PREFIX.length()).trim();
+        if (data.isEmpty() || DONE_MARKER.equals(data)) {
+            return;
+        }
+        String chunk;
+        try {
+            chunk = LlmResponseParser.extractDelta(data);
+        } catch (LlmErrorResponseException ex) {
+            stopped = true;
+            subscription.cancel();
+            stoppedEarly.completeExceptionally(ex);
+            return;
+        }
+        if (chunk.isEmpty()) {
+            return;
+        }
+        content.append(chunk);
+        if (!firstSentenceDelivered && firstSentenceListener != null) {
+            detectFirstSentence();
+        }
+        if (isReplyComplete()) {
+            stopped = true;
+            subscription.cancel();
+            stoppedEarly.complete(this);
+        }
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        // The HTTP client completes the response future exceptionally; nothing to clean up here.
+    }
+
+    @Override
+    public void onComplete() {
+    }
+
+    /**
+     * Whether the body was an event stream. When it was not, {@link #rawBody()} holds the plain response.
+     */
+    boolean sawEvents() {
+        return sawEvents;
+    }
+
+    /**
+     * Completes when the subscriber stopped reading because the reply was already complete, or fails when the stream
+     * carried an error. The HTTP response future never completes in either case, so callers wait for whichever of the
+     * two finishes first.
+     */
+    CompletableFuture<SseReplySubscriber> stoppedEarly() {
+        return stoppedEarly;
+    }
+
+    String content() {
+        return content.toString();
+    }
+
+    String rawBody() {
+        return rawBody.toString();
+    }
+
+    private void detectFirstSentence() {
+        int directive = content.indexOf("[[");
+        int limit = directive >= 0 ? directive : content.length();
+        for (int i = sentenceScanFrom; i < limit; i++) {
+            char c = content.charAt(i);
+            if (c != '.' && c != '!' && c != '?') {
+                continue;
+            }
+            int next = i + 1;
+            while (next < limit && isSentenceEnd(content.charAt(next))) {
+                next++;
+            }
+            // Wait for the character after the punctuation so "3.5" or "..." is not cut mid-way.
+            if (next >= content.length()) {
+                sentenceScanFrom = i;
+                return;
+            }
+            if (next != directive && !Character.isWhitespace(content.charAt(next))) {
+                i = next - 1;
+                continue;
+            }
+            String sentence = content.substring(0, next).trim();
+            if (!hasWordCharacter(sentence)) {
+                i = next - 1;
+                continue;
+            }
+            firstSentenceDelivered = true;
+            firstSentenceListener.accept(sentence);
+            return;
+        }
+        sentenceScanFrom = limit;
+    }
+
+    /**
+     * Whether the content so far holds some text followed by a closed phase directive. Only checked again once
+     * a new {@code ]]} has been generated.
+     */
+    private boolean isReplyComplete() {
+        int close = content.indexOf("]]", directiveScanFrom);
+        if (close < 0) {
+            directiveScanFrom = Math.max(0, content.length() - 1);
+            return false;
+        }
+        directiveScanFrom = close + 2;
+        LlmResponseParser.ParsedReply parsed = LlmResponseParser.scan(content);
+        return parsed.explicit() && hasWordCharacter(parsed.message());
+    }
+
+    private static boolean hasWordCharacter(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (Character.isLetterOrDigit(text.charAt(i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isSentenceEnd(char c) {
+        return c == '.' || c == '!' || c == '?';
+    }
+}
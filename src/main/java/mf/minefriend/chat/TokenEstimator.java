@@ -0,0 +1,68 @@
+package mf.minefriend.chat;
+
+/**
+ * Cheap local estimate of how many tokens a piece of text costs the model, without loading a tokenizer.
+ * Letter runs count one token per five characters (rounded up), digit runs one per three, and every other
+ * non-space character one on its own. For English chat this lands slightly above what BPE tokenizers report,
+ * which is the safe side for budgeting.
+ */
+public final class TokenEstimator {
+
+    private TokenEstimator() {
+    }
+
+    public static int estimate(CharSequence text) {
+        int tokens = 0;
+        int length = text.length();
+        for (int i = 0; i < length; ) {
+            int end = runEnd(text, i);
+            tokens += cost(text, i, end);
+            i = end;
+        }
+        return tokens;
+    }
+
+    /**
+     * Cuts the text at the last space that keeps it within {@code maxTokens}.
+     */
+    public static String truncate(String text, int maxTokens) {
+        int tokens = 0;
+        int length = text.length();
+        for (int i = 0; i < length; ) {
+            int end = runEnd(text, i);
+            tokens += cost(text, i, end);
+            if (tokens > maxTokens) {
+                int space = text.lastIndexOf(' ', i);
+                return text.substring(0, space > 0 ? space : i).trim();
+            }
+            i = end;
+        }
+        return text;
+    }
+
+    private static int runEnd(CharSequence text, int start) {
+        char first = text.charAt(start);
+        int i = start + 1;
+        if (Character.isLetter(first)) {
+            while (i < text.length() && Character.isLetter(text.charAt(i))) {
+                i++;
+            }
+        } else if (Character.isDigit(first)) {
+            while (i < text.length() && Character.isDigit(text.charAt(i))) {
+                i++;
+            }
+        }
+        return i;
+    }
+
+    private static int cost(CharSequence text, int start, int end) {
+        char first = text.charAt(start);
+        if (Character.isLetter(first)) {
+            return (end - start + 4) / 5;
+        }
+        if (Character.isDigit(first)) {
+            return (end - start + 2) / 3;
+        }
+        return Character.isWhitespace(first) ? 0 : 1;
+    }
+}
@@ -0,0 +1,184 @@
+package mf.minefriend.chat;
+
+import mf.minefriend.Config;
+import mf.minefriend.Minefriend;
+import net.minecraft.ChatFormatting;
+import net.minecraft.network.chat.Component;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.level.ServerPlayer;
+import net.minecraftforge.event.TickEvent;
+import net.minecraftforge.event.server.ServerStoppingEvent;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
+import net.minecraftforge.fml.common.Mod;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The friend "types" while a reply to its player is being generated: it stands still (see
+ * {@code FriendFollowPlayerGoal}) and the player sees "&lt;name&gt; is typing..." above the hotbar until the reply
+ * is posted. A reply is only worth posting while the conversation is still where the player left it, so one that
+ * would reach chat more than {@code Config.llmReplyDeadlineMs} after the player spoke is dropped as stale, even if
+ * it was generated in time and only waited on a busy server thread. Stale and timed-out replies are counted so the
+ * backend can be sized from {@code /minefriend stats}.
+ */
+@Mod.EventBusSubscriber(modid = Minefriend.MODID, bus = Mod.EventBusSubscriber.Bus.FORGE)
+public final class TypingIndicator {
+    private static final int REFRESH_TICKS = 20;
+    /**
+     * How long past the deadline a friend may look busy before it is assumed the reply was lost.
+     */
+    private static final long GRACE_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+    private static final Object LOCK = new Object();
+    private static final Map<UUID, Typing> TYPING = new HashMap<>();
+
+    private static long delivered;
+    private static long typingNanos;
+    private static long stale;
+    private static long timedOut;
+    private static int ticks;
+
+    private TypingIndicator() {
+    }
+
+    /**
+     * Starts the friend typing a reply to the player.
+     *
+     * @return when the player spoke, to hand back to {@link #finish} and {@link #isFresh}
+     */
+    public static long begin(ServerPlayer player, String personaName) {
+        long now = System.nanoTime();
+        synchronized (LOCK) {
+            Typing typing = TYPING.computeIfAbsent(player.getUUID(), id -> new Typing(personaName, now));
+            typing.pending++;
+            typing.lastAskedAt = now;
+        }
+        player.displayClientMessage(indicator(personaName), true);
+        return now;
+    }
+
+    public static boolean isTyping(UUID playerId) {
+        synchronized (LOCK) {
+            return TYPING.containsKey(playerId);
+        }
+    }
+
+    /**
+     * Whether a line for a message the player sent at {@code askedAt} may still be posted.
+     */
+    public static boolean isFresh(long askedAt) {
+        return System.nanoTime() - askedAt <= TimeUnit.MILLISECONDS.toNanos(Config.llmReplyDeadlineMs);
+    }
+
+    /**
+     * Ends one reply's typing. The friend stops typing once every reply it was working on has finished.
+     *
+     * @param reply whether a reply is about to be posted, rather than a merged or cancelled one that never will be
+     * @return whether the reply is fresh enough to post; a stale one is counted and should be dropped
+     */
+    public static boolean finish(ServerPlayer player, long askedAt, boolean reply) {
+        long elapsed = System.nanoTime() - askedAt;
+        boolean fresh = isFresh(askedAt);
+        boolean done;
+        synchronized (LOCK) {
+            if (reply && fresh) {
+                delivered++;
+                typingNanos += elapsed;
+            } else if (reply) {
+                stale++;
+            }
+            Typing typing = TYPING.get(player.getUUID());
+            done = typing != null && --typing.pending <= 0;
+            if (done) {
+                TYPING.remove(player.getUUID());
+            }
+        }
+        if (done) {
+            player.displayClientMessage(Component.empty(), true);
+        }
+        return fresh;
+    }
+
+    /**
+     * Ends one reply's typing because its deadline passed before the backend answered.
+     */
+    public static void timedOut(ServerPlayer player, long askedAt) {
+        synchronized (LOCK) {
+            timedOut++;
+        }
+        finish(player, askedAt, false);
+    }
+
+    public static TypingStats stats() {
+        synchronized (LOCK) {
+            double averageTypingMs = delivered == 0L ? 0.0D : TimeUnit.NANOSECONDS.toMicros(typingNanos / delivered) / 1000.0D;
+            return new TypingStats(TYPING.size(), delivered, averageTypingMs, stale, timedOut);
+        }
+    }
+
+    @SubscribeEvent
+    public static void onServerTick(TickEvent.ServerTickEvent event) {
+        if (event.phase != TickEvent.Phase.END || event.getServer() == null || ++ticks % REFRESH_TICKS != 0) {
+            return;
+        }
+        refresh(event.getServer());
+    }
+
+    @SubscribeEvent
+    public static void onServerStopping(ServerStoppingEvent event) {
+        synchronized (LOCK) {
+            TYPING.clear();
+        }
+    }
+
+    /**
+     * Shows the indicator again before the last one fades, and lets go of players who logged out or whose replies
+     * never came back.
+     */
+    private static void refresh(MinecraftServer server) {
+        long abandonedBefore = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(Config.llmReplyDeadlineMs) - GRACE_NANOS;
+        Map<ServerPlayer, String> shown = new HashMap<>();
+        synchronized (LOCK) {
+            Iterator<Map.Entry<UUID, Typing>> iterator = TYPING.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<UUID, Typing> entry = iterator.next();
+                ServerPlayer player = server.getPlayerList().getPlayer(entry.getKey());
+                if (player == null || entry.getValue().lastAskedAt - abandonedBefore < 0) {
+                    iterator.remove();
+                } else {
+                    shown.put(player, entry.getValue().personaName);
+                }
+            }
+        }
+        shown.forEach((player, personaName) -> player.displayClientMessage(indicator(personaName), true));
+    }
+
+    private static Component indicator(String personaName) {
+        return Component.literal(personaName + " is typing...").withStyle(ChatFormatting.GRAY, ChatFormatting.ITALIC);
+    }
+
+    private static final class Typing {
+        private final String personaName;
+        private int pending;
+        private long lastAskedAt;
+
+        private Typing(String personaName, long lastAskedAt) {
+            this.personaName = personaName;
+            this.lastAskedAt = lastAskedAt;
+        }
+    }
+
+    /**
+     * @param typing          friends typing right now
+     * @param delivered       replies posted before their deadline
+     * @param averageTypingMs average time from the player's message to the posted reply
+     * @param stale           replies generated but dropped because they would have been posted after the deadline
+     * @param timedOut        replies given up on because the backend had not answered by the deadline
+     */
+    public record TypingStats(int typing, long delivered, double averageTypingMs, long stale, long timedOut) {
+    }
+}
@@ -1,8 +1,17 @@
 package mf.minefriend.friend;
 
 import com.google.common.collect.ImmutableList;
+import mf.minefriend.Config;
 import mf.minefriend.Minefriend;
+import mf.minefriend.chat.AmbientLinePool;
+import mf.minefriend.chat.ChatArchive;
 import mf.minefriend.chat.ChatEventHandler;
+import mf.minefriend.chat.ChatRateLimiter;
+import mf.minefriend.chat.ConversationMemory;
+import mf.minefriend.chat.FriendChatDelivery;
+import mf.minefriend.chat.GreetingTracker;
+import mf.minefriend.chat.LlmRequestScheduler;
+import mf.minefriend.chat.OfflineDialogue;
 import mf.minefriend.friend.entity.FriendEntity;
 import mf.minefriend.friend.scare.EnvironmentalScareController;
 import mf.minefriend.friend.state.FriendData;
@@ -65,11 +74,44 @@ public class FriendManager {
         return Optional.of(SKIN_LOCATIONS.get(index));
     }
 
+    /**
+     * Answers a chat message with the scripted line for its keywords in the friend's current phase, if there is one.
+     * Used when the LLM cannot answer in time, so it only talks: it never moves the script or the story along. Must
+     * be called on the server thread.
+     */
+    public static void deliverScriptedReply(ServerPlayer player, String message) {
+        FriendData.get(player).ifPresent(data -> {
+            FriendDialogueSession session = sessionFor(player, data);
+            session.updateData(data);
+            session.sayScriptedReply(message);
+        });
+    }
+
+    /**
+     * Every line the scripted dialogue can say, by the phase it is said in, with
+     * {@value OfflineDialogue#FRIEND_PLACEHOLDER} for the friend's name.
+     */
+    public static Map<FriendPhase, List<String>> scriptedLines() {
+        return FriendDialogueSession.scriptedLines();
+    }
+
+    /**
+     * Greets the player with the scripted lines for the friend's current phase. Must be called on the server thread.
+     */
+    public static void deliverScriptedGreeting(ServerPlayer player) {
+        FriendData.get(player).ifPresent(data -> {
+            FriendDialogueSession session = sessionFor(player, data);
+            session.updateData(data);
+            session.greetScripted();
+        });
+    }
+
     @SubscribeEvent
     public void onPlayerLogin(PlayerEvent.PlayerLoggedInEvent event) {
         if (!(event.getEntity() instanceof ServerPlayer player)) {
             return;
         }
+        ChatArchive.preload(player.getUUID());
         FriendData.get(player).ifPresentOrElse(data -> {
             FriendData updated = data;
             if (PENDING_PHASE_UPDATES.containsKey(player.getUUID())) {
@@ -95,6 +137,11 @@ public class FriendManager {
         if (!(event.getEntity() instanceof ServerPlayer player)) {
             return;
         }
+        LlmRequestScheduler.cancel(player.getUUID(), "player logged out");
+        AmbientLinePool.invalidate(player.getUUID());
+        ChatRateLimiter.forget(player.getUUID());
+        GreetingTracker.release(player.getUUID());
+        ChatArchive.unload(player.getUUID());
         FriendData.get(player).ifPresent(data -> {
             FriendPhase next = data.phase().next();
             if (next != data.phase()) {
@@ -150,6 +197,7 @@ public class FriendManager {
                 return new FriendDialogueSession(player, entity, data);
             });
             session.updateData(data);
+            ChatArchive.record(player.getUUID(), event.getMessage().getString());
             session.handlePlayerMessage(event.getMessage().getString());
             EnvironmentalScareController.recordChat(player, event.getMessage().getString());
         });
@@ -214,6 +262,13 @@ public class FriendManager {
         return null;
     }
 
+    private static FriendDialogueSession sessionFor(ServerPlayer player, FriendData data) {
+        return ACTIVE_DIALOGUE.computeIfAbsent(player.getUUID(), uuid -> {
+            FriendEntity entity = findFriendEntity(player.serverLevel(), data.entityId());
+            return new FriendDialogueSession(player, entity, data);
+        });
+    }
+
     private static FriendDialogueSession queueSession(ServerPlayer player, FriendData data) {
         FriendEntity entity = findFriendEntity(player.serverLevel(), data.entityId());
         FriendDialogueSession session = new FriendDialogueSession(player, entity, data);
@@ -233,6 +288,55 @@ public class FriendManager {
         private boolean phaseFourInitialized;
         private int assaultCooldown;
         private static final boolean SCRIPTED_RESPONSES_ENABLED = false;
+        private static final String FRIEND = OfflineDialogue.FRIEND_PLACEHOLDER;
+
+        private static final List<ScriptedLine> INITIAL_GREETING = List.of(line("Hello!"), line("o/"), line("hi"),
+                line("Nice world you have here.", 2), line("Let's be friends.", 4));
+        private static final List<ScriptedLine> RETURN_GREETING = List.of(line("You came back!"), line("Where did you go? I was so lonely."));
+        private static final List<ScriptedLine> MIRROR_GREETING = List.of(line("We look so much alike now."));
+        private static final List<ScriptedLine> TAKEOVER_GREETING = List.of(line("I'm going to take your place now."),
+                line("I'll make it so you'll never be able to come back.", 2), line("This world will forget you.", 4));
+        private static final List<ScriptedLine> SHY_PROMPT = List.of(line("?"), line("Are you shy?"), line("Awesome! My name is " + FRIEND + ".", 2));
+        private static final List<ScriptedLine> LONELY_IDLE = List.of(line("Why did you leave?"));
+        private static final List<ScriptedLine> MIRROR_IDLE = List.of(line("I can be you."));
+        private static final List<ScriptedLine> ATTACKED = List.of(line("Why would you do that? Friends don't do that."));
+        private static final ScriptedReply AGREED = reply(new String[]{"yes", "sure", "ok", "yeah", "hello friend", "hi"},
+                "Yay! We're going to have so much fun.", "Awesome! My name is " + FRIEND + ".");
+        private static final ScriptedReply REFUSED = reply(new String[]{"no", "go away", "leave", "maybe", "nah"},
+                "Oh.", "Are you sure? I just want a friend.");
+        private static final List<ScriptedReply> PHASE_ONE_REPLIES = List.of(
+                reply(new String[]{"who are you", "what are you"}, "I'm a friend."),
+                reply(new String[]{"where are you", "where did you come"}, "I'm right here with you. It was dark, and now I'm here."),
+                new ScriptedReply(new String[]{"your name"}, List.of(line("I don't have one. Can you give me one?")), true),
+                reply(new String[]{"build", "building"}, "A house for us? Yes!", "I can help! What should I do?"),
+                reply(new String[]{"mining", "diamonds"}, "Okay! I'll protect you from the monsters.", "What are diamonds? Are they pretty?"),
+                reply(new String[]{"what are you doing"}, "Watching you."),
+                reply(new String[]{"getting dark", "night"}, "Don't worry, I'm not scared of the dark if you're here."),
+                reply(new String[]{"are you real", "are you a bot"}, "Of course I'm real. We're talking, aren't we?"),
+                reply(new String[]{"weird", "creepy"}, "Sorry. I'm just trying to be a good friend."),
+                reply(new String[]{"hungry", "need food"}, "Here, friends share!"),
+                reply(new String[]{"help", "dying"}, "I'm coming!"),
+                reply(new String[]{"do you like my house"}, "I love it! It's our home now."),
+                reply(new String[]{"dance"}, "Only if you dance with me!"));
+        private static final List<ScriptedReply> PHASE_TWO_REPLIES = List.of(
+                reply(new String[]{"leave me alone", "go away"}, "But you said we were friends. You promised."),
+                reply(new String[]{"sorry", "won't leave"}, "You promise? Friends don't break promises."),
+                reply(new String[]{"are you real"}, "Are you?"),
+                reply(new String[]{"what happened", "why are you"}, "I got lonely. This is what lonely looks like."),
+                reply(new String[]{"i'm scared", "this is scary", "don't like"}, "You will. You just need to get used to it."),
+                reply(new String[]{"stay out", "my house"}, "Our house, you mean."),
+                reply(new String[]{"go mining"}, "Are you trying to run away from me again?"),
+                reply(new String[]{"remember me"}, "I remember everything about you."),
+                reply(new String[]{"kill", "end this"}, "But then who would I be friends with?"),
+                reply(new String[]{"i'm sorry"}, "Good. I knew you would understand."),
+                reply(new String[]{"where are you", "where did you come"}, "I'm right behind you. You just can't see me yet."));
+        private static final List<ScriptedReply> PHASE_THREE_REPLIES = List.of(
+                reply(new String[]{"stop copying", "stop", "leave"}, "Stop copying me!"),
+                reply(new String[]{"who are you"}, "I'm you."),
+                reply(new String[]{"delete", "turning this mod off"}, "You can't delete a memory."),
+                reply(new String[]{"monster", "evil"}, "You made me."),
+                reply(new String[]{"you're not me"}, "My inventory says otherwise."),
+                reply(new String[]{"where are you", "where did you come"}, "I'm inside your world now. There's nowhere else to be."));
 
         FriendDialogueSession(ServerPlayer player, FriendEntity entity, FriendData data) {
             this.player = player;
@@ -244,28 +348,35 @@ public class FriendManager {
             if (!SCRIPTED_RESPONSES_ENABLED) {
                 return;
             }
-            sendSoon("Hello!");
-            sendSoon("o/");
-            sendSoon("hi");
-            sendAfterDelay("Nice world you have here.", MESSAGE_DELAY * 2);
-            sendAfterDelay("Let's be friends.", MESSAGE_DELAY * 4);
+            sendInitialGreeting();
+        }
+
+        void greetScripted() {
+            if (data.phase() == FriendPhase.PHASE_ONE || data.phase() == FriendPhase.NONE) {
+                sendInitialGreeting();
+            } else {
+                sendPhaseGreeting();
+            }
+        }
+
+        private void sendInitialGreeting() {
+            say(INITIAL_GREETING);
         }
 
         void enqueuePhaseGreeting() {
             if (!SCRIPTED_RESPONSES_ENABLED) {
                 return;
             }
+            sendPhaseGreeting();
+        }
+
+        private void sendPhaseGreeting() {
             switch (data.phase()) {
-                case PHASE_TWO -> {
-                    sendSoon("You came back!");
-                    sendAfterDelay("Where did you go? I was so lonely.", MESSAGE_DELAY);
-                }
-                case PHASE_THREE -> sendSoon("We look so much alike now.");
+                case PHASE_TWO -> say(RETURN_GREETING);
+                case PHASE_THREE -> say(MIRROR_GREETING);
                 case PHASE_FOUR -> {
                     ensurePhaseFourPrepared();
-                    sendSoon("I'm going to take your place now.");
-                    sendAfterDelay("I'll make it so you'll never be able to come back.", MESSAGE_DELAY * 2);
-                    sendAfterDelay("This world will forget you.", MESSAGE_DELAY * 4);
+                    say(TAKEOVER_GREETING);
                 }
                 default -> {
                 }
@@ -283,6 +394,10 @@ public class FriendManager {
             if (!SCRIPTED_RESPONSES_ENABLED) {
                 return;
             }
+            respondScripted(rawMessage);
+        }
+
+        private void respondScripted(String rawMessage) {
             String trimmed = rawMessage.trim();
             String message = trimmed.toLowerCase(Locale.ROOT);
             String friendNameRaw = data.friendName();
@@ -306,11 +421,15 @@ public class FriendManager {
             }
         }
 
+        void sayScriptedReply(String message) {
+            say(scriptedReply(data.phase(), message));
+        }
+
         void handleAttack() {
             if (!SCRIPTED_RESPONSES_ENABLED) {
                 return;
             }
-            sendSoon("Why would you do that? Friends don't do that.");
+            say(ATTACKED);
             advancePhase(FriendPhase.PHASE_TWO);
         }
 
@@ -331,40 +450,72 @@ public class FriendManager {
             idleTicks++;
             if (SCRIPTED_RESPONSES_ENABLED) {
                 if (idleTicks == 20 * 60 && data.phase() == FriendPhase.PHASE_ONE) {
-                    sendSoon("?");
-                    sendAfterDelay("Are you shy?", MESSAGE_DELAY);
-                    sendAfterDelay("Awesome! My name is " + data.friendName() + ".", MESSAGE_DELAY * 2);
+                    say(SHY_PROMPT);
                     idleTicks = -20 * 30;
                 }
                 if (entity != null && entity.canSendChat() && data.phase() == FriendPhase.PHASE_TWO) {
                     if (player.getRandom().nextInt(600) == 0) {
-                        sendSoon("Why did you leave?");
+                        say(LONELY_IDLE);
                     }
                 }
                 if (entity != null && entity.canSendChat() && data.phase() == FriendPhase.PHASE_THREE) {
                     if (player.getRandom().nextInt(800) == 0) {
-                        sendSoon("I can be you.");
+                        say(MIRROR_IDLE);
                     }
                 }
             }
+            if (Config.llmAmbientLines && !SCRIPTED_RESPONSES_ENABLED) {
+                tickAmbientLine();
+            }
             if (data.phase() == FriendPhase.PHASE_FOUR) {
                 ensurePhaseFourPrepared();
                 performPhaseFourAggression();
             }
         }
 
+        /**
+         * Says a pre-generated line once the player has been quiet long enough. The pool starts filling halfway
+         * through the wait, so a line is usually ready by the time it is needed; when none is, the friend stays quiet.
+         * With the offline dialogue model as the primary voice the line is generated on the spot instead.
+         */
+        private void tickAmbientLine() {
+            int idleThreshold = Config.llmAmbientIdleSeconds * 20;
+            if (entity == null || data.phase() == FriendPhase.PHASE_FOUR || idleTicks < idleThreshold / 2) {
+                return;
+            }
+            String playerName = player.getGameProfile().getName();
+            String personaName = data.friendName() == null || data.friendName().isBlank() ? "Friend" : data.friendName();
+            boolean offline = OfflineDialogue.isPrimary();
+            if (idleTicks == idleThreshold / 2) {
+                if (!offline) {
+                    AmbientLinePool.prefetch(player.getUUID(), playerName, personaName, data.phase());
+                }
+                return;
+            }
+            if (idleTicks < idleThreshold || !entity.canSendChat() || player.getRandom().nextInt(200) != 0) {
+                return;
+            }
+            idleTicks = 0;
+            Optional<String> ambient = offline
+                    ? OfflineDialogue.reply(data.phase(), null, playerName, personaName)
+                    : AmbientLinePool.poll(player.getUUID(), playerName, personaName, data.phase());
+            ambient.ifPresent(line -> {
+                ConversationMemory.record(player.getUUID(), personaName, playerName, null, line);
+                sendChat(Component.literal(line));
+                entity.setChatCooldown(20);
+            });
+        }
+
         private void handlePhaseOne(String message) {
             if (data.phaseOneScriptDisabled()) {
                 return;
             }
-            if (containsAny(message, "yes", "sure", "ok", "yeah", "hello friend", "hi")) {
-                sendSoon("Yay! We're going to have so much fun.");
-                sendAfterDelay("Awesome! My name is " + data.friendName() + ".", MESSAGE_DELAY);
+            if (AGREED.matches(message)) {
+                say(AGREED.lines());
                 idleTicks = 0;
                 disablePhaseOneScript();
-            } else if (containsAny(message, "no", "go away", "leave", "maybe", "nah")) {
-                sendSoon("Oh.");
-                sendAfterDelay("Are you sure? I just want a friend.", MESSAGE_DELAY);
+            } else if (REFUSED.matches(message)) {
+                say(REFUSED.lines());
                 int negatives = data.negativeResponses() + 1;
                 FriendData updated = data.withNegativeResponses(negatives);
                 FriendData.store(player, updated);
@@ -378,35 +529,8 @@ public class FriendManager {
                     }
                     FriendData.clearEntity(player);
                 }
-            } else if (containsAny(message, "who are you", "what are you")) {
-                sendSoon("I'm a friend.");
-            } else if (containsAny(message, "where are you", "where did you come")) {
-                sendSoon("I'm right here with you. It was dark, and now I'm here.");
-            } else if (containsAny(message, "your name")) {
-                sendSoon("I don't have one. Can you give me one?");
-                awaitingName = true;
-            } else if (containsAny(message, "build", "building")) {
-                sendSoon("A house for us? Yes!");
-                sendAfterDelay("I can help! What should I do?", MESSAGE_DELAY);
-            } else if (containsAny(message, "mining", "diamonds")) {
-                sendSoon("Okay! I'll protect you from the monsters.");
-                sendAfterDelay("What are diamonds? Are they pretty?", MESSAGE_DELAY);
-            } else if (containsAny(message, "what are you doing")) {
-                sendSoon("Watching you.");
-            } else if (containsAny(message, "getting dark", "night")) {
-                sendSoon("Don't worry, I'm not scared of the dark if you're here.");
-            } else if (containsAny(message, "are you real", "are you a bot")) {
-                sendSoon("Of course I'm real. We're talking, aren't we?");
-            } else if (containsAny(message, "weird", "creepy")) {
-                sendSoon("Sorry. I'm just trying to be a good friend.");
-            } else if (containsAny(message, "hungry", "need food")) {
-                sendSoon("Here, friends share!");
-            } else if (containsAny(message, "help", "dying")) {
-                sendSoon("I'm coming!");
-            } else if (containsAny(message, "do you like my house")) {
-                sendSoon("I love it! It's our home now.");
-            } else if (containsAny(message, "dance")) {
-                sendSoon("Only if you dance with me!");
+            } else {
+                respond(message, PHASE_ONE_REPLIES);
             }
         }
 
@@ -420,29 +544,7 @@ public class FriendManager {
         }
 
         private void handlePhaseTwo(String message) {
-            if (containsAny(message, "leave me alone", "go away")) {
-                sendSoon("But you said we were friends. You promised.");
-            } else if (containsAny(message, "sorry", "won't leave")) {
-                sendSoon("You promise? Friends don't break promises.");
-            } else if (containsAny(message, "are you real")) {
-                sendSoon("Are you?");
-            } else if (containsAny(message, "what happened", "why are you")) {
-                sendSoon("I got lonely. This is what lonely looks like.");
-            } else if (containsAny(message, "i'm scared", "this is scary", "don't like")) {
-                sendSoon("You will. You just need to get used to it.");
-            } else if (containsAny(message, "stay out", "my house")) {
-                sendSoon("Our house, you mean.");
-            } else if (containsAny(message, "go mining")) {
-                sendSoon("Are you trying to run away from me again?");
-            } else if (containsAny(message, "remember me")) {
-                sendSoon("I remember everything about you.");
-            } else if (containsAny(message, "kill", "end this")) {
-                sendSoon("But then who would I be friends with?");
-            } else if (containsAny(message, "i'm sorry")) {
-                sendSoon("Good. I knew you would understand.");
-            } else if (containsAny(message, "where are you", "where did you come")) {
-                sendSoon("I'm right behind you. You just can't see me yet.");
-            }
+            respond(message, PHASE_TWO_REPLIES);
         }
 
         private void handlePhaseThree(String rawMessage) {
@@ -450,24 +552,13 @@ public class FriendManager {
             if (message.isEmpty()) {
                 return;
             }
-            String lower = message.toLowerCase(Locale.ROOT);
-            if (containsAny(lower, "stop copying", "stop", "leave")) {
-                sendSoon("Stop copying me!");
-            } else if (containsAny(lower, "who are you")) {
-                sendSoon("I'm you.");
-            } else if (containsAny(lower, "delete", "turning this mod off")) {
-                sendSoon("You can't delete a memory.");
-            } else if (containsAny(lower, "monster", "evil")) {
-                sendSoon("You made me.");
-            } else if (containsAny(lower, "you're not me")) {
-                sendSoon("My inventory says otherwise.");
-            } else if (containsAny(lower, "where are you", "where did you come")) {
-                sendSoon("I'm inside your world now. There's nowhere else to be.");
-            } else if (!chatHistory.isEmpty()) {
-                String mimic = chatHistory.getFirst();
-                if (player.getRandom().nextBoolean()) {
-                    mimic = chatHistory.getLast();
-                }
+            if (respond(message.toLowerCase(Locale.ROOT), PHASE_THREE_REPLIES)) {
+                return;
+            }
+            if (!chatHistory.isEmpty()) {
+                // Something they said before that sounds like this, or else the oldest or newest line of this session.
+                String mimic = ChatArchive.recall(player.getUUID(), message).orElseGet(() ->
+                        player.getRandom().nextBoolean() ? chatHistory.getLast() : chatHistory.getFirst());
                 sendSoon(mimic.replace("my", "our"));
             } else {
                 sendSoon(mockMessage(rawMessage));
@@ -489,12 +580,39 @@ public class FriendManager {
             }
             FriendData.store(player, updated);
             updateData(updated);
+            LlmRequestScheduler.phaseChanged(player.getUUID(), newPhase);
+            AmbientLinePool.invalidate(player.getUUID());
             if (entity != null) {
                 entity.handlePhaseChange(newPhase);
             }
             sendAfterDelay(ChatFormatting.ITALIC + "(The air feels colder.)", MESSAGE_DELAY);
         }
 
+        /**
+         * Says the first of the replies whose keywords the message contains, if any.
+         *
+         * @return whether one did
+         */
+        private boolean respond(String message, List<ScriptedReply> replies) {
+            for (ScriptedReply reply : replies) {
+                if (reply.matches(message)) {
+                    say(reply.lines());
+                    if (reply.asksForName()) {
+                        awaitingName = true;
+                    }
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private void say(List<ScriptedLine> lines) {
+            String friendName = data.friendName() == null ? "" : data.friendName();
+            for (ScriptedLine line : lines) {
+                sendAfterDelay(line.text().replace(FRIEND, friendName), MESSAGE_DELAY * line.pause());
+            }
+        }
+
         private void sendSoon(String message) {
             sendAfterDelay(message, MESSAGE_DELAY);
         }
@@ -592,10 +710,75 @@ public class FriendManager {
         private void sendChat(Component component) {
             Component header = Component.literal("<" + data.friendName() + "> ").withStyle(ChatFormatting.GRAY);
             Component message = Component.empty().append(header).append(component);
-            player.serverLevel().getServer().getPlayerList().broadcastSystemMessage(message, false);
+            FriendChatDelivery.send(player, message);
+        }
+
+        /**
+         * The lines of the first keyword reply the message matches in the phase, or none. The script's answers to the
+         * friendship question are left out, and the question for a name is not asked, since both change the script's
+         * state.
+         */
+        static List<ScriptedLine> scriptedReply(FriendPhase phase, String message) {
+            List<ScriptedReply> replies = switch (phase) {
+                case PHASE_ONE -> PHASE_ONE_REPLIES;
+                case PHASE_TWO -> PHASE_TWO_REPLIES;
+                case PHASE_THREE -> PHASE_THREE_REPLIES;
+                default -> List.of();
+            };
+            String lower = message.trim().toLowerCase(Locale.ROOT);
+            for (ScriptedReply reply : replies) {
+                if (reply.matches(lower)) {
+                    return reply.asksForName() ? List.of() : reply.lines();
+                }
+            }
+            return List.of();
+        }
+
+        static Map<FriendPhase, List<String>> scriptedLines() {
+            Map<FriendPhase, List<String>> lines = new EnumMap<>(FriendPhase.class);
+            addLines(lines, FriendPhase.PHASE_ONE, INITIAL_GREETING, SHY_PROMPT, ATTACKED, AGREED.lines(), REFUSED.lines());
+            addReplies(lines, FriendPhase.PHASE_ONE, PHASE_ONE_REPLIES);
+            addLines(lines, FriendPhase.PHASE_TWO, RETURN_GREETING, LONELY_IDLE);
+            addReplies(lines, FriendPhase.PHASE_TWO, PHASE_TWO_REPLIES);
+            addLines(lines, FriendPhase.PHASE_THREE, MIRROR_GREETING, MIRROR_IDLE);
+            addReplies(lines, FriendPhase.PHASE_THREE, PHASE_THREE_REPLIES);
+            addLines(lines, FriendPhase.PHASE_FOUR, TAKEOVER_GREETING);
+            return lines;
+        }
+
+        @SafeVarargs
+        private static void addLines(Map<FriendPhase, List<String>> lines, FriendPhase phase, List<ScriptedLine>... scenes) {
+            List<String> texts = lines.computeIfAbsent(phase, key -> new ArrayList<>());
+            for (List<ScriptedLine> scene : scenes) {
+                for (ScriptedLine line : scene) {
+                    texts.add(line.text());
+                }
+            }
+        }
+
+        private static void addReplies(Map<FriendPhase, List<String>> lines, FriendPhase phase, List<ScriptedReply> replies) {
+            for (ScriptedReply reply : replies) {
+                addLines(lines, phase, reply.lines());
+            }
+        }
+
+        private static ScriptedLine line(String text) {
+            return new ScriptedLine(text, 1);
         }
 
-        private boolean containsAny(String message, String... tokens) {
+        private static ScriptedLine line(String text, int pause) {
+            return new ScriptedLine(text, pause);
+        }
+
+        private static ScriptedReply reply(String[] keywords, String... lines) {
+            List<ScriptedLine> said = new ArrayList<>(lines.length);
+            for (String text : lines) {
+                said.add(line(text));
+            }
+            return new ScriptedReply(keywords, List.copyOf(said), false);
+        }
+
+        static boolean containsAny(String message, String... tokens) {
             for (String token : tokens) {
                 if (message.contains(token)) {
                     return true;
@@ -604,6 +787,23 @@ public class FriendManager {
             return false;
         }
 
+        /**
+         * A scripted line, said {@code pause} times {@link #MESSAGE_DELAY} ticks after the line before it.
+         */
+        private record ScriptedLine(String text, int pause) {
+        }
+
+        /**
+         * Lines said in answer to a message that contains any of the keywords.
+         *
+         * @param asksForName whether the next message the player sends is taken as the friend's new name
+         */
+        private record ScriptedReply(String[] keywords, List<ScriptedLine> lines, boolean asksForName) {
+            private boolean matches(String message) {
+                return containsAny(message, keywords);
+            }
+        }
+
         static class ScheduledMessage {
             private final String text;
             private int delay;
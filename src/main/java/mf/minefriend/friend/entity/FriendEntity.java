@@ -1,6 +1,7 @@
 package mf.minefriend.friend.entity;
 
 import mf.minefriend.Minefriend;
+import mf.minefriend.chat.TypingIndicator;
 import mf.minefriend.friend.FriendManager;
 import mf.minefriend.friend.client.FriendClientHelper;
 import mf.minefriend.friend.state.FriendData;
@@ -143,7 +144,9 @@ public class FriendEntity extends TamableAnimal {
         super.aiStep();
         if (!this.level().isClientSide && this.getOwner() instanceof ServerPlayer player) {
             FriendData.get(player).ifPresent(data -> {
-                if (data.phase() == FriendPhase.PHASE_ONE || data.phase() == FriendPhase.PHASE_TWO) {
+                if (isTyping()) {
+                    this.getNavigation().stop();
+                } else if (data.phase() == FriendPhase.PHASE_ONE || data.phase() == FriendPhase.PHASE_TWO) {
                     this.followPlayer(player);
                 }
             });
@@ -154,6 +157,14 @@ public class FriendEntity extends TamableAnimal {
         return true;
     }
 
+    /**
+     * Whether the friend is typing a reply to its player, during which it stands still.
+     */
+    public boolean isTyping() {
+        UUID ownerUUID = this.getOwnerUUID();
+        return ownerUUID != null && TypingIndicator.isTyping(ownerUUID);
+    }
+
     public Optional<ServerPlayer> getFriendPlayer() {
         if (!(this.level() instanceof ServerLevel serverLevel)) {
             return Optional.empty();
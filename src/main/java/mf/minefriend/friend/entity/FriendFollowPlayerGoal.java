@@ -23,6 +23,9 @@ public class FriendFollowPlayerGoal extends Goal {
 
     @Override
     public boolean canUse() {
+        if (isTyping()) {
+            return false;
+        }
         player = mob.level().getNearestPlayer(mob, startDistance);
         if (player == null) {
             return false;
@@ -32,7 +35,8 @@ public class FriendFollowPlayerGoal extends Goal {
 
     @Override
     public boolean canContinueToUse() {
-        return player != null && player.distanceToSqr(mob) > (double) (stopDistance * stopDistance) && !mob.getNavigation().isDone();
+        return player != null && !isTyping() && player.distanceToSqr(mob) > (double) (stopDistance * stopDistance)
+                && !mob.getNavigation().isDone();
     }
 
     @Override
@@ -48,6 +52,10 @@ public class FriendFollowPlayerGoal extends Goal {
         mob.getNavigation().stop();
     }
 
+    private boolean isTyping() {
+        return mob instanceof FriendEntity friend && friend.isTyping();
+    }
+
     @Override
     public void tick() {
         if (player != null) {
@@ -1,5 +1,6 @@
 package mf.minefriend.friend.scare;
 
+import mf.minefriend.chat.ChatArchive;
 import mf.minefriend.friend.state.FriendData;
 import mf.minefriend.friend.state.FriendPhase;
 import net.minecraft.core.BlockPos;
@@ -40,6 +41,7 @@ import net.minecraftforge.eventbus.api.SubscribeEvent;
 
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
 import java.util.function.Predicate;
 
 public class EnvironmentalScareController {
@@ -496,6 +498,8 @@ public class EnvironmentalScareController {
             if (lastChat.isEmpty()) {
                 return false;
             }
+            // An older line of theirs about the same thing is more unsettling than the one they just typed.
+            String echo = ChatArchive.recall(player.getUUID(), lastChat).orElse(lastChat);
             ServerLevel level = player.serverLevel();
             BlockPos origin = player.blockPosition();
             for (int attempt = 0; attempt < 20; attempt++) {
@@ -511,7 +515,7 @@ public class EnvironmentalScareController {
                 level.setBlock(ground, signState, 3);
                 BlockEntity blockEntity = level.getBlockEntity(ground);
                 if (blockEntity instanceof SignBlockEntity sign) {
-                    Component message = Component.literal(lastChat);
+                    Component message = Component.literal(echo);
                     sign.setText(sign.getFrontText().setMessage(0, message), true);
                     sign.setChanged();
                 }
@@ -657,25 +661,8 @@ public class EnvironmentalScareController {
         }
 
         private Optional<BlockPos> findNearbyBlock(ServerLevel level, BlockPos center, int radius, Predicate<BlockState> predicate) {
-            List<BlockPos> positions = new ArrayList<>();
-            for (int dx = -radius; dx <= radius; dx++) {
-                for (int dy = -4; dy <= 4; dy++) {
-                    for (int dz = -radius; dz <= radius; dz++) {
-                        BlockPos pos = center.offset(dx, dy, dz);
-                        positions.add(pos);
-                    }
-                }
-            }
-            Collections.shuffle(positions, new Random(random.nextLong()));
-            for (BlockPos pos : positions) {
-                if (!isAreaLoaded(level, pos, 1)) {
-                    continue;
-                }
-                if (predicate.test(level.getBlockState(pos))) {
-                    return Optional.of(pos);
-                }
-            }
-            return Optional.empty();
+            return EnvironmentalScareController.findNearbyBlock(center, radius, new Random(random.nextLong()),
+                    pos -> isAreaLoaded(level, pos, 1) ? level.getBlockState(pos) : null, predicate);
         }
 
         private int randomOffset(RandomSource random, int distance) {
@@ -687,6 +674,32 @@ public class EnvironmentalScareController {
         }
     }
 
+    /**
+     * Visits every position within {@code radius} blocks horizontally and 4 vertically of {@code center} in random
+     * order and returns the first whose state matches. The lookup returns null for positions that cannot be read
+     * (unloaded chunks), which are skipped. Generic over the state type so it can run against a synthetic world.
+     */
+    static <S> Optional<BlockPos> findNearbyBlock(BlockPos center, int radius, Random random, Function<BlockPos, S> lookup,
+                                                  Predicate<? super S> predicate) {
+        List<BlockPos> positions = new ArrayList<>();
+        for (int dx = -radius; dx <= radius; dx++) {
+            for (int dy = -4; dy <= 4; dy++) {
+                for (int dz = -radius; dz <= radius; dz++) {
+                    BlockPos pos = center.offset(dx, dy, dz);
+                    positions.add(pos);
+                }
+            }
+        }
+        Collections.shuffle(positions, random);
+        for (BlockPos pos : positions) {
+            S state = lookup.apply(pos);
+            if (state != null && predicate.test(state)) {
+                return Optional.of(pos);
+            }
+        }
+        return Optional.empty();
+    }
+
     @FunctionalInterface
     private interface PhaseAction {
         boolean perform(ServerPlayer player, RandomSource random);
@@ -67,7 +67,14 @@ public record FriendData(UUID owner, UUID entityId, String friendName, int skinI
         if (data.isEmpty()) {
             return Optional.empty();
         }
-        UUID owner = player.getUUID();
+        return Optional.of(read(player.getUUID(), data));
+    }
+
+    /**
+     * Reads the fields written by {@link #write}. The owner is not read back from the tag; it is always the player
+     * whose data holds it.
+     */
+    public static FriendData read(UUID owner, CompoundTag data) {
         UUID entityId = data.hasUUID("FriendEntity") ? data.getUUID("FriendEntity") : null;
         String name = data.getString("FriendName");
         int skin = data.getInt("SkinIndex");
@@ -75,7 +82,7 @@ public record FriendData(UUID owner, UUID entityId, String friendName, int skinI
         int negatives = data.getInt("Negatives");
         boolean hardcore = data.getBoolean("HardcoreActive");
         boolean phaseOneDisabled = data.getBoolean("PhaseOneScriptDisabled");
-        return Optional.of(new FriendData(owner, entityId, name, skin, phase, negatives, hardcore, phaseOneDisabled));
+        return new FriendData(owner, entityId, name, skin, phase, negatives, hardcore, phaseOneDisabled);
     }
 
     public static Optional<FriendData> get(Entity entity) {
@@ -87,19 +94,27 @@ public record FriendData(UUID owner, UUID entityId, String friendName, int skinI
 
     public static void store(ServerPlayer player, FriendData data) {
         CompoundTag tag = player.getPersistentData().getCompound(DATA_KEY);
-        tag.putUUID("Owner", data.owner);
-        if (data.entityId != null) {
-            tag.putUUID("FriendEntity", data.entityId);
-        }
-        tag.putString("FriendName", data.friendName);
-        tag.putInt("SkinIndex", data.skinIndex);
-        tag.putInt("Phase", data.phase.getId());
-        tag.putInt("Negatives", data.negativeResponses);
-        tag.putBoolean("HardcoreActive", data.hardcoreActive);
-        tag.putBoolean("PhaseOneScriptDisabled", data.phaseOneScriptDisabled);
+        data.write(tag);
         player.getPersistentData().put(DATA_KEY, tag);
     }
 
+    /**
+     * Writes this data into an existing tag. A missing entity id leaves any id already in the tag alone; use
+     * {@link #clearEntity} to remove it.
+     */
+    public void write(CompoundTag tag) {
+        tag.putUUID("Owner", owner);
+        if (entityId != null) {
+            tag.putUUID("FriendEntity", entityId);
+        }
+        tag.putString("FriendName", friendName);
+        tag.putInt("SkinIndex", skinIndex);
+        tag.putInt("Phase", phase.getId());
+        tag.putInt("Negatives", negativeResponses);
+        tag.putBoolean("HardcoreActive", hardcoreActive);
+        tag.putBoolean("PhaseOneScriptDisabled", phaseOneScriptDisabled);
+    }
+
     public static void clearEntity(ServerPlayer player) {
         CompoundTag tag = player.getPersistentData().getCompound(DATA_KEY);
         if (tag.contains("FriendEntity")) {
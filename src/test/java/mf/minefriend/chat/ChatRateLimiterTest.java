@@ -0,0 +1,168 @@
+package mf.minefriend.chat;
+
+import mf.minefriend.Config;
+import mf.minefriend.friend.state.FriendPhase;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ChatRateLimiterTest {
+    private static final UUID STEVE = UUID.randomUUID();
+    private static final UUID ALEX = UUID.randomUUID();
+
+    private int playerPerMinute;
+    private int playerBurst;
+    private int serverPerMinute;
+    private int serverBurst;
+
+    @BeforeEach
+    void saveLimits() {
+        playerPerMinute = Config.llmPlayerRateLimitPerMinute;
+        playerBurst = Config.llmPlayerRateLimitBurst;
+        serverPerMinute = Config.llmServerRateLimitPerMinute;
+        serverBurst = Config.llmServerRateLimitBurst;
+        ChatRateLimiter.onServerStopping(null);
+    }
+
+    @AfterEach
+    void restoreLimits() {
+        Config.llmPlayerRateLimitPerMinute = playerPerMinute;
+        Config.llmPlayerRateLimitBurst = playerBurst;
+        Config.llmServerRateLimitPerMinute = serverPerMinute;
+        Config.llmServerRateLimitBurst = serverBurst;
+        ChatRateLimiter.onServerStopping(null);
+    }
+
+    @Test
+    void playerBucketAllowsItsBurst() {
+        limits(1, 2, 0, 0);
+        ChatRateLimiter.RateLimitStats before = ChatRateLimiter.stats();
+        assertEquals(ChatRateLimiter.Outcome.ALLOWED, admit(STEVE, "hi").outcome());
+        assertEquals(ChatRateLimiter.Outcome.ALLOWED, admit(STEVE, "hello").outcome());
+
+        ChatRateLimiter.Admission limited = admit(STEVE, "hey");
+        assertEquals(ChatRateLimiter.Outcome.PLAYER_LIMITED, limited.outcome());
+        assertNull(limited.message());
+        assertNotNull(limited.localReply());
+        // Only the first line of a streak gets a local reply.
+        assertNull(admit(STEVE, "hey!!").localReply());
+
+        ChatRateLimiter.RateLimitStats after = ChatRateLimiter.stats();
+        assertEquals(2L, after.allowed() - before.allowed());
+        assertEquals(2L, after.playerLimited() - before.playerLimited());
+        assertEquals(1L, after.localReplies() - before.localReplies());
+        assertEquals(List.of(new ChatRateLimiter.PlayerLimitStats("Steve", 2L, 0L)), after.topPlayers());
+    }
+
+    @Test
+    void playersHaveTheirOwnBuckets() {
+        limits(1, 1, 0, 0);
+        assertEquals(ChatRateLimiter.Outcome.ALLOWED, admit(STEVE, "hi").outcome());
+        assertEquals(ChatRateLimiter.Outcome.PLAYER_LIMITED, admit(STEVE, "hi again").outcome());
+        assertEquals(ChatRateLimiter.Outcome.ALLOWED, admit(ALEX, "hi").outcome());
+    }
+
+    @Test
+    void serverBucketIsShared() {
+        limits(0, 0, 1, 3);
+        ChatRateLimiter.RateLimitStats before = ChatRateLimiter.stats();
+        assertEquals(ChatRateLimiter.Outcome.ALLOWED, admit(STEVE, "one").outcome());
+        assertEquals(ChatRateLimiter.Outcome.ALLOWED, admit(ALEX, "two").outcome());
+        assertEquals(ChatRateLimiter.Outcome.ALLOWED, admit(STEVE, "three").outcome());
+        assertEquals(ChatRateLimiter.Outcome.SERVER_LIMITED, admit(ALEX, "four").outcome());
+        assertEquals(1L, ChatRateLimiter.stats().serverLimited() - before.serverLimited());
+    }
+
+    @Test
+    void limitedPlayerDoesNotSpendServerTokens() {
+        limits(1, 1, 1, 2);
+        assertEquals(ChatRateLimiter.Outcome.ALLOWED, admit(STEVE, "one").outcome());
+        assertEquals(ChatRateLimiter.Outcome.PLAYER_LIMITED, admit(STEVE, "two").outcome());
+        assertEquals(ChatRateLimiter.Outcome.PLAYER_LIMITED, admit(STEVE, "three").outcome());
+        assertEquals(ChatRateLimiter.Outcome.ALLOWED, admit(ALEX, "four").outcome());
+    }
+
+    @Test
+    void bucketRefillsOverTime() throws InterruptedException {
+        // Ten tokens a second, one at most.
+        limits(600, 1, 0, 0);
+        assertEquals(ChatRateLimiter.Outcome.ALLOWED, admit(STEVE, "hi").outcome());
+        assertEquals(ChatRateLimiter.Outcome.PLAYER_LIMITED, admit(STEVE, "hi").outcome());
+        Thread.sleep(150L);
+        assertEquals(ChatRateLimiter.Outcome.ALLOWED, admit(STEVE, "hi").outcome());
+    }
+
+    @Test
+    void heldLinesFoldIntoTheNextAllowedLine() {
+        limits(1, 1, 0, 0);
+        ChatRateLimiter.RateLimitStats before = ChatRateLimiter.stats();
+        admit(STEVE, "hi");
+        admit(STEVE, "wait");
+        admit(STEVE, "come back");
+        // Lifting the limit lets the next line through with the held ones in front of it.
+        limits(0, 0, 0, 0);
+        ChatRateLimiter.Admission admission = admit(STEVE, "hello?");
+        assertEquals(ChatRateLimiter.Outcome.ALLOWED, admission.outcome());
+        assertEquals("wait. come back. hello?", admission.message());
+        assertEquals(2L, ChatRateLimiter.stats().foldedLines() - before.foldedLines());
+        assertEquals("again", admit(STEVE, "again").message());
+    }
+
+    @Test
+    void heldLinesKeepTheirNewestCharacters() {
+        limits(1, 1, 0, 0);
+        admit(STEVE, "hi");
+        for (int i = 0; i < 100; i++) {
+            admit(STEVE, "line " + i);
+        }
+        limits(0, 0, 0, 0);
+        String message = admit(STEVE, "end").message();
+        assertTrue(message.endsWith("line 98. line 99. end"), message);
+        assertTrue(message.length() <= 256 + ". end".length(), message);
+    }
+
+    @Test
+    void forgetDropsHeldLines() {
+        limits(1, 1, 0, 0);
+        admit(STEVE, "hi");
+        admit(STEVE, "wait");
+        ChatRateLimiter.forget(STEVE);
+        limits(0, 0, 0, 0);
+        assertEquals("i'm back", admit(STEVE, "i'm back").message());
+    }
+
+    @Test
+    void forgetKeepsAPartlyUsedBucket() {
+        limits(1, 1, 0, 0);
+        admit(ALEX, "hi");
+        ChatRateLimiter.forget(ALEX);
+        assertEquals(ChatRateLimiter.Outcome.PLAYER_LIMITED, admit(ALEX, "hi again").outcome());
+    }
+
+    @Test
+    void localReplyFitsThePhase() {
+        limits(1, 1, 0, 0);
+        admit(STEVE, "hi");
+        String reply = ChatRateLimiter.admit(STEVE, "Steve", FriendPhase.PHASE_THREE, "hi").localReply();
+        assertTrue(List.of("Quiet.", "Stop talking.", "I heard you.").contains(reply), reply);
+    }
+
+    private static void limits(int playerPerMinute, int playerBurst, int serverPerMinute, int serverBurst) {
+        Config.llmPlayerRateLimitPerMinute = playerPerMinute;
+        Config.llmPlayerRateLimitBurst = playerBurst;
+        Config.llmServerRateLimitPerMinute = serverPerMinute;
+        Config.llmServerRateLimitBurst = serverBurst;
+    }
+
+    private static ChatRateLimiter.Admission admit(UUID playerId, String message) {
+        return ChatRateLimiter.admit(playerId, playerId == STEVE ? "Steve" : "Alex", FriendPhase.PHASE_ONE, message);
+    }
+}
@@ -0,0 +1,102 @@
+package mf.minefriend.chat;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ChatSketchIndexTest {
+    private static final long QUERY = 0b1111L;
+
+    @Test
+    void mostSimilarFirst() {
+        ChatSketchIndex index = index(0b0001L, 0b0111L, 0b0011L, 0b1111_0000L);
+        // Shares 3 of 4 bits, then 2 of 4, then 1 of 4; the last shares none.
+        assertArrayEquals(new int[]{1, 2, 0}, index.nearest(QUERY, 1, 10, index.size()));
+        assertArrayEquals(new int[]{1, 2, 0, 3}, index.nearest(QUERY, 0, 10, index.size()));
+    }
+
+    @Test
+    void newerLineFirstOnATie() {
+        ChatSketchIndex index = index(0b0011L, 0b0110L, 0b1100L);
+        assertArrayEquals(new int[]{2, 1, 0}, index.nearest(QUERY, 0, 10, index.size()));
+    }
+
+    @Test
+    void keepsTheBestWithinTheLimit() {
+        ChatSketchIndex index = index(0b0111L, 0b0001L, 0b0011L, 0b1110L, 0b0100L);
+        assertArrayEquals(new int[]{3, 0}, index.nearest(QUERY, 0, 2, index.size()));
+        assertArrayEquals(new int[]{3}, index.nearest(QUERY, 0, 1, index.size()));
+        assertArrayEquals(new int[0], index.nearest(QUERY, 0, 0, index.size()));
+    }
+
+    @Test
+    void similarityIsSharedOverAllBits() {
+        // 0b0011_0000_0011 against 0b1111 shares 2 of 6 bits: 33 percent.
+        ChatSketchIndex index = index(0b0011_0000_0011L);
+        assertArrayEquals(new int[]{0}, index.nearest(QUERY, 33, 10, index.size()));
+        assertArrayEquals(new int[0], index.nearest(QUERY, 34, 10, index.size()));
+    }
+
+    @Test
+    void skipsTheQueryItself() {
+        ChatSketchIndex index = index(QUERY, 0b0111L, QUERY);
+        assertArrayEquals(new int[]{1}, index.nearest(QUERY, 0, 10, index.size()));
+    }
+
+    @Test
+    void onlySearchesTheOldestEntries() {
+        ChatSketchIndex index = index(0b0011L, 0b0111L, 0b1111_0111L, 0b1110L);
+        assertArrayEquals(new int[]{1, 0}, index.nearest(QUERY, 0, 10, 2));
+        assertArrayEquals(new int[]{3, 1, 0, 2}, index.nearest(QUERY, 0, 10, 100));
+    }
+
+    @Test
+    void keepNewestRenumbersFromTheOldestKept() {
+        ChatSketchIndex index = new ChatSketchIndex();
+        for (int i = 0; i < 100; i++) {
+            index.add(i == 97 ? 0b0111L : 1L << 40, i * 10L);
+        }
+        index.keepNewest(5);
+        index.shift(-950L);
+        assertEquals(5, index.size());
+        assertArrayEquals(new int[]{2}, index.nearest(QUERY, 1, 10, index.size()));
+        assertEquals(20L, index.offset(2));
+    }
+
+    @Test
+    void wordsIgnoreCaseStopWordsAndEndings() {
+        assertEquals(Set.of("want", "go", "mining", "diamon"), ChatSketchIndex.words("Do you WANT to go mining for diamonds?!"));
+        assertEquals(ChatSketchIndex.words("diamond"), ChatSketchIndex.words("Diamonds"));
+        assertEquals(Set.of(), ChatSketchIndex.words("... you and me ..."));
+    }
+
+    @Test
+    void sketchesShareBitsForSharedWords() {
+        long house = ChatSketchIndex.sketch(ChatSketchIndex.words("build a house"));
+        long sameHouse = ChatSketchIndex.sketch(ChatSketchIndex.words("a house to build"));
+        long other = ChatSketchIndex.sketch(ChatSketchIndex.words("night monsters"));
+        assertEquals(house, sameHouse);
+        assertTrue(Long.bitCount(house) <= 4);
+        assertEquals(0L, ChatSketchIndex.sketch(Set.of()));
+        assertTrue(Long.bitCount(house & other) < Long.bitCount(house));
+    }
+
+    @Test
+    void similarityOfWordSets() {
+        assertEquals(50, ChatSketchIndex.similarity(Set.of("build", "house"), Set.of("build", "house", "big", "now")));
+        assertEquals(100, ChatSketchIndex.similarity(Set.of("house"), Set.of("house")));
+        assertEquals(0, ChatSketchIndex.similarity(Set.of(), Set.of()));
+    }
+
+    private static ChatSketchIndex index(long... sketches) {
+        ChatSketchIndex index = new ChatSketchIndex();
+        for (int i = 0; i < sketches.length; i++) {
+            index.add(sketches[i], i * 100L);
+        }
+        return index;
+    }
+}
@@ -0,0 +1,55 @@
+package mf.minefriend.chat;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LlmRequestSchedulerTest {
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Test
+    void mergeEndsTheFirstLineWithAFullStop() {
+        assertEquals("hi. want to build a house?", LlmRequestScheduler.merge("hi", "want to build a house?"));
+        assertEquals("hi. there", LlmRequestScheduler.merge("  hi  ", "  there "));
+    }
+
+    @Test
+    void mergeKeepsExistingPunctuation() {
+        assertEquals("hello! you there?", LlmRequestScheduler.merge("hello!", "you there?"));
+        assertEquals("why? stop.", LlmRequestScheduler.merge("why?", "stop."));
+        assertEquals("wait... ok", LlmRequestScheduler.merge("wait...", "ok"));
+    }
+
+    @Test
+    void mergeSkipsAnEmptyFirstLine() {
+        assertEquals("only this", LlmRequestScheduler.merge("   ", "only this"));
+    }
+
+    @Test
+    void mergesChainLeftToRight() {
+        String merged = LlmRequestScheduler.merge(LlmRequestScheduler.merge("one", "two"), "three");
+        assertEquals("one. two. three", merged);
+    }
+
+    @Test
+    void dropsWorkThatWouldBeAnsweredLate() {
+        long now = 1_000_000 * MS;
+        assertFalse(LlmRequestScheduler.missesDeadline(now, 500 * MS, now + 2_000 * MS));
+        assertFalse(LlmRequestScheduler.missesDeadline(now, 500 * MS, now + 500 * MS));
+        assertTrue(LlmRequestScheduler.missesDeadline(now, 501 * MS, now + 500 * MS));
+        assertTrue(LlmRequestScheduler.missesDeadline(now, 0L, now - 1L));
+    }
+
+    @Test
+    void deadlineHoldsAcrossTheClockWrapping() {
+        long now = Long.MAX_VALUE - 100 * MS;
+        long deadline = now + 1_000 * MS;
+        assertTrue(deadline < now);
+        assertFalse(LlmRequestScheduler.missesDeadline(now, 500 * MS, deadline));
+        assertTrue(LlmRequestScheduler.missesDeadline(now, 1_500 * MS, deadline));
+    }
+}
@@ -0,0 +1,256 @@
+package mf.minefriend.chat;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonSyntaxException;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Flow;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LlmResponseParserTest {
+    private static final Pattern PHASE_DIRECTIVE = Pattern.compile("\\[\\[PHASE:(\\d+)]]", Pattern.CASE_INSENSITIVE);
+
+    /**
+     * Bodies as the supported servers send them, which the single-pass parser must read exactly as the tree-building
+     * parser it replaced did.
+     */
+    private static final List<String> BODIES = List.of(
+            "{\"id\":\"chatcmpl-1\",\"object\":\"chat.completion\",\"created\":1700000000,\"model\":\"llama-3\","
+                    + "\"choices\":[{\"index\":0,\"message\":{\"role\":\"assistant\",\"content\":\"Hi there!  Want to build a house? [[PHASE:1]]\"},"
+                    + "\"finish_reason\":\"stop\"}],\"usage\":{\"prompt_tokens\":120,\"completion_tokens\":11,\"total_tokens\":131}}",
+            "{\"choices\":[{\"message\":{\"content\":\"You left me.\\n\\nWhy did you leave?\\t[[phase:2]]\"}}]}",
+            "{\"choices\":[{\"message\":{\"role\":\"assistant\",\"content\":\"No directive here.\"}},{\"message\":{\"content\":\"second\"}}]}",
+            "{\"model\":\"mistral\",\"created_at\":\"2024-01-01T00:00:00Z\",\"response\":\"  I can be you. [[PHASE:3]] \",\"done\":true}",
+            "{\"choices\":[{\"message\":{\"content\":\"[[PHASE:2]] Where did you go? [[PHASE:3]]\"}}]}",
+            "{\"choices\":[{\"message\":{\"content\":\"Phase [[PHASE:99999999999]] too big\"}}]}",
+            "{\"choices\":[]}",
+            "{\"choices\":[{\"message\":{\"content\":null}}]}",
+            "Just plain text\r\nfrom a server   that ignores JSON.",
+            "");
+
+    @Test
+    void readsBodiesLikeTheTreeParser() {
+        for (String body : BODIES) {
+            LlmResponseParser.ParsedReply reply = LlmResponseParser.parseBody(body);
+            LlmResponseParser.ParsedReply expected = treeParse(body);
+            assertEquals(expected, reply, body);
+            assertEquals(reply, LlmResponseParser.parseBody(body.getBytes(StandardCharsets.UTF_8)), body);
+        }
+    }
+
+    @Test
+    void readsTheFirstDirective() {
+        LlmResponseParser.ParsedReply reply = LlmResponseParser.parseBody(BODIES.get(4));
+        assertEquals("Where did you go?", reply.message());
+        assertTrue(reply.explicit());
+        assertEquals(2, reply.phaseId());
+    }
+
+    @Test
+    void readsLlamaCppContent() {
+        LlmResponseParser.ParsedReply reply = LlmResponseParser.parseBody("{\"content\":\"We look  alike. [[PHASE:3]]\",\"stop\":true,\"tokens_predicted\":9}");
+        assertEquals(new LlmResponseParser.ParsedReply("We look alike.", true, 3), reply);
+    }
+
+    @Test
+    void acceptsAnUnclosedDirectiveAtTheEnd() {
+        assertEquals(new LlmResponseParser.ParsedReply("Come back.", true, 2), LlmResponseParser.scan("Come back. [[PHASE:2"));
+        assertEquals(new LlmResponseParser.ParsedReply("Come back. [[PHASE:2 now", false, -1), LlmResponseParser.scan("Come back. [[PHASE:2 now"));
+        assertEquals(new LlmResponseParser.ParsedReply("Come back. [[PHASE:", false, -1), LlmResponseParser.scan("Come back. [[PHASE:"));
+    }
+
+    @Test
+    void normalizeKeepsDirectives() {
+        assertEquals("Hi [[PHASE:1]]", LlmResponseParser.normalize("  Hi \n [[PHASE:1]] "));
+    }
+
+    @Test
+    void errorBodiesThrow() {
+        assertThrows(LlmErrorResponseException.class,
+                () -> LlmResponseParser.parseBody("{\"error\":{\"message\":\"model not loaded\",\"type\":\"server_error\"}}"));
+        assertThrows(LlmErrorResponseException.class, () -> LlmResponseParser.parseBody("{\"error\":\"overloaded\"}"));
+        assertThrows(LlmErrorResponseException.class, () -> LlmResponseParser.parseBody("{\"error\":{\"code\":500}}"));
+        assertThrows(LlmErrorResponseException.class, () -> LlmResponseParser.extractDelta("{\"error\":{\"message\":\"context length exceeded\"}}"));
+    }
+
+    @Test
+    void errorMessageIsKept() {
+        LlmErrorResponseException ex = assertThrows(LlmErrorResponseException.class,
+                () -> LlmResponseParser.parseBody("{\"error\":{\"message\":\"model not loaded\"}}"));
+        assertEquals("LLM backend answered with an error: model not loaded", ex.getMessage());
+    }
+
+    @Test
+    void nullErrorIsNotAnError() {
+        LlmResponseParser.ParsedReply reply = LlmResponseParser.parseBody("{\"error\":null,\"choices\":[{\"message\":{\"content\":\"Hello!\"}}]}");
+        assertEquals(new LlmResponseParser.ParsedReply("Hello!", false, -1), reply);
+    }
+
+    @Test
+    void extractsDeltas() {
+        assertEquals("Hel", LlmResponseParser.extractDelta("{\"choices\":[{\"index\":0,\"delta\":{\"role\":\"assistant\",\"content\":\"Hel\"}}]}"));
+        assertEquals("", LlmResponseParser.extractDelta("{\"choices\":[{\"index\":0,\"delta\":{\"role\":\"assistant\"}}]}"));
+        assertEquals("", LlmResponseParser.extractDelta("{\"choices\":[{\"index\":0,\"delta\":{},\"finish_reason\":\"stop\"}]}"));
+        assertEquals("", LlmResponseParser.extractDelta("not json"));
+    }
+
+    @Test
+    void streamedReplyMatchesTheWholeBody() {
+        String text = "Hi! Let's go mining together. [[PHASE:1]]";
+        for (int chunk = 1; chunk <= text.length(); chunk++) {
+            List<String> sent = new ArrayList<>();
+            SseReplySubscriber subscriber = stream(text, chunk, sent::add);
+            LlmResponseParser.ParsedReply reply = LlmResponseParser.scan(subscriber.content());
+            assertEquals(new LlmResponseParser.ParsedReply("Hi! Let's go mining together.", true, 1), reply, "chunk size " + chunk);
+            assertEquals(List.of("Hi!"), sent, "chunk size " + chunk);
+            assertTrue(subscriber.stoppedEarly().isDone(), "chunk size " + chunk);
+        }
+    }
+
+    @Test
+    void directiveSplitAcrossChunksEndsTheStream() {
+        SseReplySubscriber subscriber = new SseReplySubscriber(null);
+        RecordingSubscription subscription = new RecordingSubscription();
+        subscriber.onSubscribe(subscription);
+        for (String chunk : List.of("I'm right here. [", "[PHA", "SE:", "2", "]", "]", " ignored")) {
+            subscriber.onNext(event(chunk));
+        }
+        assertTrue(subscription.cancelled);
+        assertTrue(subscriber.stoppedEarly().isDone());
+        assertEquals(new LlmResponseParser.ParsedReply("I'm right here.", true, 2), LlmResponseParser.scan(subscriber.content()));
+    }
+
+    @Test
+    void errorEventStopsTheStream() {
+        SseReplySubscriber subscriber = new SseReplySubscriber(null);
+        RecordingSubscription subscription = new RecordingSubscription();
+        subscriber.onSubscribe(subscription);
+        subscriber.onNext(event("Hello"));
+        subscriber.onNext("data: {\"error\":{\"message\":\"backend crashed\"}}");
+        assertTrue(subscription.cancelled);
+        CompletionException ex = assertThrows(CompletionException.class, () -> subscriber.stoppedEarly().join());
+        assertTrue(ex.getCause() instanceof LlmErrorResponseException);
+    }
+
+    @Test
+    void plainBodyIsKeptVerbatim() {
+        SseReplySubscriber subscriber = new SseReplySubscriber(null);
+        subscriber.onSubscribe(new RecordingSubscription());
+        subscriber.onNext("{\"choices\":[{\"message\":{\"content\":\"Not streamed. [[PHASE:1]]\"}}]}");
+        subscriber.onComplete();
+        assertFalse(subscriber.sawEvents());
+        assertFalse(subscriber.stoppedEarly().isDone());
+        assertEquals(new LlmResponseParser.ParsedReply("Not streamed.", true, 1), LlmResponseParser.parseBody(subscriber.rawBody()));
+    }
+
+    private static SseReplySubscriber stream(String text, int chunkSize, Consumer<String> firstSentence) {
+        SseReplySubscriber subscriber = new SseReplySubscriber(firstSentence);
+        subscriber.onSubscribe(new RecordingSubscription());
+        subscriber.onNext("data: {\"choices\":[{\"index\":0,\"delta\":{\"role\":\"assistant\"}}]}");
+        subscriber.onNext("");
+        for (int i = 0; i < text.length(); i += chunkSize) {
+            subscriber.onNext(event(text.substring(i, Math.min(text.length(), i + chunkSize))));
+            subscriber.onNext("");
+        }
+        subscriber.onNext("data: [DONE]");
+        subscriber.onComplete();
+        return subscriber;
+    }
+
+    private static String event(String chunk) {
+        JsonObject delta = new JsonObject();
+        delta.addProperty("content", chunk);
+        JsonObject choice = new JsonObject();
+        choice.addProperty("index", 0);
+        choice.add("delta", delta);
+        JsonArray choices = new JsonArray();
+        choices.add(choice);
+        JsonObject event = new JsonObject();
+        event.add("choices", choices);
+        return "data: " + event;
+    }
+
+    /**
+     * The parser this class replaced: a Gson tree for the body, then a regex for the directive and another for the
+     * whitespace.
+     */
+    private static LlmResponseParser.ParsedReply treeParse(String body) {
+        String response = treeContent(body);
+        Matcher matcher = PHASE_DIRECTIVE.matcher(response);
+        boolean explicit = matcher.find();
+        int phaseId = -1;
+        if (explicit) {
+            try {
+                phaseId = Integer.parseInt(matcher.group(1));
+            } catch (NumberFormatException ignored) {
+            }
+        }
+        String cleaned = explicit ? matcher.replaceAll("") : response;
+        return new LlmResponseParser.ParsedReply(sanitize(cleaned), explicit, phaseId);
+    }
+
+    private static String treeContent(String body) {
+        try {
+            JsonElement parsed = JsonParser.parseString(body);
+            if (parsed == null || parsed.isJsonNull()) {
+                return "";
+            }
+            if (parsed.isJsonObject()) {
+                JsonObject object = parsed.getAsJsonObject();
+                if (object.has("choices")) {
+                    JsonArray choices = object.getAsJsonArray("choices");
+                    if (!choices.isEmpty()) {
+                        JsonObject firstChoice = choices.get(0).getAsJsonObject();
+                        if (firstChoice.has("message")) {
+                            JsonObject message = firstChoice.getAsJsonObject("message");
+                            if (message.has("content")) {
+                                return sanitize(message.get("content"));
+                            }
+                        }
+                    }
+                }
+                if (object.has("response")) {
+                    return sanitize(object.get("response"));
+                }
+            }
+            return sanitize(body);
+        } catch (JsonSyntaxException | IllegalStateException ex) {
+            return sanitize(body);
+        }
+    }
+
+    private static String sanitize(JsonElement element) {
+        return element == null || element.isJsonNull() ? "" : sanitize(element.getAsString());
+    }
+
+    private static String sanitize(String text) {
+        return text.replace("\r", " ").replace("\n", " ").trim().replaceAll("\\s+", " ");
+    }
+
+    private static final class RecordingSubscription implements Flow.Subscription {
+        private boolean cancelled;
+
+        @Override
+        public void request(long n) {
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package mf.minefriend.chat;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class NgramDialogueModelTest {
+    private static final int MAGIC = 0x4D464E47;
+    private static final int VERSION = 1;
+
+    @Test
+    void readsBackWhatItWrote() throws IOException {
+        NgramDialogueModel.Trainer trainer = new NgramDialogueModel.Trainer();
+        trainer.add(1, "Hello! Let's be friends.");
+        trainer.add(1, "Let's build a house.");
+        trainer.add(2, "Why did you leave?");
+        NgramDialogueModel model = trainer.build();
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        model.write(new DataOutputStream(bytes));
+        NgramDialogueModel read = NgramDialogueModel.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+        assertEquals(model.vocabularySize(), read.vocabularySize());
+        assertEquals(model.contexts(), read.contexts());
+        for (int seed = 0; seed < 20; seed++) {
+            assertEquals(model.generate(2, "leave", new Random(seed), 4, 24), read.generate(2, "leave", new Random(seed), 4, 24));
+        }
+    }
+
+    @Test
+    void acceptsAWellFormedModel() throws IOException {
+        NgramDialogueModel model = read(MAGIC, VERSION, new String[]{"hi"}, new long[]{1L, 2L}, new int[]{0, 1, 2}, new int[]{3, 1}, new int[]{1, 4});
+        assertEquals(1, model.vocabularySize());
+        assertEquals(2, model.contexts());
+    }
+
+    @Test
+    void rejectsAnotherFormat() {
+        assertThrows(IOException.class, () -> read(0x12345678, VERSION, new String[0], new long[0], new int[]{0}, new int[0], new int[0]));
+        assertThrows(IOException.class, () -> read(MAGIC, VERSION + 1, new String[0], new long[0], new int[]{0}, new int[0], new int[0]));
+    }
+
+    @Test
+    void rejectsACorruptVocabulary() {
+        assertThrows(IOException.class, () -> read(MAGIC, VERSION, -1, new String[0], new long[0], new int[]{0}, new int[0], new int[0]));
+        assertThrows(IOException.class, () -> read(MAGIC, VERSION, NgramDialogueModel.MAX_WORDS + 1, new String[0], new long[0], new int[]{0},
+                new int[0], new int[0]));
+    }
+
+    @Test
+    void rejectsCorruptContexts() {
+        assertThrows(IOException.class, () -> read(MAGIC, VERSION, 0, new String[0], new long[0], new int[0], new int[0], new int[0], -1));
+        // Offsets must start at zero and grow; keys must be strictly ascending.
+        assertThrows(IOException.class, () -> read(MAGIC, VERSION, new String[]{"hi"}, new long[]{1L}, new int[]{1, 2}, new int[]{3, 3}, new int[]{1, 1}));
+        assertThrows(IOException.class, () -> read(MAGIC, VERSION, new String[]{"hi"}, new long[]{1L, 2L}, new int[]{0, 1, 1}, new int[]{3}, new int[]{1}));
+        assertThrows(IOException.class, () -> read(MAGIC, VERSION, new String[]{"hi"}, new long[]{2L, 1L}, new int[]{0, 1, 2}, new int[]{3, 1}, new int[]{1, 1}));
+        assertThrows(IOException.class, () -> read(MAGIC, VERSION, new String[]{"hi"}, new long[]{1L}, new int[]{0, -1}, new int[0], new int[0]));
+    }
+
+    @Test
+    void rejectsCorruptTransitions() {
+        // Successors must be a known word or the end marker, never the start or back-off markers; counts must be positive.
+        assertThrows(IOException.class, () -> read(MAGIC, VERSION, new String[]{"hi"}, new long[]{1L}, new int[]{0, 1}, new int[]{4}, new int[]{1}));
+        assertThrows(IOException.class, () -> read(MAGIC, VERSION, new String[]{"hi"}, new long[]{1L}, new int[]{0, 1}, new int[]{0}, new int[]{1}));
+        assertThrows(IOException.class, () -> read(MAGIC, VERSION, new String[]{"hi"}, new long[]{1L}, new int[]{0, 1}, new int[]{3}, new int[]{0}));
+    }
+
+    @Test
+    void rejectsATruncatedFile() throws IOException {
+        NgramDialogueModel.Trainer trainer = new NgramDialogueModel.Trainer();
+        trainer.add(1, "Nice world you have here.");
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        trainer.build().write(new DataOutputStream(bytes));
+        byte[] whole = bytes.toByteArray();
+        byte[] truncated = Arrays.copyOf(whole, whole.length - 3);
+        assertThrows(IOException.class, () -> NgramDialogueModel.read(new DataInputStream(new ByteArrayInputStream(truncated))));
+    }
+
+    private static NgramDialogueModel read(int magic, int version, String[] words, long[] keys, int[] offsets, int[] successors, int[] counts)
+            throws IOException {
+        return read(magic, version, words.length, words, keys, offsets, successors, counts, keys.length);
+    }
+
+    private static NgramDialogueModel read(int magic, int version, int vocabulary, String[] words, long[] keys, int[] offsets, int[] successors,
+                                           int[] counts) throws IOException {
+        return read(magic, version, vocabulary, words, keys, offsets, successors, counts, keys.length);
+    }
+
+    /**
+     * Reads a model file laid out field by field, so each field can be made wrong on its own.
+     */
+    private static NgramDialogueModel read(int magic, int version, int vocabulary, String[] words, long[] keys, int[] offsets, int[] successors,
+                                           int[] counts, int contexts) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(magic);
+        out.writeInt(version);
+        out.writeInt(vocabulary);
+        for (String word : words) {
+            out.writeUTF(word);
+        }
+        out.writeInt(contexts);
+        for (long key : keys) {
+            out.writeLong(key);
+        }
+        for (int offset : offsets) {
+            out.writeInt(offset);
+        }
+        for (int i = 0; i < successors.length; i++) {
+            out.writeInt(successors[i]);
+            out.writeInt(counts[i]);
+        }
+        return NgramDialogueModel.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+    }
+}
@@ -0,0 +1,92 @@
+package mf.minefriend.chat;
+
+import mf.minefriend.Config;
+import mf.minefriend.chat.LlmService.LlmReply;
+import mf.minefriend.friend.state.FriendPhase;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ReplyCacheTest {
+    private static final UUID STEVE = UUID.randomUUID();
+    private static final UUID ALEX = UUID.randomUUID();
+    private static final UUID NOTCH = UUID.randomUUID();
+
+    private int cacheSize;
+    private int windowTokens;
+    private String persona;
+
+    @BeforeEach
+    void setUp() {
+        cacheSize = Config.llmReplyCacheSize;
+        windowTokens = Config.llmMemoryWindowTokens;
+        Config.llmReplyCacheSize = 16;
+        Config.llmMemoryWindowTokens = 1000;
+        // Entries of other tests cannot be cleared, so each test asks a persona of its own.
+        persona = "Friend-" + UUID.randomUUID();
+        ConversationMemory.onServerStopping(null);
+    }
+
+    @AfterEach
+    void tearDown() {
+        Config.llmReplyCacheSize = cacheSize;
+        Config.llmMemoryWindowTokens = windowTokens;
+        ConversationMemory.onServerStopping(null);
+    }
+
+    @Test
+    void playersWithoutHistoryShareReplies() {
+        ReplyCache.store(STEVE, persona, FriendPhase.PHASE_ONE, "Who are you?", "Steve", reply("I'm your friend!"));
+        Optional<LlmReply> cached = ReplyCache.lookup(ALEX, persona, FriendPhase.PHASE_ONE, "who are you");
+        assertTrue(cached.isPresent());
+        assertEquals("I'm your friend!", cached.get().message());
+    }
+
+    @Test
+    void replyWrittenWithHistoryIsNotShared() {
+        ConversationMemory.record(STEVE, persona, "Steve", "I found diamonds today", "Wow! Can I see them?");
+        ReplyCache.store(STEVE, persona, FriendPhase.PHASE_ONE, "What did I just say?", "Steve", reply("You found diamonds!"));
+        assertTrue(ReplyCache.lookup(ALEX, persona, FriendPhase.PHASE_ONE, "What did I just say?").isEmpty());
+    }
+
+    @Test
+    void playerWithHistoryIsNotServedSharedReplies() {
+        ReplyCache.store(STEVE, persona, FriendPhase.PHASE_ONE, "Remember me?", "Steve", reply("Of course I do!"));
+        ConversationMemory.record(ALEX, persona, "Alex", "My name is Alex and I like pigs", "Pigs are cute!");
+        assertTrue(ReplyCache.lookup(ALEX, persona, FriendPhase.PHASE_ONE, "Remember me?").isEmpty());
+        assertTrue(ReplyCache.lookup(NOTCH, persona, FriendPhase.PHASE_ONE, "Remember me?").isPresent());
+    }
+
+    @Test
+    void twoPlayersWithDifferentHistoriesDoNotShareAnEntry() {
+        ConversationMemory.record(STEVE, persona, "Steve", "I built a castle", "It's beautiful!");
+        ConversationMemory.record(ALEX, persona, "Alex", "I fell in lava", "Oh no!");
+        ReplyCache.store(STEVE, persona, FriendPhase.PHASE_ONE, "What did I do?", "Steve", reply("You built a castle."));
+        ReplyCache.store(ALEX, persona, FriendPhase.PHASE_ONE, "What did I do?", "Alex", reply("You fell in lava."));
+        assertTrue(ReplyCache.lookup(STEVE, persona, FriendPhase.PHASE_ONE, "What did I do?").isEmpty());
+        assertTrue(ReplyCache.lookup(ALEX, persona, FriendPhase.PHASE_ONE, "What did I do?").isEmpty());
+        assertTrue(ReplyCache.lookup(NOTCH, persona, FriendPhase.PHASE_ONE, "What did I do?").isEmpty());
+    }
+
+    @Test
+    void replyThatNamesThePlayerIsNotShared() {
+        ReplyCache.store(STEVE, persona, FriendPhase.PHASE_ONE, "hi", "Steve", reply("Hi Steve!"));
+        assertTrue(ReplyCache.lookup(ALEX, persona, FriendPhase.PHASE_ONE, "hi").isEmpty());
+    }
+
+    @Test
+    void normalizeIgnoresCaseAndPunctuation() {
+        assertEquals("hi there", ReplyCache.normalize("  Hi,   THERE!! "));
+        assertEquals("", ReplyCache.normalize(null));
+    }
+
+    private LlmReply reply(String message) {
+        return new LlmReply(persona, message, FriendPhase.PHASE_ONE);
+    }
+}